@@ -0,0 +1,38 @@
+package com.nidar.gcs.config;
+
+import com.nidar.gcs.controller.AgentChannelHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.lang.NonNull;
+
+/**
+ * Raw WebSocket endpoint for drone agents (binary telemetry up, missions down),
+ * alongside the STOMP endpoint used by the dashboard.
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class AgentChannelConfig implements WebSocketConfigurer {
+
+    private final AgentChannelHandler agentChannelHandler;
+
+    @Override
+    public void registerWebSocketHandlers(@NonNull WebSocketHandlerRegistry registry) {
+        registry.addHandler(agentChannelHandler, "/ws-agent/*")
+                .setAllowedOriginPatterns("*");
+    }
+
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        // Room for a backlog of telemetry samples sent after a reconnect
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxBinaryMessageBufferSize(64 * 1024);
+        container.setMaxTextMessageBufferSize(64 * 1024);
+        return container;
+    }
+}
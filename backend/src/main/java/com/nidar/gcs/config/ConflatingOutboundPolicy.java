@@ -0,0 +1,265 @@
+package com.nidar.gcs.config;
+
+import com.nidar.gcs.service.BroadcastService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound flow control for STOMP clients.
+ *
+ * Messages to conflated destinations (live telemetry by default) are held as
+ * "latest value per subscription": while a client still has an update for a
+ * subscription waiting, a newer one replaces it instead of queueing behind
+ * it. An update is also held back while a socket write to that client is in
+ * progress, and released when the write completes, so a slow client receives
+ * fewer, fresher updates rather than a growing backlog. A waiting telemetry
+ * keyframe is never replaced by a delta: the delta is dropped instead, and
+ * the next one, being cumulative since the keyframe, carries its change.
+ * Every other destination (detections, missions, replay) passes through
+ * untouched and is never dropped.
+ *
+ * Held updates are re-sent through the whole outbound channel with
+ * {@link #RELEASED_HEADER} set. They are already pending here and already
+ * past the rate limiter, so both interceptors let them straight through.
+ *
+ * Registered both as an interceptor on the client outbound channel and as a
+ * handler decorator, which sees the raw session writes beneath Spring's
+ * send-buffer decorator. Keeps per-session send metrics.
+ */
+@Component
+@Slf4j
+public class ConflatingOutboundPolicy implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    /**
+     * Header on a held update re-sent after a write completes
+     */
+    public static final String RELEASED_HEADER = "nidarConflationRelease";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Value("${websocket.conflate.destinations:/topic/telemetry,/topic/telemetry/**}")
+    private String[] conflatedDestinations;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    // Set on first use; the interceptor cannot depend on the channel it is registered on
+    private volatile MessageChannel outboundChannel;
+
+    private static class SessionState {
+        final String remoteAddress;
+        final long connectedAt = System.currentTimeMillis();
+        // Latest undelivered update per subscription
+        final Map<String, Message<?>> pending = new ConcurrentHashMap<>();
+        final AtomicBoolean writing = new AtomicBoolean();
+        final AtomicLong messagesSent = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong conflated = new AtomicLong();
+        final AtomicLong sendTimeNanos = new AtomicLong();
+        volatile long maxSendNanos;
+
+        SessionState(String remoteAddress) {
+            this.remoteAddress = remoteAddress;
+        }
+    }
+
+    // ============ Outbound channel ============
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        outboundChannel = channel;
+        String key = conflationKey(message);
+        if (key == null || isReleased(message)) {
+            return message;
+        }
+        SessionState state = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (state == null) {
+            return message;
+        }
+
+        // If an update is already waiting, swap in the newer one, unless that
+        // would replace a keyframe with a delta; whoever delivers the waiting
+        // one sends what is in the slot then
+        boolean[] waiting = new boolean[1];
+        state.pending.compute(key, (k, previous) -> {
+            waiting[0] = previous != null;
+            return previous != null && isKeyframe(previous) && !isKeyframe(message) ? previous : message;
+        });
+        if (waiting[0]) {
+            state.conflated.incrementAndGet();
+            return null;
+        }
+        return message;
+    }
+
+    public static boolean isReleased(Message<?> message) {
+        return Boolean.TRUE.equals(message.getHeaders().get(RELEASED_HEADER));
+    }
+
+    private static boolean isKeyframe(Message<?> message) {
+        return Boolean.TRUE.equals(message.getHeaders().get(BroadcastService.KEYFRAME_HEADER));
+    }
+
+    @Override
+    public Message<?> beforeHandle(@NonNull Message<?> message, @NonNull MessageChannel channel,
+            @NonNull MessageHandler handler) {
+        String key = conflationKey(message);
+        if (key == null) {
+            return message;
+        }
+        SessionState state = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (state == null) {
+            return message;
+        }
+        if (state.writing.get()) {
+            // Stays pending; released when the current write completes
+            return null;
+        }
+        // Null if a later task already delivered it
+        return state.pending.remove(key);
+    }
+
+    @Override
+    public void afterMessageHandled(@NonNull Message<?> message, @NonNull MessageChannel channel,
+            @NonNull MessageHandler handler, Exception ex) {
+    }
+
+    private String conflationKey(Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return null;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !isConflated(destination)) {
+            return null;
+        }
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        return subscriptionId != null ? subscriptionId : destination;
+    }
+
+    private boolean isConflated(String destination) {
+        for (String pattern : conflatedDestinations) {
+            if (pathMatcher.match(pattern.trim(), destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queue delivery of updates that were held back during a write. They stay
+     * pending, so the task sends whatever is newest when it runs.
+     */
+    private void release(SessionState state) {
+        MessageChannel channel = outboundChannel;
+        if (channel == null || state.pending.isEmpty()) {
+            return;
+        }
+        for (Message<?> message : new ArrayList<>(state.pending.values())) {
+            channel.send(MessageBuilder.fromMessage(message).setHeader(RELEASED_HEADER, Boolean.TRUE).build());
+        }
+    }
+
+    // ============ Sessions ============
+
+    @Override
+    public @NonNull WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+                SessionState state = new SessionState(String.valueOf(session.getRemoteAddress()));
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(new MeteredSession(session, state));
+            }
+
+            @Override
+            public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus)
+                    throws Exception {
+                SessionState state = sessions.remove(session.getId());
+                if (state != null && state.conflated.get() > 0) {
+                    log.debug("Session {} closed after {} conflated updates", session.getId(),
+                            state.conflated.get());
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Sits under Spring's concurrent send decorator, so sendMessage here is an
+     * actual socket write
+     */
+    private class MeteredSession extends WebSocketSessionDecorator {
+        private final SessionState state;
+
+        MeteredSession(WebSocketSession session, SessionState state) {
+            super(session);
+            this.state = state;
+        }
+
+        @Override
+        public void sendMessage(@NonNull WebSocketMessage<?> message) throws IOException {
+            state.writing.set(true);
+            long start = System.nanoTime();
+            try {
+                super.sendMessage(message);
+                state.messagesSent.incrementAndGet();
+                state.bytesSent.addAndGet(message.getPayloadLength());
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                state.sendTimeNanos.addAndGet(elapsed);
+                if (elapsed > state.maxSendNanos) {
+                    state.maxSendNanos = elapsed;
+                }
+                state.writing.set(false);
+                release(state);
+            }
+        }
+    }
+
+    // ============ Metrics ============
+
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        sessions.forEach((id, state) -> {
+            Map<String, Object> stats = new HashMap<>();
+            long sent = state.messagesSent.get();
+            stats.put("sessionId", id);
+            stats.put("remoteAddress", state.remoteAddress);
+            stats.put("connectedAt", state.connectedAt);
+            stats.put("messagesSent", sent);
+            stats.put("bytesSent", state.bytesSent.get());
+            stats.put("conflated", state.conflated.get());
+            stats.put("pending", state.pending.size());
+            stats.put("writing", state.writing.get());
+            stats.put("avgSendMs", sent > 0 ? state.sendTimeNanos.get() / sent / 1e6 : 0.0);
+            stats.put("maxSendMs", state.maxSendNanos / 1e6);
+            result.add(stats);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package com.nidar.gcs.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.lang.NonNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Accepts request bodies sent with Content-Encoding: gzip, so agents on slow
+ * links can compress telemetry batches. Other requests pass through untouched.
+ *
+ * The body is inflated before the request is handed on, at most
+ * max-inflated-bytes of it; a larger body is refused with 413 and a corrupt
+ * one with 400, so a small upload cannot expand without bound.
+ */
+@Component
+@Slf4j
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    @Value("${request.gzip.max-inflated-bytes:16777216}")
+    private long maxInflatedBytes;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String encoding = request.getHeader("Content-Encoding");
+        return encoding == null || !encoding.trim().equalsIgnoreCase("gzip");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        byte[] body;
+        try {
+            body = inflate(request.getInputStream());
+        } catch (IOException e) {
+            log.debug("Rejected gzip body from {}: {}", request.getRemoteAddr(), e.getMessage());
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid gzip body");
+            return;
+        }
+        if (body == null) {
+            log.warn("Rejected gzip body from {}: inflates past {} bytes", request.getRemoteAddr(), maxInflatedBytes);
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Decompressed body exceeds " + maxInflatedBytes + " bytes");
+            return;
+        }
+        filterChain.doFilter(new GzipRequest(request, body), response);
+    }
+
+    /**
+     * @return the inflated body, or null if it is larger than the limit
+     */
+    private byte[] inflate(InputStream compressed) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(compressed)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = gzip.read(buffer)) >= 0) {
+                total += n;
+                if (total > maxInflatedBytes) {
+                    return null;
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static class GzipRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private ServletInputStream stream;
+
+        GzipRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            if (stream == null) {
+                ByteArrayInputStream in = new ByteArrayInputStream(body);
+                stream = new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) {
+                        return in.read(buffer, offset, length);
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return in.available() == 0;
+                    }
+
+                    // The whole body is in memory, so it is always ready
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        try {
+                            if (!isFinished()) {
+                                readListener.onDataAvailable();
+                            }
+                            if (isFinished()) {
+                                readListener.onAllDataRead();
+                            }
+                        } catch (IOException e) {
+                            readListener.onError(e);
+                        }
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                return String.valueOf(body.length);
+            }
+            return "Content-Encoding".equalsIgnoreCase(name) ? null : super.getHeader(name);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.nidar.gcs.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Threads for @Scheduled work.
+ *
+ * Background jobs (state flush, archive, rollup, retention, cluster
+ * reconnect, MAVProxy telemetry) share the taskScheduler pool, so a long
+ * rollup or retention run holds one thread and leaves the rest on time.
+ * The 50 ms ticks that pace replay and release rate-limited telemetry run on
+ * tickScheduler, which nothing slow is ever scheduled on.
+ *
+ * Declared here because the STOMP broker's own scheduler bean makes Spring
+ * Boot skip its default one, which would leave @Scheduled on the broker's.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String TICK_SCHEDULER = "tickScheduler";
+
+    @Value("${spring.task.scheduling.pool.size:4}")
+    private int poolSize;
+
+    @Value("${scheduling.tick.pool-size:2}")
+    private int tickPoolSize;
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        return scheduler(poolSize, "scheduled-");
+    }
+
+    @Bean(TICK_SCHEDULER)
+    public ThreadPoolTaskScheduler tickScheduler() {
+        return scheduler(tickPoolSize, "tick-");
+    }
+
+    private static ThreadPoolTaskScheduler scheduler(int size, String prefix) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, size));
+        scheduler.setThreadNamePrefix(prefix);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+}
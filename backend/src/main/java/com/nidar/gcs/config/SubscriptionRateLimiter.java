@@ -0,0 +1,188 @@
+package com.nidar.gcs.config;
+
+import com.nidar.gcs.service.BroadcastService;
+import com.nidar.gcs.service.FleetViewService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.lang.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-subscription rate and area limits on telemetry topics, declared in
+ * the STOMP SUBSCRIBE frame:
+ *   max-rate: 1                      - at most 1 update per second
+ *   bbox: 19.9,77.9,20.2,78.3        - minLat,minLon,maxLat,maxLon
+ *
+ * An update that arrives before the subscription is due is held, replacing
+ * any update already held, and an update outside the box is dropped. A
+ * single sweep for all sessions sends held updates once they are due, so the
+ * newest sample is always delivered and no session needs a timer of its own.
+ *
+ * Telemetry keyframes are never held: a delta is only usable on top of its
+ * keyframe, so a keyframe goes out at once and discards the held delta, which
+ * predates it. Updates re-sent by {@link ConflatingOutboundPolicy} after a
+ * write passed this limiter already and are let through.
+ */
+@Component
+@Slf4j
+public class SubscriptionRateLimiter implements ChannelInterceptor {
+
+    public static final String MAX_RATE_HEADER = "max-rate";
+    public static final String BBOX_HEADER = "bbox";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Value("${websocket.rate-limit.destinations:/topic/telemetry,/topic/telemetry/**}")
+    private String[] limitedDestinations;
+
+    // Keyed by session id, then subscription id
+    private final Map<String, Map<String, Limit>> sessions = new ConcurrentHashMap<>();
+
+    private volatile MessageChannel outboundChannel;
+
+    // Set while the sweep re-sends held updates, which are due by definition
+    private final ThreadLocal<Boolean> releasing = new ThreadLocal<>();
+
+    private static class Limit {
+        final long minIntervalNanos;
+        final double[] bbox;
+        long lastSentNanos;
+        Message<?> held;
+
+        Limit(long minIntervalNanos, double[] bbox) {
+            this.minIntervalNanos = minIntervalNanos;
+            this.bbox = bbox;
+            this.lastSentNanos = System.nanoTime() - minIntervalNanos;
+        }
+
+        boolean contains(double[] position) {
+            return bbox == null || position == null
+                    || (position[0] >= bbox[0] && position[1] >= bbox[1]
+                            && position[0] <= bbox[2] && position[1] <= bbox[3]);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.MESSAGE) {
+            return limit(message, channel);
+        }
+        if (type == SimpMessageType.SUBSCRIBE) {
+            subscribe(StompHeaderAccessor.wrap(message));
+        } else if (type == SimpMessageType.UNSUBSCRIBE) {
+            Map<String, Limit> limits = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+            if (limits != null && subscriptionId != null) {
+                limits.remove(subscriptionId);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            if (sessionId != null) {
+                sessions.remove(sessionId);
+            }
+        }
+        return message;
+    }
+
+    private void subscribe(StompHeaderAccessor accessor) {
+        String maxRate = accessor.getFirstNativeHeader(MAX_RATE_HEADER);
+        String bbox = accessor.getFirstNativeHeader(BBOX_HEADER);
+        if ((maxRate == null && bbox == null) || accessor.getDestination() == null
+                || accessor.getSubscriptionId() == null || !isLimited(accessor.getDestination())) {
+            return;
+        }
+
+        try {
+            long interval = 0;
+            if (maxRate != null) {
+                double rate = Double.parseDouble(maxRate.trim());
+                interval = rate > 0 ? (long) (1_000_000_000L / rate) : 0;
+            }
+            sessions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), new Limit(interval, bbox != null ? FleetViewService.parseBbox(bbox) : null));
+        } catch (IllegalArgumentException e) {
+            // Malformed limits: deliver everything rather than reject the subscription
+            log.warn("Ignoring limits on subscription to {}: {}", accessor.getDestination(), e.getMessage());
+        }
+    }
+
+    private boolean isLimited(String destination) {
+        for (String pattern : limitedDestinations) {
+            if (pathMatcher.match(pattern.trim(), destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Message<?> limit(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (sessionId == null || subscriptionId == null) {
+            // Client SEND frames on the inbound channel have no subscription
+            return message;
+        }
+        outboundChannel = channel;
+        Map<String, Limit> limits = sessions.get(sessionId);
+        Limit limit = limits != null ? limits.get(subscriptionId) : null;
+        if (limit == null || releasing.get() != null || ConflatingOutboundPolicy.isReleased(message)) {
+            return message;
+        }
+
+        if (!limit.contains((double[]) message.getHeaders().get(BroadcastService.POSITION_HEADER))) {
+            return null;
+        }
+        boolean keyframe = Boolean.TRUE.equals(message.getHeaders().get(BroadcastService.KEYFRAME_HEADER));
+        synchronized (limit) {
+            long now = System.nanoTime();
+            if (keyframe || now - limit.lastSentNanos >= limit.minIntervalNanos) {
+                limit.lastSentNanos = now;
+                limit.held = null;
+                return message;
+            }
+            limit.held = message;
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.rate-limit.sweep-interval:50}", scheduler = SchedulingConfig.TICK_SCHEDULER)
+    public void releaseDue() {
+        MessageChannel channel = outboundChannel;
+        if (channel == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        releasing.set(Boolean.TRUE);
+        try {
+            for (Map<String, Limit> limits : sessions.values()) {
+                for (Limit limit : limits.values()) {
+                    Message<?> due = null;
+                    synchronized (limit) {
+                        if (limit.held != null && now - limit.lastSentNanos >= limit.minIntervalNanos) {
+                            due = limit.held;
+                            limit.held = null;
+                            limit.lastSentNanos = now;
+                        }
+                    }
+                    if (due != null) {
+                        channel.send(due);
+                    }
+                }
+            }
+        } finally {
+            releasing.remove();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.nidar.gcs.config;
+
+import com.nidar.gcs.service.BroadcastService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.lang.NonNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session opt-in to binary telemetry frames.
+ *
+ * A client connects to /ws-gcs as a plain WebSocket (not SockJS, which only
+ * carries text) and sends "telemetry-format: binary" in its STOMP CONNECT
+ * frame. Telemetry messages to that session then have a binary STOMP body
+ * with content-type application/octet-stream holding a TelemetryBinaryEncoder
+ * record. Everything else, and any message without a binary form, stays
+ * JSON, so clients pick the decoder from each message's content-type.
+ */
+@Component
+@Slf4j
+public class TelemetryFormatNegotiation implements ChannelInterceptor, HandshakeInterceptor {
+
+    public static final String FORMAT_HEADER = "telemetry-format";
+    public static final String FORMAT_BINARY = "binary";
+
+    private static final String NATIVE_SESSION_ATTRIBUTE = "nativeWebSocket";
+
+    private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+
+    // ============ Handshake (plain WebSocket endpoint only) ============
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+        attributes.put(NATIVE_SESSION_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    // ============ Channels ============
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.MESSAGE) {
+            return toBinary(message);
+        }
+        if (type == SimpMessageType.CONNECT) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (FORMAT_BINARY.equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER))) {
+                if (attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_SESSION_ATTRIBUTE))) {
+                    binarySessions.add(accessor.getSessionId());
+                } else {
+                    log.debug("Binary telemetry requested over SockJS by {}, keeping JSON", accessor.getSessionId());
+                }
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            binarySessions.remove(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        }
+        return message;
+    }
+
+    private Message<?> toBinary(Message<?> message) {
+        Object binary = message.getHeaders().get(BroadcastService.BINARY_PAYLOAD_HEADER);
+        if (!(binary instanceof byte[] record)
+                || !binarySessions.contains(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.removeHeader(BroadcastService.BINARY_PAYLOAD_HEADER);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(record, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,249 @@
+package com.nidar.gcs.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nidar.gcs.model.MissionItem;
+import com.nidar.gcs.service.ClusterService;
+import com.nidar.gcs.service.GeofenceBreachEvent;
+import com.nidar.gcs.service.MissionItemsChangedEvent;
+import com.nidar.gcs.service.MissionService;
+import com.nidar.gcs.service.TelemetryPublisher;
+import com.nidar.gcs.service.VehicleService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Long-lived channel for drone agents at /ws-agent/{vehicleId}.
+ *
+ * Upstream, agents send binary telemetry frames (big-endian):
+ *   u8 type (1 = telemetry), u16 sample count, then per sample
+ *   u32 seq, i64 timestamp ms, i32 lat 1e-7 deg, i32 lon 1e-7 deg,
+ *   i32 alt mm, u16 heading 0.01 deg, u16 battery 0.01 %, u8 status
+ * Frames go through the same batch ingest as the HTTP endpoint. The agent
+ * connects with ?session={run id}, the same session it sends with HTTP
+ * batches, so sequence numbers are deduplicated per vehicle and agent run
+ * across reconnects and across both paths. When the write buffer is full the
+ * channel is closed with 1013 (try again later) and the reason
+ * "Resend after seq N"; the agent resends its samples after N on reconnect.
+ *
+ * Downstream, the vehicle's mission is pushed as JSON text when the agent
+ * connects and whenever its mission items change, and a geofence breach
+ * whose zone asks for RTL, LAND or BRAKE is sent as
+ * {"type": "command", "mode": "RTL", "zoneId": 7}.
+ *
+ * In clustered mode an agent connecting to a node that does not own its
+ * vehicle is closed with the owner's base URL in the close reason. A mission
+ * change on a node without the agent's channel is forwarded over the broker
+ * (ClusterService), and the node holding the channel pushes it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AgentChannelHandler extends BinaryWebSocketHandler {
+
+    public static final int FRAME_TELEMETRY = 1;
+    public static final int SAMPLE_BYTES = 29;
+    public static final String RESEND_PREFIX = "Resend after seq ";
+
+    // Index is the status byte of a telemetry sample
+    private static final String[] STATUS_CODES = { "UNKNOWN", "DISARMED", "ARMED", "FLYING" };
+
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_LIMIT = 256 * 1024;
+
+    private final VehicleService vehicleService;
+    private final MissionService missionService;
+    private final TelemetryPublisher telemetryPublisher;
+    private final ClusterService clusterService;
+    private final ObjectMapper objectMapper;
+
+    // One channel per vehicle; a reconnecting agent replaces its old session
+    private final Map<String, WebSocketSession> channels = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+        String vehicleId = vehicleId(session);
+        if (vehicleId == null || vehicleService.getVehicle(vehicleId) == null) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Unknown vehicle"));
+            return;
+        }
+        String owner = clusterService.ownerOf(vehicleId);
+        if (owner != null) {
+            // Clustered mode: the agent should reconnect to the node owning the vehicle
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Owned by " + owner));
+            return;
+        }
+
+        WebSocketSession channel = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS,
+                SEND_BUFFER_LIMIT);
+        session.getAttributes().put("vehicleId", vehicleId);
+        String agentSession = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams()
+                .getFirst("session");
+        session.getAttributes().put("agentSession", agentSession != null ? agentSession : "");
+        WebSocketSession previous = channels.put(vehicleId, channel);
+        if (previous != null && previous.isOpen()) {
+            previous.close(CloseStatus.NORMAL.withReason("Replaced by a new connection"));
+        }
+        log.info("Agent channel open for {} from {}", vehicleId, session.getRemoteAddress());
+
+        pushMission(vehicleId);
+    }
+
+    @Override
+    protected void handleBinaryMessage(@NonNull WebSocketSession session, @NonNull BinaryMessage message)
+            throws Exception {
+        String vehicleId = (String) session.getAttributes().get("vehicleId");
+        if (vehicleId == null) {
+            return;
+        }
+
+        VehicleService.TelemetryBatch batch;
+        try {
+            batch = decode(message.getPayload());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            log.warn("Bad telemetry frame from {}: {}", vehicleId, e.getMessage());
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+        batch.setSession((String) session.getAttributes().get("agentSession"));
+
+        VehicleService.BatchResult result = vehicleService.ingestBatch(vehicleId, batch);
+        if (result != null && result.getVehicle() != null) {
+            telemetryPublisher.publishVehicle(result.getVehicle());
+        }
+        if (result != null && result.isBacklogged()) {
+            // Frames already in flight would be dropped too, so stop the stream here
+            long resendAfter = result.getLastSeq() != null ? result.getLastSeq() : -1;
+            log.warn("Telemetry buffer full, asking {} to resend after seq {}", vehicleId, resendAfter);
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason(RESEND_PREFIX + resendAfter));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus status) {
+        String vehicleId = (String) session.getAttributes().get("vehicleId");
+        if (vehicleId != null) {
+            channels.computeIfPresent(vehicleId, (id, channel) ->
+                    channel.getId().equals(session.getId()) ? null : channel);
+            log.info("Agent channel closed for {}: {}", vehicleId, status);
+        }
+    }
+
+    /**
+     * Runs after the mission change commits, or right away outside a transaction
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMissionItemsChanged(MissionItemsChangedEvent event) {
+        if (!pushMission(event.vehicleId()) && !event.forwarded() && clusterService.isClustered()) {
+            // The agent's channel may be open on another node
+            clusterService.forwardMissionChange(event.vehicleId());
+        }
+    }
+
+    @EventListener
+    public void onGeofenceBreach(GeofenceBreachEvent event) {
+        WebSocketSession channel = event.isModeChange() ? channels.get(event.vehicleId()) : null;
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", "command");
+        message.put("vehicleId", event.vehicleId());
+        message.put("mode", event.violationAction());
+        message.put("zoneId", event.zoneId());
+        try {
+            channel.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+            log.warn("Sent {} to {} after geofence breach of zone {}", event.violationAction(), event.vehicleId(),
+                    event.zoneId());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Geofence command to {} failed: {}", event.vehicleId(), e.getMessage());
+        }
+    }
+
+    public boolean isConnected(String vehicleId) {
+        WebSocketSession channel = vehicleId != null ? channels.get(vehicleId) : null;
+        return channel != null && channel.isOpen();
+    }
+
+    /**
+     * @return false if the vehicle has no open channel on this node
+     */
+    private boolean pushMission(String vehicleId) {
+        WebSocketSession channel = channels.get(vehicleId);
+        if (channel == null || !channel.isOpen()) {
+            return false;
+        }
+
+        List<MissionItem> items = missionService.getMission(vehicleId);
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", "mission");
+        message.put("vehicleId", vehicleId);
+        message.put("items", items);
+        try {
+            channel.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+            log.info("Pushed {} mission items to {}", items.size(), vehicleId);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Mission push to {} failed: {}", vehicleId, e.getMessage());
+        }
+        return true;
+    }
+
+    private static VehicleService.TelemetryBatch decode(ByteBuffer frame) {
+        int type = frame.get() & 0xFF;
+        if (type != FRAME_TELEMETRY) {
+            throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+        int count = frame.getShort() & 0xFFFF;
+        if (frame.remaining() != count * SAMPLE_BYTES) {
+            throw new IllegalArgumentException("Expected " + count + " samples, got " + frame.remaining() + " bytes");
+        }
+
+        List<VehicleService.TelemetrySample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VehicleService.TelemetrySample sample = new VehicleService.TelemetrySample();
+            sample.setSeq(frame.getInt() & 0xFFFFFFFFL);
+            sample.setTimestamp(frame.getLong());
+            sample.setLat(frame.getInt() / 1e7);
+            sample.setLon(frame.getInt() / 1e7);
+            sample.setAlt(frame.getInt() / 1000.0);
+            sample.setHeading((frame.getShort() & 0xFFFF) / 100.0);
+            sample.setBattery((frame.getShort() & 0xFFFF) / 100.0);
+            int status = frame.get() & 0xFF;
+            sample.setStatus(status < STATUS_CODES.length ? STATUS_CODES[status] : "UNKNOWN");
+            samples.add(sample);
+        }
+
+        VehicleService.TelemetryBatch batch = new VehicleService.TelemetryBatch();
+        batch.setSamples(samples);
+        return batch;
+    }
+
+    private static String vehicleId(WebSocketSession session) {
+        if (session.getUri() == null) {
+            return null;
+        }
+        String path = session.getUri().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        return id.isEmpty() ? null : id;
+    }
+}
@@ -1,17 +1,22 @@
 package com.nidar.gcs.controller;
 
 import com.nidar.gcs.model.Detection;
-import com.nidar.gcs.model.MissionItem;
+import com.nidar.gcs.service.BroadcastService;
+import com.nidar.gcs.service.DeliveryRouteOptimizer;
+import com.nidar.gcs.service.DetectionClusterService;
 import com.nidar.gcs.service.MissionService;
 import com.nidar.gcs.service.StorageService;
 import com.nidar.gcs.service.VehicleService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.net.URI;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -28,7 +33,10 @@ public class DetectionController {
     private MissionService missionService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private BroadcastService broadcastService;
+
+    @Autowired
+    private DetectionClusterService detectionClusterService;
 
     @PostMapping("/upload_detection/{vehicle}")
     public Detection uploadDetection(@PathVariable String vehicle,
@@ -56,14 +64,41 @@ public class DetectionController {
                 lon,
                 confidence,
                 false,
-                System.currentTimeMillis());
-
-        vehicleService.addDetection(detection);
+                System.currentTimeMillis(),
+                null,
+                null,
+                null);
+
+        // Merged into an existing target if it is a repeat sighting
+        DetectionClusterService.Ingested ingested = detectionClusterService.ingest(detection);
+        Detection target = ingested.target();
+
+        // Drop the image the target no longer shows
+        String discarded = ingested.discardedImageUrl();
+        if (discarded != null) {
+            String stored = discarded.equals(fileDownloadUri) ? filename : storedFilename(discarded);
+            if (stored != null) {
+                storageService.delete(stored);
+            }
+        }
 
         // Broadcast
-        messagingTemplate.convertAndSend("/topic/detections", detection);
+        broadcastService.publish(target, "/topic/detections");
+
+        return target;
+    }
 
-        return detection;
+    /**
+     * Name of the stored file behind an upload URL, or null if it is not one
+     */
+    private static String storedFilename(String imageUrl) {
+        try {
+            String path = URI.create(imageUrl).getPath();
+            int slash = path != null ? path.lastIndexOf("/uploads/") : -1;
+            return slash >= 0 ? path.substring(slash + "/uploads/".length()) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     @GetMapping("/detections")
@@ -71,22 +106,57 @@ public class DetectionController {
         return vehicleService.getDetections();
     }
 
+    @GetMapping("/detections/clusters/stats")
+    public Map<String, Object> getClusterStats() {
+        return detectionClusterService.getStats();
+    }
+
+    /**
+     * Approve a detection as a delivery target. The delivery mission is not
+     * touched; approved targets are flown by planning a route over them
+     * (POST /detections/route)
+     */
     @PostMapping("/detections/{id}/approve")
     public void approveDetection(@PathVariable String id) {
-        Detection d = vehicleService.getDetection(id);
-        if (d != null) {
-            d.setApproved(true);
-
-            // Generate Mission for Delivery Drone
-            missionService.generateMissionForDetection(d, "delivery");
-            List<MissionItem> newMission = missionService.getMission("delivery");
-            if (newMission != null) {
-                // Broadcast Mission Update
-                messagingTemplate.convertAndSend("/topic/missions/delivery", newMission);
-            }
+        if (vehicleService.approveDetection(id)) {
+            Detection d = vehicleService.getDetection(id);
 
             // Broadcast Detection Update (Approved status)
-            messagingTemplate.convertAndSend("/topic/detections", d);
+            if (d != null) {
+                broadcastService.publish(d, "/topic/detections");
+            }
+        }
+    }
+
+    /**
+     * Plan one multi-drop delivery mission over approved detections, those
+     * not yet delivered to unless detectionIds is given, and send it to the
+     * vehicle; 400 without a reachable target
+     */
+    @PostMapping("/detections/route")
+    public ResponseEntity<Map<String, Object>> planDeliveryRoute(
+            @RequestBody(required = false) DeliveryRouteOptimizer.RouteRequest request) {
+        try {
+            Map<String, Object> plan = missionService.planDeliveryRoute(
+                    request != null ? request : new DeliveryRouteOptimizer.RouteRequest());
+            String vehicleId = (String) plan.get("vehicleId");
+            broadcastService.publish(missionService.getMission(vehicleId), "/topic/missions/" + vehicleId);
+
+            // The routed targets are now marked delivered
+            for (Object sortie : (List<?>) plan.get("sorties")) {
+                for (Object id : (List<?>) sortie) {
+                    Detection d = vehicleService.getDetection((String) id);
+                    if (d != null) {
+                        broadcastService.publish(d, "/topic/detections");
+                    }
+                }
+            }
+            return ResponseEntity.ok(plan);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
         }
     }
 }
@@ -3,6 +3,7 @@ package com.nidar.gcs.controller;
 import com.nidar.gcs.model.Telemetry;
 import com.nidar.gcs.service.MAVProxyService;
 import com.nidar.gcs.service.TelemetryService;
+import com.nidar.gcs.service.VehicleStateStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +22,7 @@ public class DroneController {
 
     private final MAVProxyService mavProxyService;
     private final TelemetryService telemetryService;
+    private final VehicleStateStore vehicleStateStore;
 
     @PostMapping("/connect")
     public ResponseEntity<Map<String, Object>> connect() {
@@ -55,6 +57,8 @@ public class DroneController {
         if (latest != null) {
             response.put("telemetry", latest);
         }
+        response.put("telemetryWriter", telemetryService.getWriterStats());
+        response.put("stateStore", vehicleStateStore.getStats());
 
         return ResponseEntity.ok(response);
     }
@@ -1,7 +1,10 @@
 package com.nidar.gcs.controller;
 
 import com.nidar.gcs.model.GeofenceZone;
+import com.nidar.gcs.service.GeofenceIndex;
+import com.nidar.gcs.service.GeofenceMonitor;
 import com.nidar.gcs.service.GeofenceService;
+import com.nidar.gcs.service.TrajectoryValidationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +23,9 @@ import java.util.Map;
 public class GeofenceController {
 
     private final GeofenceService geofenceService;
+    private final GeofenceIndex geofenceIndex;
+    private final GeofenceMonitor geofenceMonitor;
+    private final TrajectoryValidationService trajectoryValidationService;
 
     @GetMapping
     public ResponseEntity<List<GeofenceZone>> getAllZones() {
@@ -97,4 +103,70 @@ public class GeofenceController {
             return ResponseEntity.badRequest().body(error);
         }
     }
+
+    /**
+     * Validate many positions in one call; only violating runs are returned
+     */
+    @PostMapping("/validate/batch")
+    public ResponseEntity<Map<String, Object>> validateBatch(@RequestBody TrajectoryValidationService.PositionBatch request) {
+        if (request.getMissionId() == null || request.getPositions() == null) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("valid", false);
+            error.put("message", "Missing required parameters");
+            return ResponseEntity.badRequest().body(error);
+        }
+        try {
+            return okOrNotFound(trajectoryValidationService.validatePositions(request.getMissionId(),
+                    request.getPositions()));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("valid", false);
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @GetMapping("/validate/mission/{missionId}")
+    public ResponseEntity<Map<String, Object>> validateMissionPlan(@PathVariable @NonNull Long missionId) {
+        return okOrNotFound(trajectoryValidationService.validateMissionPlan(missionId));
+    }
+
+    @GetMapping("/validate/flight/{flightLogId}")
+    public ResponseEntity<Map<String, Object>> validateFlight(@PathVariable @NonNull Long flightLogId) {
+        return okOrNotFound(trajectoryValidationService.validateFlight(flightLogId));
+    }
+
+    private static ResponseEntity<Map<String, Object>> okOrNotFound(Map<String, Object> result) {
+        return result != null ? ResponseEntity.ok(result) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/index/stats")
+    public ResponseEntity<Map<String, Object>> getIndexStats() {
+        return ResponseEntity.ok(geofenceIndex.getStats());
+    }
+
+    @GetMapping("/monitor")
+    public ResponseEntity<Map<String, Object>> getMonitorStatus() {
+        return ResponseEntity.ok(geofenceMonitor.getStatus());
+    }
+
+    /**
+     * Monitor a vehicle's live positions against a mission's zones; the
+     * MAVProxy drone ("mavproxy") uses its active mission when it has one
+     */
+    @PutMapping("/monitor/{vehicleId}")
+    public ResponseEntity<Map<String, Object>> assignMonitor(@PathVariable @NonNull String vehicleId,
+            @RequestParam @NonNull Long missionId) {
+        geofenceMonitor.assign(vehicleId, missionId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("vehicleId", vehicleId);
+        response.put("missionId", missionId);
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/monitor/{vehicleId}")
+    public ResponseEntity<Void> unassignMonitor(@PathVariable @NonNull String vehicleId) {
+        geofenceMonitor.unassign(vehicleId);
+        return ResponseEntity.noContent().build();
+    }
 }
@@ -1,15 +1,20 @@
 package com.nidar.gcs.controller;
 
-import com.nidar.gcs.model.Telemetry;
 import com.nidar.gcs.service.MissionReplayService;
+import com.nidar.gcs.service.ReplayStreamService;
+import com.nidar.gcs.service.TrajectoryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.lang.NonNull;
 
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/replay")
@@ -19,6 +24,8 @@ import java.util.Map;
 public class MissionReplayController {
 
     private final MissionReplayService missionReplayService;
+    private final ReplayStreamService replayStreamService;
+    private final TrajectoryService trajectoryService;
 
     @GetMapping("/mission/{missionId}")
     public ResponseEntity<Map<String, Object>> getMissionReplayData(@PathVariable @NonNull Long missionId) {
@@ -32,9 +39,105 @@ public class MissionReplayController {
         return ResponseEntity.ok(data);
     }
 
+    /**
+     * Keyset-paginated telemetry for a mission. Pass the previous page's
+     * nextCursor as cursor (or nextTimestamp/nextId as afterTimestamp/afterId,
+     * both together) to continue.
+     */
     @GetMapping("/telemetry/{missionId}")
-    public ResponseEntity<List<Telemetry>> getTelemetryByMission(@PathVariable @NonNull Long missionId) {
-        List<Telemetry> telemetry = missionReplayService.getTelemetryByMission(missionId);
-        return ResponseEntity.ok(telemetry);
+    public ResponseEntity<MissionReplayService.TelemetryPage> getTelemetryByMission(
+            @PathVariable @NonNull Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterTimestamp,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + MissionReplayService.DEFAULT_PAGE_SIZE) int limit) {
+        MissionReplayService.Cursor after;
+        try {
+            after = cursor != null ? MissionReplayService.Cursor.parse(cursor)
+                    : MissionReplayService.Cursor.of(afterTimestamp, afterId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        MissionReplayService.TelemetryPage page = missionReplayService.getTelemetryPage(
+                missionId, from, to, after, limit);
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * Downsampled mission track for map display: at most maxPoints points, or
+     * within tolerance metres of the recorded path when tolerance is given.
+     * Whole completed flights are served from a cached multi-resolution pyramid.
+     */
+    @GetMapping("/track/{missionId}")
+    public ResponseEntity<List<ReplayStreamService.ReplayFrame>> getMissionTrack(
+            @PathVariable @NonNull Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "1000") int maxPoints,
+            @RequestParam(required = false) Double tolerance) {
+        if (maxPoints <= 0 || (tolerance != null && !(tolerance > 0))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(trajectoryService.getMissionTrack(missionId, from, to, maxPoints, tolerance));
+    }
+
+    // ============ Server-paced replay streaming ============
+
+    @PostMapping("/sessions")
+    public ResponseEntity<?> createSession(@RequestParam @NonNull Long missionId,
+            @RequestParam(defaultValue = "1") int speed) {
+        log.info("Creating replay session for mission {} at {}x", missionId, speed);
+        return sessionResponse(() -> replayStreamService.createSession(missionId, speed));
+    }
+
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<?> getSession(@PathVariable String sessionId) {
+        return sessionResponse(() -> replayStreamService.getStatus(sessionId));
+    }
+
+    @PostMapping("/sessions/{sessionId}/play")
+    public ResponseEntity<?> play(@PathVariable String sessionId) {
+        return sessionResponse(() -> replayStreamService.play(sessionId));
+    }
+
+    @PostMapping("/sessions/{sessionId}/pause")
+    public ResponseEntity<?> pause(@PathVariable String sessionId) {
+        return sessionResponse(() -> replayStreamService.pause(sessionId));
+    }
+
+    @PostMapping("/sessions/{sessionId}/speed")
+    public ResponseEntity<?> setSpeed(@PathVariable String sessionId, @RequestParam int speed) {
+        return sessionResponse(() -> replayStreamService.setSpeed(sessionId, speed));
+    }
+
+    @PostMapping("/sessions/{sessionId}/seek")
+    public ResponseEntity<?> seek(@PathVariable String sessionId,
+            @RequestParam @NonNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime time) {
+        return sessionResponse(() -> replayStreamService.seek(sessionId, time));
+    }
+
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> closeSession(@PathVariable String sessionId) {
+        replayStreamService.closeSession(sessionId);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Replay session closed");
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> sessionResponse(Supplier<ReplayStreamService.ReplayStatus> action) {
+        try {
+            return ResponseEntity.ok(action.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
     }
 }
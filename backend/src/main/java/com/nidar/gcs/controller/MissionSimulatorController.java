@@ -21,7 +21,8 @@ public class MissionSimulatorController {
 
     @PostMapping("/validate/{missionId}")
     public ResponseEntity<MissionSimulatorService.SimulationResult> validateMission(
-            @PathVariable @NonNull Long missionId) {
+            @PathVariable @NonNull Long missionId,
+            @RequestParam(required = false) Double sampleSpacing) {
         log.info("Validating mission: {}", missionId);
 
         Mission mission = missionService.getMissionById(missionId);
@@ -29,16 +30,33 @@ public class MissionSimulatorController {
             return ResponseEntity.notFound().build();
         }
 
-        MissionSimulatorService.SimulationResult result = simulatorService.simulateMission(mission);
-        return ResponseEntity.ok(result);
+        return simulate(mission, sampleSpacing);
     }
 
     @PostMapping("/validate")
     public ResponseEntity<MissionSimulatorService.SimulationResult> validateMissionData(
-            @RequestBody Mission mission) {
+            @RequestBody Mission mission,
+            @RequestParam(required = false) Double sampleSpacing) {
         log.info("Validating mission data");
 
-        MissionSimulatorService.SimulationResult result = simulatorService.simulateMission(mission);
-        return ResponseEntity.ok(result);
+        return simulate(mission, sampleSpacing);
+    }
+
+    /**
+     * Terrain is sampled at the configured spacing unless sampleSpacing
+     * (metres) is given; a spacing under MIN_SAMPLE_SPACING is a bad request
+     */
+    private ResponseEntity<MissionSimulatorService.SimulationResult> simulate(Mission mission, Double sampleSpacing) {
+        if (sampleSpacing == null) {
+            return ResponseEntity.ok(simulatorService.simulateMission(mission));
+        }
+        try {
+            return ResponseEntity.ok(simulatorService.simulateMission(mission, sampleSpacing));
+        } catch (IllegalArgumentException e) {
+            MissionSimulatorService.SimulationResult result = new MissionSimulatorService.SimulationResult();
+            result.setValid(false);
+            result.getErrors().add(e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
     }
 }
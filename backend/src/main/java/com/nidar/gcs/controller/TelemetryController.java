@@ -0,0 +1,65 @@
+package com.nidar.gcs.controller;
+
+import com.nidar.gcs.config.ConflatingOutboundPolicy;
+import com.nidar.gcs.service.BroadcastService;
+import com.nidar.gcs.service.TelemetryRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/telemetry")
+@RequiredArgsConstructor
+@CrossOrigin(origins = { "http://localhost:5173", "http://localhost:3000" })
+public class TelemetryController {
+
+    private final TelemetryRollupService telemetryRollupService;
+    private final ConflatingOutboundPolicy outboundPolicy;
+    private final BroadcastService broadcastService;
+
+    @GetMapping("/series")
+    public ResponseEntity<List<String>> getSeries() {
+        return ResponseEntity.ok(telemetryRollupService.getSeries());
+    }
+
+    /**
+     * Telemetry of one series (e.g. vehicle:scout, drone:local) over a time
+     * range. The resolution (raw, 1 s, 10 s or 60 s) is the coarsest that
+     * still gives about maxPoints points; it is returned with the data.
+     * Results are capped; a truncated result gives nextFrom to continue from.
+     */
+    @GetMapping("/series/{series}")
+    public ResponseEntity<Map<String, Object>> getSeriesData(@PathVariable String series,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "1000") int maxPoints) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        if (!end.isAfter(from)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(telemetryRollupService.getSeriesData(series, from, end, Math.max(1, maxPoints)));
+    }
+
+    /**
+     * Per-session outbound metrics of live WebSocket subscribers: messages and
+     * bytes sent, updates conflated away, pending updates and send times
+     */
+    @GetMapping("/subscribers")
+    public ResponseEntity<List<Map<String, Object>>> getSubscribers() {
+        return ResponseEntity.ok(outboundPolicy.getSessionStats());
+    }
+
+    /**
+     * Per-topic broadcast metrics: messages, fan-out, payload bytes and
+     * serialisation time
+     */
+    @GetMapping("/broadcasts")
+    public ResponseEntity<List<Map<String, Object>>> getBroadcasts() {
+        return ResponseEntity.ok(broadcastService.getStats());
+    }
+}
@@ -0,0 +1,58 @@
+package com.nidar.gcs.controller;
+
+import com.nidar.gcs.service.ClusterService;
+import com.nidar.gcs.service.FleetViewService;
+import com.nidar.gcs.service.TelemetryPublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * STOMP requests from dashboard clients on the live telemetry topics
+ */
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryStreamController {
+
+    private final ClusterService clusterService;
+    private final FleetViewService fleetViewService;
+
+    /**
+     * Sent to /app/telemetry/keyframe as {"topic": "/topic/telemetry/scout"}
+     * when a delta refers to a keyframe the client does not have; in
+     * clustered mode the node owning the stream answers
+     */
+    @MessageMapping("/telemetry/keyframe")
+    public void requestKeyframe(@Payload Map<String, String> request) {
+        String topic = request.get("topic");
+        if (topic != null && topic.startsWith(TelemetryPublisher.DRONE_TOPIC)) {
+            clusterService.requestKeyframe(topic);
+        }
+    }
+
+    /**
+     * Sent to /app/fleet/viewport as {"bbox": [minLat, minLon, maxLat, maxLon]}
+     * as the client's map pans; applies to its /topic/fleet subscription
+     */
+    @MessageMapping("/fleet/viewport")
+    public void setViewport(@Payload Map<String, List<Double>> request, SimpMessageHeaderAccessor headers) {
+        List<Double> bbox = request.get("bbox");
+        if (bbox == null || bbox.size() != 4 || bbox.contains(null)) {
+            log.warn("Ignoring fleet viewport from {}: {}", headers.getSessionId(), request);
+            return;
+        }
+        try {
+            fleetViewService.setViewport(headers.getSessionId(),
+                    bbox.stream().mapToDouble(Double::doubleValue).toArray());
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring fleet viewport from {}: {}", headers.getSessionId(), e.getMessage());
+        }
+    }
+}
@@ -3,13 +3,20 @@ package com.nidar.gcs.controller;
 import com.nidar.gcs.model.MissionItem;
 import com.nidar.gcs.model.TelemetryPoint;
 import com.nidar.gcs.model.Vehicle;
+import com.nidar.gcs.service.BroadcastService;
+import com.nidar.gcs.service.ClusterService;
 import com.nidar.gcs.service.MAVProxyService;
 import com.nidar.gcs.service.MissionService;
+import com.nidar.gcs.service.TelemetryPublisher;
+import com.nidar.gcs.service.TrajectoryService;
 import com.nidar.gcs.service.VehicleService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,7 +36,16 @@ public class VehicleController {
     private MAVProxyService mavProxyService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private TrajectoryService trajectoryService;
+
+    @Autowired
+    private TelemetryPublisher telemetryPublisher;
+
+    @Autowired
+    private BroadcastService broadcastService;
+
+    @Autowired
+    private ClusterService clusterService;
 
     @GetMapping
     public List<Vehicle> getVehicles() {
@@ -37,27 +53,87 @@ public class VehicleController {
     }
 
     @PostMapping("/{id}/telemetry")
-    public void pushTelemetry(@PathVariable String id, @RequestBody Vehicle telemetry) {
-        vehicleService.updateTelemetry(id, telemetry.getLat(), telemetry.getLon(), telemetry.getAlt(),
+    public ResponseEntity<Void> pushTelemetry(@PathVariable String id, @RequestBody Vehicle telemetry) {
+        String owner = clusterService.ownerOf(id);
+        if (owner != null) {
+            return redirectToOwner(owner, "/api/vehicles/" + id + "/telemetry");
+        }
+        Vehicle v = vehicleService.updateTelemetry(id, telemetry.getLat(), telemetry.getLon(), telemetry.getAlt(),
                 telemetry.getHeading(), telemetry.getBattery(), telemetry.getStatus());
 
         // Broadcast to WebSocket
-        Vehicle v = vehicleService.getVehicle(id);
         if (v != null) {
-            messagingTemplate.convertAndSend("/topic/telemetry/" + id, v);
+            telemetryPublisher.publishVehicle(v);
         }
+        return ResponseEntity.ok().build();
     }
 
+    /**
+     * Ordered batch of samples from an agent; the body may be gzip encoded
+     * (Content-Encoding: gzip). Retried batches are deduplicated by seq, and
+     * only the resulting state is broadcast. 503 means the write buffer is
+     * full: samples up to lastSeq were taken, the agent resends the rest.
+     */
+    @PostMapping("/{id}/telemetry/batch")
+    public ResponseEntity<VehicleService.BatchResult> pushTelemetryBatch(@PathVariable String id,
+            @RequestBody VehicleService.TelemetryBatch batch) {
+        String owner = clusterService.ownerOf(id);
+        if (owner != null) {
+            return redirectToOwner(owner, "/api/vehicles/" + id + "/telemetry/batch");
+        }
+        VehicleService.BatchResult result = vehicleService.ingestBatch(id, batch);
+        if (result == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (result.getVehicle() != null) {
+            telemetryPublisher.publishVehicle(result.getVehicle());
+        }
+        if (result.isBacklogged()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * In clustered mode ingest for a vehicle is handled by the node owning it;
+     * 307 keeps the method and body, so agents simply follow the redirect
+     */
+    private <T> ResponseEntity<T> redirectToOwner(String owner, String path) {
+        return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT).location(URI.create(owner + path)).build();
+    }
+
+    /**
+     * Last samples pushed for the vehicle, newest first, served from memory
+     */
+    @GetMapping("/{id}/telemetry/recent")
+    public List<TelemetryPoint> getRecentTelemetry(@PathVariable String id) {
+        return vehicleService.getRecentTelemetry(id);
+    }
+
+    /**
+     * Full history by default. With maxPoints or tolerance (metres) the track
+     * is downsampled while it streams from the database.
+     */
     @GetMapping("/{id}/telemetry-history")
-    public List<TelemetryPoint> getTelemetryHistory(@PathVariable String id) {
-        return vehicleService.getTelemetry(id);
+    public ResponseEntity<List<TelemetryPoint>> getTelemetryHistory(@PathVariable String id,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) Double tolerance) {
+        if ((maxPoints != null && maxPoints <= 0) || (tolerance != null && !(tolerance > 0))) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (maxPoints == null && tolerance == null) {
+            return ResponseEntity.ok(vehicleService.getTelemetry(id));
+        }
+        return ResponseEntity.ok(trajectoryService.getVehicleTrack(id,
+                maxPoints != null ? maxPoints : Integer.MAX_VALUE, tolerance));
     }
 
     @PostMapping("/{id}/mission-upload")
     public void uploadMission(@PathVariable String id, @RequestBody List<MissionItem> mission) {
         if (mission != null) {
             missionService.setMission(id, mission);
-            messagingTemplate.convertAndSend("/topic/missions/" + id, mission);
+            broadcastService.publish(mission, "/topic/missions/" + id);
             // Mission is saved to DB; MAVProxy upload happens via DroneController
         }
     }
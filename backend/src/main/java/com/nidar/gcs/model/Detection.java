@@ -21,5 +21,8 @@ public class Detection {
     private double lon;
     private double confidence;
     private boolean approved;
-    private long timestamp;
+    private long timestamp; // Latest hit
+    private Long firstSeen; // First hit
+    private Integer hits; // Uploads merged into this target (DetectionClusterService)
+    private Boolean delivered; // In an uploaded delivery route; re-plans skip it unless named
 }
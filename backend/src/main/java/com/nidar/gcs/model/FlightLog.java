@@ -49,6 +49,10 @@ public class FlightLog {
     private Double homeLongitude;
     private Double maxDistanceFromHome;
 
+    // Columnar telemetry archive, set once the flight's rows have left the telemetry table
+    private String archivePath;
+    private Integer archivedRows;
+
     @PrePersist
     protected void onCreate() {
         if (startTime == null) {
@@ -1,5 +1,6 @@
 package com.nidar.gcs.model;
 
+import com.nidar.gcs.service.MissionFenceListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,6 +12,7 @@ import java.util.List;
 
 @Entity
 @Table(name = "missions")
+@EntityListeners(MissionFenceListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
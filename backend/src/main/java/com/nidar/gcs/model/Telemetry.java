@@ -1,5 +1,7 @@
 package com.nidar.gcs.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -8,13 +10,18 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "telemetry")
+@Table(name = "telemetry", indexes = {
+        @Index(name = "idx_telemetry_mission_ts", columnList = "mission_id, timestamp"),
+        @Index(name = "idx_telemetry_ts", columnList = "timestamp")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Telemetry {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence so inserts can be batched (IDENTITY disables JDBC batching)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "telemetry_seq")
+    @SequenceGenerator(name = "telemetry_seq", sequenceName = "telemetry_seq", allocationSize = 500)
     private Long id;
 
     private Double latitude;
@@ -32,12 +39,28 @@ public class Telemetry {
     @JoinColumn(name = "drone_id")
     private Drone drone;
 
+    // Stored as mission_id; JSON carries missionId, never the Mission graph
+    @JsonIgnore
     @ManyToOne
     @JoinColumn(name = "mission_id")
     private Mission mission;
 
+    // Progress through the active mission, live telemetry only
+    @Transient
+    private Integer currentWaypoint;
+    @Transient
+    private Integer totalWaypoints;
+
+    @JsonProperty("missionId")
+    public Long getMissionId() {
+        return mission != null ? mission.getId() : null;
+    }
+
     @PrePersist
     protected void onCreate() {
-        timestamp = LocalDateTime.now();
+        // Usually stamped when queued; the write-behind insert happens later
+        if (timestamp == null) {
+            timestamp = LocalDateTime.now();
+        }
     }
 }
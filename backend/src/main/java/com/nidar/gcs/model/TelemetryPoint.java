@@ -4,6 +4,8 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,10 +15,15 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "telemetry_log")
+@Table(name = "telemetry_log", indexes = {
+        @Index(name = "idx_telemetry_log_vehicle_ts", columnList = "vehicleId, timestamp"),
+        @Index(name = "idx_telemetry_log_ts", columnList = "timestamp")
+})
 public class TelemetryPoint {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence so inserts can be batched (IDENTITY disables JDBC batching)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "telemetry_log_seq")
+    @SequenceGenerator(name = "telemetry_log_seq", sequenceName = "telemetry_log_seq", allocationSize = 500)
     private Long logId;
 
     private String vehicleId;
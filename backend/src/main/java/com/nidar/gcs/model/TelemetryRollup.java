@@ -0,0 +1,46 @@
+package com.nidar.gcs.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate of one telemetry series over a fixed bucket (1 s, 10 s or 60 s).
+ * Series are "drone:{id}" (or "drone:local" for the MAVLink link) for the
+ * telemetry table and "vehicle:{id}" for pushed vehicle telemetry.
+ */
+@Entity
+@Table(name = "telemetry_rollup", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollup_series_bucket", columnNames = { "series", "resolution", "bucketStart" })
+}, indexes = {
+        @Index(name = "idx_rollup_resolution_bucket", columnList = "resolution, bucketStart")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String series;
+    private Integer resolution; // bucket width in seconds; 0 for raw samples in query results
+    private LocalDateTime bucketStart;
+    private Integer samples;
+
+    // Altitude and speed over the bucket
+    private Double minAltitude;
+    private Double maxAltitude;
+    private Double avgAltitude;
+    private Double minSpeed;
+    private Double maxSpeed;
+    private Double avgSpeed;
+
+    // State at the end of the bucket
+    private Double lastLatitude;
+    private Double lastLongitude;
+    private Double lastBattery;
+}
@@ -3,13 +3,16 @@ package com.nidar.gcs.model;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@Builder(toBuilder = true)
 @Entity
 @Table(name = "vehicles")
 public class Vehicle {
@@ -23,4 +26,6 @@ public class Vehicle {
     private double battery; // Percentage
     private String status; // ARMED, DISARMED, FLYING
     private long lastHeartbeat;
+    @Transient
+    private Long sampledAt; // Vehicle clock of the latest sample (epoch ms); null if it sent none
 }
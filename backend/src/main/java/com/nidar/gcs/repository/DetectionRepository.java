@@ -2,8 +2,61 @@ package com.nidar.gcs.repository;
 
 import com.nidar.gcs.model.Detection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface DetectionRepository extends JpaRepository<Detection, String> {
+    /**
+     * Approved detections not yet in an uploaded delivery route
+     */
+    @Query("SELECT d FROM Detection d WHERE d.approved = true AND (d.delivered IS NULL OR d.delivered = false)")
+    List<Detection> findUndelivered();
+
+    List<Detection> findByTimestampGreaterThan(long timestamp);
+
+    // Targeted updates, so clustering, approval and route planning do not
+    // overwrite each other's columns with a stale copy of the row
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Detection d SET d.approved = true WHERE d.id = :id")
+    int approve(@Param("id") String id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Detection d SET d.delivered = true WHERE d.id IN :ids")
+    int markDelivered(@Param("ids") Collection<String> ids);
+
+    /**
+     * Count a merged hit seen at timestamp. firstSeen is set before timestamp
+     * is raised, as MySQL applies the assignments left to right.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Detection d SET d.hits = COALESCE(d.hits, 1) + 1, " +
+            "d.firstSeen = COALESCE(d.firstSeen, d.timestamp), " +
+            "d.timestamp = CASE WHEN d.timestamp < :timestamp THEN :timestamp ELSE d.timestamp END " +
+            "WHERE d.id = :id")
+    int addHit(@Param("id") String id, @Param("timestamp") long timestamp);
+
+    /**
+     * Make a merged hit the target's best one if its confidence is higher;
+     * returns 0 if it is not
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Detection d SET d.imageUrl = :imageUrl, d.confidence = :confidence, d.lat = :lat, d.lon = :lon " +
+            "WHERE d.id = :id AND d.confidence < :confidence")
+    int replaceBestHit(@Param("id") String id,
+            @Param("imageUrl") String imageUrl,
+            @Param("confidence") double confidence,
+            @Param("lat") double lat,
+            @Param("lon") double lon);
 }
@@ -4,6 +4,17 @@ import com.nidar.gcs.model.FlightLog;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface FlightLogRepository extends JpaRepository<FlightLog, Long> {
+    Optional<FlightLog> findTopByMissionIdOrderByStartTimeDesc(Long missionId);
+
+    List<FlightLog> findByArchivePathIsNullAndEndTimeBefore(LocalDateTime cutoff);
+
+    List<FlightLog> findByMissionIdAndArchivePathIsNotNullOrderByStartTimeAsc(Long missionId);
+
+    boolean existsByMissionIdAndArchivePathIsNotNull(Long missionId);
 }
@@ -1,7 +1,10 @@
 package com.nidar.gcs.repository;
 
 import com.nidar.gcs.model.TelemetryPoint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +12,26 @@ import java.util.List;
 @Repository
 public interface TelemetryPointRepository extends JpaRepository<TelemetryPoint, Long> {
     List<TelemetryPoint> findByVehicleId(String vehicleId);
+
+    long countByVehicleId(String vehicleId);
+
+    /**
+     * Keyset page of a vehicle's history after the (timestamp, logId) cursor,
+     * served by idx_telemetry_log_vehicle_ts.
+     */
+    @Query("SELECT p FROM TelemetryPoint p WHERE p.vehicleId = :vehicleId " +
+            "AND (p.timestamp > :afterTimestamp OR (p.timestamp = :afterTimestamp AND p.logId > :afterId)) " +
+            "ORDER BY p.timestamp ASC, p.logId ASC")
+    List<TelemetryPoint> findVehiclePage(@Param("vehicleId") String vehicleId,
+            @Param("afterTimestamp") long afterTimestamp,
+            @Param("afterId") long afterId,
+            Pageable pageable);
+
+    List<TelemetryPoint> findByTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(long from, long to);
+
+    List<TelemetryPoint> findByVehicleIdAndTimestampBetweenOrderByTimestampAsc(String vehicleId, long from, long to,
+            Pageable pageable);
+
+    @Query("SELECT MIN(p.timestamp) FROM TelemetryPoint p WHERE p.timestamp >= :from")
+    Long findFirstTimestampFrom(@Param("from") long from);
 }
@@ -1,12 +1,78 @@
 package com.nidar.gcs.repository;
 
 import com.nidar.gcs.model.Telemetry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface TelemetryRepository extends JpaRepository<Telemetry, Long> {
     List<Telemetry> findTop100ByOrderByTimestampDesc();
+
+    long countByMissionId(Long missionId);
+
+    long countByMissionIdAndTimestampBetween(Long missionId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Keyset page of a mission's telemetry: rows strictly after the
+     * (timestamp, id) cursor and up to {@code to}, served by
+     * idx_telemetry_mission_ts.
+     */
+    @Query("SELECT t FROM Telemetry t LEFT JOIN FETCH t.drone LEFT JOIN FETCH t.mission m " +
+            "WHERE m.id = :missionId AND t.timestamp <= :to " +
+            "AND (t.timestamp > :afterTimestamp OR (t.timestamp = :afterTimestamp AND t.id > :afterId)) " +
+            "ORDER BY t.timestamp ASC, t.id ASC")
+    List<Telemetry> findMissionPage(@Param("missionId") Long missionId,
+            @Param("afterTimestamp") LocalDateTime afterTimestamp,
+            @Param("afterId") Long afterId,
+            @Param("to") LocalDateTime to,
+            Pageable pageable);
+
+    /**
+     * Bulk delete of a mission's rows in [from, to], once they are archived
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Telemetry t WHERE t.mission.id = :missionId AND t.timestamp BETWEEN :from AND :to")
+    int deleteMissionRange(@Param("missionId") Long missionId,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to);
+
+    /**
+     * Raw samples in [from, to) as (timestamp, droneId, latitude, longitude,
+     * altitude, speed, battery) tuples, for rollups. Served by idx_telemetry_ts.
+     */
+    @Query("SELECT t.timestamp, d.id, t.latitude, t.longitude, t.altitude, t.speed, t.battery " +
+            "FROM Telemetry t LEFT JOIN t.drone d " +
+            "WHERE t.timestamp >= :from AND t.timestamp < :to ORDER BY t.timestamp ASC, t.id ASC")
+    List<Object[]> findSamples(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * Raw samples of one drone in [from, to], shaped as findSamples
+     */
+    @Query("SELECT t.timestamp, d.id, t.latitude, t.longitude, t.altitude, t.speed, t.battery " +
+            "FROM Telemetry t JOIN t.drone d " +
+            "WHERE d.id = :droneId AND t.timestamp >= :from AND t.timestamp <= :to ORDER BY t.timestamp ASC, t.id ASC")
+    List<Object[]> findDroneSamples(@Param("droneId") Long droneId, @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to, Pageable pageable);
+
+    /**
+     * Raw samples of the local MAVLink link (rows without a drone) in [from, to]
+     */
+    @Query("SELECT t.timestamp, d.id, t.latitude, t.longitude, t.altitude, t.speed, t.battery " +
+            "FROM Telemetry t LEFT JOIN t.drone d " +
+            "WHERE d IS NULL AND t.timestamp >= :from AND t.timestamp <= :to " +
+            "ORDER BY t.timestamp ASC, t.id ASC")
+    List<Object[]> findLocalSamples(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+            Pageable pageable);
+
+    @Query("SELECT MIN(t.timestamp) FROM Telemetry t WHERE t.timestamp >= :from")
+    LocalDateTime findFirstTimestampFrom(@Param("from") LocalDateTime from);
 }
@@ -0,0 +1,30 @@
+package com.nidar.gcs.repository;
+
+import com.nidar.gcs.model.TelemetryRollup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TelemetryRollupRepository extends JpaRepository<TelemetryRollup, Long> {
+    Optional<TelemetryRollup> findTopByResolutionOrderByBucketStartDesc(Integer resolution);
+
+    List<TelemetryRollup> findBySeriesAndResolutionAndBucketStartBetweenOrderByBucketStartAsc(String series,
+            Integer resolution, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    @Query("SELECT DISTINCT r.series FROM TelemetryRollup r ORDER BY r.series")
+    List<String> findSeries();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TelemetryRollup r WHERE r.bucketStart >= :from AND r.bucketStart < :to")
+    int deleteBucketsBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,242 @@
+package com.nidar.gcs.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.lang.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * WebSocket broadcasts with one JSON serialisation per payload. The payload
+ * is written into a per-thread reusable buffer, copied out once, and the same
+ * bytes are published to every destination, instead of convertAndSend running
+ * Jackson again for each one. Encode time and bytes are measured per topic.
+ *
+ * A publish may also carry a binary encoding of the same update, attached as
+ * a header; it replaces the JSON body only for sessions that negotiated
+ * binary frames. Its size and encode time are measured alongside the JSON
+ * ones, which gives a live comparison of the two formats per topic.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BroadcastService {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    private static final int BINARY_BUFFER_SIZE = 1024;
+
+    /**
+     * Header holding the binary alternative of a message body (byte[])
+     */
+    public static final String BINARY_PAYLOAD_HEADER = "nidarBinaryPayload";
+
+    /**
+     * Header holding the position an update refers to ({lat, lon}), for
+     * per-subscription area filters
+     */
+    public static final String POSITION_HEADER = "nidarPosition";
+
+    /**
+     * Header set (true) on telemetry keyframes, which flow control must
+     * deliver rather than hold or replace with a later delta
+     */
+    public static final String KEYFRAME_HEADER = "nidarKeyframe";
+
+    // Replay topics carry a session UUID; metrics group them together
+    private static final Pattern UUID_SEGMENT = Pattern.compile(
+            "/[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(?=/|$)");
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+    private final ThreadLocal<ByteBuffer> binaryBuffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocate(BINARY_BUFFER_SIZE));
+    private final Map<String, TopicStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Exposes the backing array so the encoded bytes are copied exactly once
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void release() {
+            // Don't keep one outsized payload's buffer around for good
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                buf = new byte[BUFFER_SIZE];
+            }
+            reset();
+        }
+    }
+
+    private static class TopicStats {
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong destinations = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong encodeNanos = new AtomicLong();
+        volatile long maxEncodeNanos;
+        volatile int maxBytes;
+        final AtomicLong binaryMessages = new AtomicLong();
+        final AtomicLong binaryBytes = new AtomicLong();
+        final AtomicLong binaryEncodeNanos = new AtomicLong();
+    }
+
+    /**
+     * Writes the binary form of an update at the buffer's position
+     */
+    @FunctionalInterface
+    public interface BinaryEncoding {
+        void writeTo(ByteBuffer out);
+    }
+
+    /**
+     * Serialise the payload once and publish it to each destination
+     */
+    public void publish(@NonNull Object payload, @NonNull String... destinations) {
+        publish(payload, null, destinations);
+    }
+
+    /**
+     * As publish, with a binary alternative for sessions that negotiated it
+     */
+    public void publish(@NonNull Object payload, BinaryEncoding binary, @NonNull String... destinations) {
+        publish(payload, binary, null, destinations);
+    }
+
+    /**
+     * As publish, also tagging the message with the position of the update
+     */
+    public void publish(@NonNull Object payload, BinaryEncoding binary, double[] position,
+            @NonNull String... destinations) {
+        publish(payload, binary, position, false, destinations);
+    }
+
+    /**
+     * As publish, also marking whether the update is a telemetry keyframe
+     */
+    public void publish(@NonNull Object payload, BinaryEncoding binary, double[] position, boolean keyframe,
+            @NonNull String... destinations) {
+        if (destinations.length == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        byte[] body;
+        Buffer buffer = buffers.get();
+        try {
+            objectMapper.writeValue(buffer, payload);
+            body = new byte[buffer.size()];
+            System.arraycopy(buffer.array(), 0, body, 0, buffer.size());
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialise broadcast to {}: {}", destinations[0], e.getMessage());
+            return;
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        } finally {
+            buffer.release();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (position != null) {
+            accessor.setHeader(POSITION_HEADER, position);
+        }
+        if (keyframe) {
+            accessor.setHeader(KEYFRAME_HEADER, Boolean.TRUE);
+        }
+        long binaryElapsed = 0;
+        int binarySize = -1;
+        if (binary != null) {
+            long binaryStart = System.nanoTime();
+            ByteBuffer out = binaryBuffers.get();
+            out.clear();
+            binary.writeTo(out);
+            byte[] record = new byte[out.position()];
+            out.flip();
+            out.get(record);
+            binaryElapsed = System.nanoTime() - binaryStart;
+            binarySize = record.length;
+            accessor.setHeader(BINARY_PAYLOAD_HEADER, record);
+        }
+        Message<byte[]> message = MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+        for (String destination : destinations) {
+            messagingTemplate.send(destination, message);
+        }
+
+        record(destinations[0], destinations.length, body.length, elapsed, binarySize, binaryElapsed);
+    }
+
+    private void record(String destination, int fanOut, int size, long encodeNanos, int binarySize,
+            long binaryEncodeNanos) {
+        TopicStats topic = stats.computeIfAbsent(UUID_SEGMENT.matcher(destination).replaceAll("/{id}"),
+                key -> new TopicStats());
+        topic.messages.incrementAndGet();
+        topic.destinations.addAndGet(fanOut);
+        topic.bytes.addAndGet(size);
+        topic.encodeNanos.addAndGet(encodeNanos);
+        if (encodeNanos > topic.maxEncodeNanos) {
+            topic.maxEncodeNanos = encodeNanos;
+        }
+        if (size > topic.maxBytes) {
+            topic.maxBytes = size;
+        }
+        if (binarySize >= 0) {
+            topic.binaryMessages.incrementAndGet();
+            topic.binaryBytes.addAndGet(binarySize);
+            topic.binaryEncodeNanos.addAndGet(binaryEncodeNanos);
+        }
+    }
+
+    /**
+     * Per topic (keyed by the first destination of each publish)
+     */
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        stats.forEach((topic, s) -> {
+            long messages = s.messages.get();
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("topic", topic);
+            entry.put("messages", messages);
+            entry.put("destinations", s.destinations.get());
+            entry.put("bytes", s.bytes.get());
+            entry.put("avgBytes", messages > 0 ? s.bytes.get() / messages : 0);
+            entry.put("maxBytes", s.maxBytes);
+            entry.put("avgEncodeMicros", messages > 0 ? s.encodeNanos.get() / messages / 1000.0 : 0.0);
+            entry.put("maxEncodeMicros", s.maxEncodeNanos / 1000.0);
+            long binaryMessages = s.binaryMessages.get();
+            if (binaryMessages > 0) {
+                entry.put("avgBinaryBytes", s.binaryBytes.get() / binaryMessages);
+                entry.put("avgBinaryEncodeMicros", s.binaryEncodeNanos.get() / binaryMessages / 1000.0);
+            }
+            result.add(entry);
+        });
+        result.sort((a, b) -> ((String) a.get("topic")).compareTo((String) b.get("topic")));
+        return result;
+    }
+}
@@ -0,0 +1,277 @@
+package com.nidar.gcs.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nidar.gcs.model.Vehicle;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.ReactorNettyTcpStompClient;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clustered mode (websocket.broker.mode=relay). Several backend nodes share
+ * topics through an external STOMP broker, so a browser on any node sees
+ * every vehicle.
+ *
+ * Ingest is sharded by vehicle id over cluster.nodes with rendezvous hashing,
+ * so adding or removing a node only moves the vehicles it gains or loses:
+ * the owner of a vehicle
+ * applies its telemetry, persists its state and publishes its topics; other
+ * nodes redirect ingest to it. Owners also publish each new state to
+ * /topic/cluster.vehicles (see TelemetryPublisher), which every node follows over its own broker
+ * connection to keep its in-memory state and fleet index complete. Keyframe
+ * requests are forwarded the same way, to whichever node owns the stream, and
+ * so are mission changes, so the node holding a vehicle's agent channel
+ * pushes the new mission wherever it was written.
+ *
+ * With the in-process simple broker (the default) there is one node, which
+ * owns everything, and none of this is active.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterService {
+
+    public static final String VEHICLES_TOPIC = "/topic/cluster.vehicles";
+    public static final String KEYFRAME_REQUESTS_TOPIC = "/topic/cluster.keyframe-requests";
+    public static final String MISSION_CHANGES_TOPIC = "/topic/cluster.mission-changes";
+
+    private final VehicleStateStore stateStore;
+    private final FleetViewService fleetViewService;
+    private final TelemetryPublisher telemetryPublisher;
+    private final BroadcastService broadcastService;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${websocket.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${websocket.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    // Base URLs of all nodes, the same set on every node (order does not matter)
+    @Value("${cluster.nodes:}")
+    private String[] nodes;
+
+    @Value("${cluster.self:}")
+    private String self;
+
+    private ReactorNettyTcpStompClient stompClient;
+    private volatile StompSession session;
+    private volatile boolean connecting;
+
+    @PostConstruct
+    public void init() {
+        if (!isClustered()) {
+            return;
+        }
+        if (nodes.length > 0 && !Arrays.asList(nodes).contains(self)) {
+            throw new IllegalStateException("cluster.self (" + self + ") is not one of cluster.nodes");
+        }
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient = new ReactorNettyTcpStompClient(relayHost, relayPort);
+        stompClient.setMessageConverter(converter);
+        log.info("Clustered mode: node {} of {}, broker {}:{}", self, List.of(nodes), relayHost, relayPort);
+        connect();
+    }
+
+    public boolean isClustered() {
+        return "relay".equalsIgnoreCase(brokerMode);
+    }
+
+    // ============ Sharding ============
+
+    /**
+     * Base URL of the node that owns the vehicle, or null if it is this one.
+     * The owner is the node scoring highest for the vehicle (rendezvous
+     * hashing).
+     */
+    public String ownerOf(@NonNull String vehicleId) {
+        if (!isClustered() || nodes.length <= 1) {
+            return null;
+        }
+        String owner = null;
+        long best = 0;
+        for (String node : nodes) {
+            long score = score(node, vehicleId);
+            if (owner == null || Long.compareUnsigned(score, best) > 0
+                    || (score == best && node.compareTo(owner) < 0)) {
+                owner = node;
+                best = score;
+            }
+        }
+        return owner.equals(self) ? null : owner;
+    }
+
+    /**
+     * FNV-1a over node and vehicle id, finished with the MurmurHash3 mixer so
+     * similar node URLs still spread evenly
+     */
+    private static long score(String node, String vehicleId) {
+        long h = 0xcbf29ce484222325L;
+        String key = node + '\n' + vehicleId;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // ============ State and keyframe exchange ============
+
+    /**
+     * Answer a keyframe request locally if this node owns the stream,
+     * otherwise pass it to the owner. The MAVProxy drone stream is always
+     * local, since the link belongs to the node it runs on.
+     */
+    public void requestKeyframe(@NonNull String topic) {
+        if (ownsStream(topic)) {
+            telemetryPublisher.publishKeyframe(topic);
+        } else {
+            broadcastService.publish(Map.of("topic", topic), KEYFRAME_REQUESTS_TOPIC);
+        }
+    }
+
+    /**
+     * Tell the other nodes that a vehicle's mission changed; the one holding
+     * its agent channel pushes it (see AgentChannelHandler)
+     */
+    public void forwardMissionChange(@NonNull String vehicleId) {
+        broadcastService.publish(Map.of("vehicleId", vehicleId), MISSION_CHANGES_TOPIC);
+    }
+
+    private boolean ownsStream(String topic) {
+        return !topic.startsWith(TelemetryPublisher.VEHICLE_TOPIC_PREFIX)
+                || ownerOf(topic.substring(TelemetryPublisher.VEHICLE_TOPIC_PREFIX.length())) == null;
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.reconnect-interval:5000}")
+    public void ensureConnected() {
+        if (isClustered() && stompClient != null && !connecting && (session == null || !session.isConnected())) {
+            connect();
+        }
+    }
+
+    private void connect() {
+        connecting = true;
+        StompHeaders headers = new StompHeaders();
+        headers.setLogin(relayLogin);
+        headers.setPasscode(relayPasscode);
+        stompClient.connectAsync(headers, new StompSessionHandlerAdapter() {
+            @Override
+            public void afterConnected(@NonNull StompSession connected, @NonNull StompHeaders connectedHeaders) {
+                connected.subscribe(VEHICLES_TOPIC, new VehicleStateHandler());
+                connected.subscribe(KEYFRAME_REQUESTS_TOPIC, new KeyframeRequestHandler());
+                connected.subscribe(MISSION_CHANGES_TOPIC, new MissionChangeHandler());
+                session = connected;
+                log.info("Cluster feed connected to {}:{}", relayHost, relayPort);
+            }
+
+            @Override
+            public void handleException(@NonNull StompSession failed, StompCommand command,
+                    @NonNull StompHeaders frameHeaders, @NonNull byte[] payload, @NonNull Throwable exception) {
+                log.warn("Cluster feed message failed: {}", exception.getMessage());
+            }
+
+            @Override
+            public void handleTransportError(@NonNull StompSession failed, @NonNull Throwable exception) {
+                log.warn("Cluster feed connection lost: {}", exception.getMessage());
+            }
+        }).whenComplete((connected, error) -> {
+            connecting = false;
+            if (error != null) {
+                log.warn("Cluster feed could not connect to {}:{}: {}", relayHost, relayPort, error.getMessage());
+            }
+        });
+    }
+
+    private class VehicleStateHandler implements StompFrameHandler {
+        @Override
+        public @NonNull Type getPayloadType(@NonNull StompHeaders headers) {
+            return Vehicle.class;
+        }
+
+        @Override
+        public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+            Vehicle vehicle = (Vehicle) payload;
+            // The owner has applied it already
+            if (vehicle == null || ownerOf(vehicle.getId()) == null) {
+                return;
+            }
+            stateStore.loadVehicle(vehicle);
+            fleetViewService.update(vehicle);
+        }
+    }
+
+    private class KeyframeRequestHandler implements StompFrameHandler {
+        @Override
+        public @NonNull Type getPayloadType(@NonNull StompHeaders headers) {
+            return Map.class;
+        }
+
+        @Override
+        public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+            Object topic = payload instanceof Map<?, ?> request ? request.get("topic") : null;
+            if (topic instanceof String requested && requested.startsWith(TelemetryPublisher.VEHICLE_TOPIC_PREFIX)
+                    && ownsStream(requested)) {
+                telemetryPublisher.publishKeyframe(requested);
+            }
+        }
+    }
+
+    private class MissionChangeHandler implements StompFrameHandler {
+        @Override
+        public @NonNull Type getPayloadType(@NonNull StompHeaders headers) {
+            return Map.class;
+        }
+
+        @Override
+        public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+            Object vehicleId = payload instanceof Map<?, ?> change ? change.get("vehicleId") : null;
+            if (vehicleId instanceof String changed) {
+                eventPublisher.publishEvent(new MissionItemsChangedEvent(changed, true));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+        if (stompClient != null) {
+            stompClient.shutdown();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.nidar.gcs.service;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-drop delivery routes: the shortest set of sorties from home that
+ * visits every target, with at most payloadCapacity drops and rangeMetres of
+ * flight per sortie.
+ *
+ * Route first, split second: a tour through home and all targets is built by
+ * randomised nearest neighbour and improved by 2-opt and Or-opt (moving runs
+ * of 1-3 targets), then cut optimally into feasible sorties by a shortest
+ * path over tour positions. Restarts run in parallel and the cheapest split
+ * wins; the search stops early at time-limit.
+ */
+@Service
+@Slf4j
+public class DeliveryRouteOptimizer {
+
+    private static final double METRES_PER_DEG_LAT = 110_540;
+    private static final double METRES_PER_DEG_LON = 111_320;
+    private static final double EPSILON = 1e-7;
+
+    @Value("${delivery.route.restarts:16}")
+    private int restarts;
+
+    @Value("${delivery.route.time-limit:800}")
+    private long timeLimitMs;
+
+    @Data
+    public static class RouteRequest {
+        private String vehicleId; // "delivery" if absent
+        private List<String> detectionIds; // every approved detection if absent
+        private Integer payloadCapacity; // drops per sortie
+        private Double rangeMetres; // flight distance per sortie, from the battery budget
+        private Double startLat; // the vehicle's position if absent
+        private Double startLon;
+    }
+
+    /**
+     * Sorties as target indexes in flying order; targets a sortie cannot
+     * reach and return from are listed in unreachable
+     */
+    public record Solution(List<int[]> sorties, double distanceMetres, int[] unreachable, int restarts,
+            long elapsedMs) {
+    }
+
+    /**
+     * Solve over straight-line distances
+     */
+    public Solution solve(double homeLat, double homeLon, double[] lat, double[] lon, int capacity,
+            double rangeMetres) {
+        int count = lat.length;
+        double[][] dist = new double[count + 1][count + 1];
+        for (int a = 0; a <= count; a++) {
+            for (int b = a + 1; b <= count; b++) {
+                double d = distance(a == 0 ? homeLat : lat[a - 1], a == 0 ? homeLon : lon[a - 1],
+                        lat[b - 1], lon[b - 1]);
+                dist[a][b] = d;
+                dist[b][a] = d;
+            }
+        }
+        return solve(dist, capacity, rangeMetres);
+    }
+
+    /**
+     * Solve over given leg lengths in metres, e.g. of routes around geofences:
+     * node 0 is home and node k + 1 is target k, dist[a][b] the flight from a
+     * to b, infinite where there is no route
+     */
+    public Solution solve(double[][] dist, int capacity, double rangeMetres) {
+        long started = System.currentTimeMillis();
+        int count = dist.length - 1;
+        capacity = Math.max(1, capacity);
+
+        List<Integer> reachable = new ArrayList<>();
+        List<Integer> unreachable = new ArrayList<>();
+        for (int k = 1; k <= count; k++) {
+            (dist[0][k] + dist[k][0] <= rangeMetres ? reachable : unreachable).add(k);
+        }
+        if (reachable.isEmpty()) {
+            return new Solution(List.of(), 0, unreachable.stream().mapToInt(k -> k - 1).toArray(), 0,
+                    System.currentTimeMillis() - started);
+        }
+
+        int[] nodes = new int[reachable.size() + 1];
+        for (int i = 0; i < reachable.size(); i++) {
+            nodes[i + 1] = reachable.get(i);
+        }
+        long deadline = System.nanoTime() + timeLimitMs * 1_000_000L;
+        int cap = capacity;
+        Candidate best = IntStream.range(0, Math.max(1, restarts)).parallel()
+                .mapToObj(r -> search(dist, nodes, cap, rangeMetres, r, deadline))
+                .min(Comparator.comparingDouble(c -> c.cost))
+                .orElseThrow();
+
+        List<int[]> sorties = new ArrayList<>();
+        for (int[] sortie : best.sorties) {
+            sorties.add(Arrays.stream(sortie).map(k -> k - 1).toArray());
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        log.info("Delivery route for {} targets: {} sorties, {} m, {} unreachable, {}ms", count, sorties.size(),
+                Math.round(best.cost), unreachable.size(), elapsed);
+        return new Solution(sorties, best.cost, unreachable.stream().mapToInt(k -> k - 1).toArray(),
+                Math.max(1, restarts), elapsed);
+    }
+
+    private record Candidate(double cost, List<int[]> sorties) {
+    }
+
+    private static Candidate search(double[][] dist, int[] nodes, int capacity, double range, int restart,
+            long deadline) {
+        SplittableRandom random = new SplittableRandom(31L * restart + 7);
+        int[] tour = nearestNeighbour(dist, nodes, restart == 0 ? null : random);
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = twoOpt(dist, tour, deadline);
+            improved |= orOpt(dist, tour, deadline);
+        }
+        return split(dist, tour, capacity, range);
+    }
+
+    /**
+     * Closed tour from home; with a random source each step picks one of the
+     * three nearest unvisited targets
+     */
+    private static int[] nearestNeighbour(double[][] dist, int[] nodes, SplittableRandom random) {
+        int m = nodes.length;
+        int[] tour = new int[m];
+        boolean[] used = new boolean[m];
+        used[0] = true;
+        int current = 0;
+        for (int step = 1; step < m; step++) {
+            int[] nearest = { -1, -1, -1 };
+            for (int i = 1; i < m; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                for (int r = 0; r < nearest.length; r++) {
+                    if (nearest[r] < 0 || dist[nodes[current]][nodes[i]] < dist[nodes[current]][nodes[nearest[r]]]) {
+                        System.arraycopy(nearest, r, nearest, r + 1, nearest.length - r - 1);
+                        nearest[r] = i;
+                        break;
+                    }
+                }
+            }
+            int options = nearest[2] >= 0 ? 3 : nearest[1] >= 0 ? 2 : 1;
+            int next = nearest[random != null ? random.nextInt(options) : 0];
+            used[next] = true;
+            tour[step] = nodes[next];
+            current = next;
+        }
+        tour[0] = nodes[0];
+        return tour;
+    }
+
+    /**
+     * One pass of 2-opt over the closed tour, home kept at index 0
+     */
+    private static boolean twoOpt(double[][] dist, int[] tour, long deadline) {
+        int m = tour.length;
+        boolean improved = false;
+        for (int i = 0; i < m - 2 && System.nanoTime() < deadline; i++) {
+            for (int j = i + 2; j < m; j++) {
+                if (i == 0 && j == m - 1) {
+                    continue; // Adjacent through the wrap
+                }
+                int a = tour[i], b = tour[i + 1], c = tour[j], d = tour[(j + 1) % m];
+                double delta = dist[a][c] + dist[b][d] - dist[a][b] - dist[c][d];
+                if (delta < -EPSILON) {
+                    reverse(tour, i + 1, j);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * One pass of Or-opt: move a run of 1-3 targets, either way round, to
+     * the cheapest other edge of the tour
+     */
+    private static boolean orOpt(double[][] dist, int[] tour, long deadline) {
+        int m = tour.length;
+        boolean improved = false;
+        for (int length = 1; length <= 3 && length < m - 1; length++) {
+            for (int i = 1; i + length <= m && System.nanoTime() < deadline; i++) {
+                int first = tour[i], last = tour[i + length - 1];
+                int prev = tour[i - 1], next = tour[(i + length) % m];
+                double removed = dist[prev][first] + dist[last][next] - dist[prev][next];
+
+                int bestEdge = -1;
+                boolean bestReversed = false;
+                double bestDelta = -EPSILON;
+                for (int j = 0; j < m; j++) {
+                    // Edge (tour[j], tour[j + 1]) must lie outside the run and not be its neighbour edge
+                    if (j >= i - 1 && j < i + length) {
+                        continue;
+                    }
+                    int u = tour[j], v = tour[(j + 1) % m];
+                    double forward = dist[u][first] + dist[last][v] - dist[u][v] - removed;
+                    double backward = dist[u][last] + dist[first][v] - dist[u][v] - removed;
+                    if (forward < bestDelta) {
+                        bestDelta = forward;
+                        bestEdge = j;
+                        bestReversed = false;
+                    }
+                    if (backward < bestDelta) {
+                        bestDelta = backward;
+                        bestEdge = j;
+                        bestReversed = true;
+                    }
+                }
+                if (bestEdge >= 0) {
+                    move(tour, i, length, bestEdge, bestReversed);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Moves tour[i, i + length) to just after tour[edge], keeping home first
+     */
+    private static void move(int[] tour, int i, int length, int edge, boolean reversed) {
+        int m = tour.length;
+        int[] run = Arrays.copyOfRange(tour, i, i + length);
+        if (reversed) {
+            reverse(run, 0, length - 1);
+        }
+        int[] rest = new int[m - length];
+        int edgeInRest = -1;
+        for (int k = 0, r = 0; k < m; k++) {
+            if (k >= i && k < i + length) {
+                continue;
+            }
+            if (k == edge) {
+                edgeInRest = r;
+            }
+            rest[r++] = tour[k];
+        }
+        int out = 0;
+        for (int r = 0; r < rest.length; r++) {
+            tour[out++] = rest[r];
+            if (r == edgeInRest) {
+                for (int node : run) {
+                    tour[out++] = node;
+                }
+            }
+        }
+    }
+
+    private static void reverse(int[] a, int from, int to) {
+        while (from < to) {
+            int t = a[from];
+            a[from++] = a[to];
+            a[to--] = t;
+        }
+    }
+
+    /**
+     * Cheapest cut of the tour's targets into consecutive sorties from and
+     * back to home that respect capacity and range
+     */
+    private static Candidate split(double[][] dist, int[] tour, int capacity, double range) {
+        int n = tour.length - 1;
+        double[] cost = new double[n + 1];
+        int[] cut = new int[n + 1];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        cost[0] = 0;
+        for (int i = 0; i < n; i++) {
+            if (cost[i] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double flown = 0;
+            for (int j = i + 1; j <= n && j - i <= capacity; j++) {
+                flown += j == i + 1 ? dist[0][tour[j]] : dist[tour[j - 1]][tour[j]];
+                double sortie = flown + dist[tour[j]][0];
+                if (sortie > range) {
+                    break;
+                }
+                if (cost[i] + sortie < cost[j]) {
+                    cost[j] = cost[i] + sortie;
+                    cut[j] = i;
+                }
+            }
+        }
+
+        List<int[]> sorties = new ArrayList<>();
+        for (int j = n; j > 0; j = cut[j]) {
+            sorties.add(0, Arrays.copyOfRange(tour, cut[j] + 1, j + 1));
+        }
+        return new Candidate(cost[n], sorties);
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * METRES_PER_DEG_LAT;
+        double dx = (lon2 - lon1) * METRES_PER_DEG_LON * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.hypot(dx, dy);
+    }
+}
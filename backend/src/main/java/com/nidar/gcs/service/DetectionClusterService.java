@@ -0,0 +1,241 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Detection;
+import com.nidar.gcs.repository.DetectionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Online clustering of uploaded detections: the scout reports the same target
+ * in every frame it sees it, so a detection within radius metres and window
+ * ms of an existing target is merged into it instead of stored as a new row.
+ * A stored Detection is therefore a cluster: it carries the image, confidence
+ * and position of its best-confidence hit, the number of hits and the time of
+ * the first and latest (timestamp) hit. Merges are targeted updates of those
+ * columns, so they never undo a concurrent approval or delivery.
+ *
+ * Targets seen within the window are held in a geohash grid with cells about
+ * radius metres high, so a new detection is compared only with the targets of
+ * its own and the neighbouring cells.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectionClusterService {
+
+    private static final double METRES_PER_DEG_LAT = 110_540;
+    private static final double METRES_PER_DEG_LON = 111_320;
+    private static final int MAX_BITS = 60; // Geohash precision 12
+
+    private final DetectionRepository detectionRepository;
+
+    @Value("${detection.cluster.radius:15}")
+    private double radiusMetres;
+
+    @Value("${detection.cluster.window:120000}")
+    private long windowMs;
+
+    // Geohash bits per axis and the resulting cell size in degrees
+    private int latBits;
+    private int lonBits;
+    private double cellLat;
+    private double cellLon;
+
+    private final Map<Long, List<Target>> grid = new HashMap<>();
+    private long lastSweep;
+    private long ingested;
+    private long merged;
+
+    /**
+     * The stored target and the image URL of the upload no longer referenced
+     * by it (the merged hit's, or the best hit it replaced), or null
+     */
+    public record Ingested(Detection target, String discardedImageUrl) {
+    }
+
+    private static final class Target {
+        final String id;
+        double lat;
+        double lon;
+        long lastSeen;
+        long cell;
+
+        Target(String id, double lat, double lon, long lastSeen) {
+            this.id = id;
+            this.lat = lat;
+            this.lon = lon;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // Longest geohash whose cells are still at least radius high
+        int bits = 5;
+        while (bits + 5 <= MAX_BITS && 180 / Math.pow(2, (bits + 5) / 2) * METRES_PER_DEG_LAT >= radiusMetres) {
+            bits += 5;
+        }
+        latBits = bits / 2;
+        lonBits = bits - latBits;
+        cellLat = 180 / Math.pow(2, latBits);
+        cellLon = 360 / Math.pow(2, lonBits);
+
+        long since = System.currentTimeMillis() - windowMs;
+        List<Detection> recent = detectionRepository.findByTimestampGreaterThan(since);
+        synchronized (this) {
+            for (Detection d : recent) {
+                place(new Target(d.getId(), d.getLat(), d.getLon(), d.getTimestamp()));
+            }
+        }
+        log.info("Detection clustering: {} m radius, {} ms window, geohash precision {}, {} recent targets",
+                radiusMetres, windowMs, bits / 5, recent.size());
+    }
+
+    /**
+     * Store the detection as a new target or merge it into the nearest target
+     * seen within radius and window
+     */
+    public synchronized Ingested ingest(@NonNull Detection detection) {
+        long now = detection.getTimestamp();
+        ingested++;
+        if (now - lastSweep > windowMs) {
+            sweep(now);
+        }
+
+        Target nearest = null;
+        double nearestDistance = radiusMetres;
+        int latRings = (int) Math.ceil(radiusMetres / (cellLat * METRES_PER_DEG_LAT));
+        double lonMetres = cellLon * METRES_PER_DEG_LON * Math.cos(Math.toRadians(detection.getLat()));
+        int lonRings = (int) Math.min(Math.ceil(radiusMetres / Math.max(lonMetres, 1e-6)), Math.pow(2, lonBits) / 2);
+        for (int i = -latRings; i <= latRings; i++) {
+            for (int j = -lonRings; j <= lonRings; j++) {
+                List<Target> cell = grid.get(geohash(detection.getLat() + i * cellLat, detection.getLon() + j * cellLon));
+                if (cell == null) {
+                    continue;
+                }
+                for (Target target : cell) {
+                    if (now - target.lastSeen > windowMs) {
+                        continue;
+                    }
+                    double d = distance(detection.getLat(), detection.getLon(), target.lat, target.lon);
+                    if (d <= nearestDistance) {
+                        nearestDistance = d;
+                        nearest = target;
+                    }
+                }
+            }
+        }
+
+        // Re-read the target so a concurrent approval is not overwritten
+        Detection cluster = nearest != null ? detectionRepository.findById(nearest.id).orElse(null) : null;
+        if (cluster == null) {
+            if (nearest != null) {
+                remove(nearest);
+            }
+            detection.setHits(1);
+            detection.setFirstSeen(detection.getTimestamp());
+            Detection saved = detectionRepository.save(detection);
+            place(new Target(saved.getId(), saved.getLat(), saved.getLon(), saved.getTimestamp()));
+            return new Ingested(saved, null);
+        }
+
+        merged++;
+        detectionRepository.addHit(cluster.getId(), detection.getTimestamp());
+        String discarded = detection.getImageUrl();
+        if (detection.getConfidence() > cluster.getConfidence()
+                && detectionRepository.replaceBestHit(cluster.getId(), detection.getImageUrl(),
+                        detection.getConfidence(), detection.getLat(), detection.getLon()) > 0) {
+            discarded = cluster.getImageUrl();
+        }
+        Detection saved = detectionRepository.findById(cluster.getId()).orElse(cluster);
+
+        remove(nearest);
+        nearest.lat = saved.getLat();
+        nearest.lon = saved.getLon();
+        nearest.lastSeen = saved.getTimestamp();
+        place(nearest);
+        log.debug("Detection from {} merged into target {} ({} hits, {} m away)", detection.getVehicleId(),
+                saved.getId(), saved.getHits(), Math.round(nearestDistance));
+        return new Ingested(saved, discarded);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        int open = 0;
+        for (List<Target> cell : grid.values()) {
+            open += cell.size();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("radiusMetres", radiusMetres);
+        stats.put("windowMs", windowMs);
+        stats.put("geohashPrecision", (latBits + lonBits) / 5);
+        stats.put("openTargets", open);
+        stats.put("cells", grid.size());
+        stats.put("ingested", ingested);
+        stats.put("merged", merged);
+        return stats;
+    }
+
+    private void place(Target target) {
+        target.cell = geohash(target.lat, target.lon);
+        grid.computeIfAbsent(target.cell, c -> new ArrayList<>(2)).add(target);
+    }
+
+    private void remove(Target target) {
+        List<Target> cell = grid.get(target.cell);
+        if (cell != null) {
+            cell.remove(target);
+            if (cell.isEmpty()) {
+                grid.remove(target.cell);
+            }
+        }
+    }
+
+    /**
+     * Drops targets not seen within the window
+     */
+    private void sweep(long now) {
+        Iterator<List<Target>> cells = grid.values().iterator();
+        while (cells.hasNext()) {
+            List<Target> cell = cells.next();
+            cell.removeIf(target -> now - target.lastSeen > windowMs);
+            if (cell.isEmpty()) {
+                cells.remove();
+            }
+        }
+        lastSweep = now;
+    }
+
+    /**
+     * Geohash of the cell holding the position, as interleaved bits (longitude
+     * first) rather than base32 text
+     */
+    private long geohash(double lat, double lon) {
+        lat = Math.max(-90, Math.min(90 - 1e-9, lat));
+        lon = lon - 360 * Math.floor((lon + 180) / 360); // Wrap to [-180, 180)
+        long y = (long) ((lat + 90) / 180 * (1L << latBits));
+        long x = (long) ((lon + 180) / 360 * (1L << lonBits));
+        long hash = 0;
+        int xBit = lonBits;
+        int yBit = latBits;
+        for (int i = 0; i < latBits + lonBits; i++) {
+            hash = (hash << 1) | (i % 2 == 0 ? (x >> --xBit) & 1 : (y >> --yBit) & 1);
+        }
+        return hash;
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * METRES_PER_DEG_LAT;
+        double dx = (lon2 - lon1) * METRES_PER_DEG_LON * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.hypot(dx, dy);
+    }
+}
@@ -2,6 +2,7 @@ package com.nidar.gcs.service;
 
 import com.nidar.gcs.model.Drone;
 import com.nidar.gcs.repository.DroneRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -9,30 +10,43 @@ import org.springframework.lang.NonNull;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Drone registry. Current state is served from the VehicleStateStore;
+ * position and status reports only update memory and are flushed in batches,
+ * while registry edits (create, update, delete) are written through.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DroneService {
 
     private final DroneRepository droneRepository;
+    private final VehicleStateStore stateStore;
+
+    @PostConstruct
+    public void init() {
+        droneRepository.findAll().forEach(stateStore::loadDrone);
+    }
 
     public List<Drone> getAllDrones() {
-        return droneRepository.findAll();
+        return stateStore.getDrones();
     }
 
     public Drone getDroneById(@NonNull Long id) {
-        return droneRepository.findById(id).orElse(null);
+        return stateStore.getDrone(id);
     }
 
     public Drone createDrone(Drone drone) {
         log.info("Creating new drone: {}", drone.getName());
-        return droneRepository.save(drone);
+        Drone saved = droneRepository.save(drone);
+        stateStore.loadDrone(saved);
+        return saved;
     }
 
     public Drone updateDrone(@NonNull Long id, Drone droneDetails) {
-        Drone drone = getDroneById(id);
-        if (drone != null) {
+        Drone updated = stateStore.updateDrone(id, drone -> {
             drone.setName(droneDetails.getName());
             drone.setSerialNumber(droneDetails.getSerialNumber());
             drone.setModel(droneDetails.getModel());
@@ -40,41 +54,42 @@ public class DroneService {
             drone.setConnected(droneDetails.getConnected());
             drone.setMavproxyHost(droneDetails.getMavproxyHost());
             drone.setMavproxyPort(droneDetails.getMavproxyPort());
-            return droneRepository.save(drone);
+        });
+        if (updated != null) {
+            droneRepository.save(updated);
         }
-        return null;
+        return updated;
     }
 
     public void deleteDrone(@NonNull Long id) {
         droneRepository.deleteById(id);
+        stateStore.removeDrone(id);
     }
 
     public List<Drone> getConnectedDrones() {
-        return droneRepository.findByConnected(true);
+        return stateStore.getDrones().stream()
+                .filter(drone -> Boolean.TRUE.equals(drone.getConnected()))
+                .collect(Collectors.toList());
     }
 
     public Drone updateDronePosition(@NonNull Long id, Double latitude, Double longitude, Double altitude,
             Double battery) {
-        Drone drone = getDroneById(id);
-        if (drone != null) {
+        LocalDateTime now = LocalDateTime.now();
+        return stateStore.updateDrone(id, drone -> {
             drone.setLastLatitude(latitude);
             drone.setLastLongitude(longitude);
             drone.setLastAltitude(altitude);
             drone.setLastBattery(battery);
-            drone.setLastSeenAt(LocalDateTime.now());
-            return droneRepository.save(drone);
-        }
-        return null;
+            drone.setLastSeenAt(now);
+        });
     }
 
     public Drone updateDroneStatus(@NonNull Long id, String status, Boolean connected) {
-        Drone drone = getDroneById(id);
-        if (drone != null) {
+        LocalDateTime now = LocalDateTime.now();
+        return stateStore.updateDrone(id, drone -> {
             drone.setStatus(status);
             drone.setConnected(connected);
-            drone.setLastSeenAt(LocalDateTime.now());
-            return droneRepository.save(drone);
-        }
-        return null;
+            drone.setLastSeenAt(now);
+        });
     }
 }
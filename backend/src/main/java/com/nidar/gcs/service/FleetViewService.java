@@ -0,0 +1,399 @@
+package com.nidar.gcs.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nidar.gcs.model.Vehicle;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Viewport-filtered fleet feed on /topic/fleet.
+ *
+ * A client subscribes with an optional "bbox" header
+ * (minLat,minLon,maxLat,maxLon; the whole world if absent) and moves it by
+ * sending {"bbox": [minLat, minLon, maxLat, maxLon]} to /app/fleet/viewport.
+ * It receives only vehicles inside its viewport, as JSON events:
+ *   {"type": "viewport", "enter": [vehicle...], "leave": [id...]}  after a viewport change
+ *   {"type": "enter", "vehicle": {...}}   a vehicle moved into view
+ *   {"type": "update", "vehicle": {...}}  a visible vehicle moved
+ *   {"type": "leave", "id": "scout"}      a vehicle moved out of view
+ * Every event carries a "seq" taken when it was decided. The outbound channel
+ * may deliver two events for the same vehicle out of order, so a client
+ * ignores an event for a vehicle whose seq is not above the last it applied
+ * for that vehicle (see subscribeFleet in websocket.js).
+ *
+ * Vehicles and viewports are both indexed in a uniform lat/lon grid, so an
+ * update only visits the viewports covering the vehicle's cell plus those
+ * that currently see it, and each event is serialised once however many
+ * sessions receive it. Viewports spanning more than max-viewport-cells cells
+ * are kept in a short list checked on every update instead.
+ */
+@Service
+@Slf4j
+public class FleetViewService {
+
+    public static final String FLEET_TOPIC = "/topic/fleet";
+
+    private static final double[] WORLD = { -90, -180, 90, 180 };
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private VehicleStateStore stateStore;
+
+    @Value("${fleet.grid.cell-size:0.01}")
+    private double cellSize;
+
+    @Value("${fleet.grid.max-viewport-cells:4096}")
+    private int maxViewportCells;
+
+    // Guarded by this
+    private final Map<String, Vehicle> vehicles = new HashMap<>();
+    private final Map<String, Long> vehicleCells = new HashMap<>();
+    private final Map<Long, Set<String>> grid = new HashMap<>();
+    private final Map<Long, Set<Viewport>> viewportGrid = new HashMap<>();
+    private final Set<Viewport> largeViewports = new HashSet<>();
+    private final Map<String, Set<Viewport>> watchers = new HashMap<>();
+    private final Map<String, Viewport> viewports = new HashMap<>();
+    // Seeded from the clock so seqs keep rising across restarts; clients keep theirs across reconnects
+    private long eventSeq = System.currentTimeMillis() * 1000;
+
+    private static class Viewport {
+        final String sessionId;
+        final String subscriptionId;
+        double[] bbox;
+        List<Long> cells = List.of();
+        final Set<String> visible = new HashSet<>();
+
+        Viewport(String sessionId, String subscriptionId) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+        }
+
+        boolean contains(double lat, double lon) {
+            return lat >= bbox[0] && lon >= bbox[1] && lat <= bbox[2] && lon <= bbox[3];
+        }
+    }
+
+    @PostConstruct
+    public void checkConfiguration() {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalStateException("fleet.grid.cell-size must be positive, got " + cellSize);
+        }
+    }
+
+    /**
+     * Index current positions; vehicles that have not reported since startup
+     * would otherwise stay invisible
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexVehicles() {
+        stateStore.getVehicles().forEach(this::update);
+    }
+
+    // ============ Subscriptions ============
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (!FLEET_TOPIC.equals(accessor.getDestination()) || accessor.getSessionId() == null
+                || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Viewport viewport = new Viewport(accessor.getSessionId(), accessor.getSubscriptionId());
+        synchronized (this) {
+            Viewport previous = viewports.put(viewport.sessionId, viewport);
+            if (previous != null) {
+                remove(previous);
+            }
+        }
+
+        String header = accessor.getFirstNativeHeader("bbox");
+        try {
+            setViewport(viewport.sessionId, header != null ? parseBbox(header) : WORLD);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring fleet bbox '{}': {}", header, e.getMessage());
+            setViewport(viewport.sessionId, WORLD);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        synchronized (this) {
+            Viewport viewport = viewports.get(accessor.getSessionId());
+            if (viewport != null && viewport.subscriptionId.equals(accessor.getSubscriptionId())) {
+                viewports.remove(viewport.sessionId);
+                remove(viewport);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        synchronized (this) {
+            Viewport viewport = viewports.remove(event.getSessionId());
+            if (viewport != null) {
+                remove(viewport);
+            }
+        }
+    }
+
+    /**
+     * Move a session's viewport; it gets one "viewport" event with the
+     * vehicles entering and leaving its view
+     */
+    public void setViewport(String sessionId, @NonNull double[] bbox) {
+        if (bbox.length != 4 || bbox[0] > bbox[2] || bbox[1] > bbox[3]) {
+            throw new IllegalArgumentException("bbox needs minLat,minLon,maxLat,maxLon");
+        }
+
+        Viewport viewport;
+        List<Vehicle> entered = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        long seq;
+        synchronized (this) {
+            viewport = sessionId != null ? viewports.get(sessionId) : null;
+            if (viewport == null) {
+                return;
+            }
+            unregister(viewport);
+            viewport.bbox = bbox.clone();
+            register(viewport);
+
+            Set<String> nowVisible = new HashSet<>();
+            for (Vehicle v : candidates(viewport)) {
+                if (viewport.contains(v.getLat(), v.getLon())) {
+                    nowVisible.add(v.getId());
+                }
+            }
+            for (String id : nowVisible) {
+                if (viewport.visible.add(id)) {
+                    watchers.computeIfAbsent(id, key -> new HashSet<>()).add(viewport);
+                    entered.add(vehicles.get(id));
+                }
+            }
+            for (String id : new ArrayList<>(viewport.visible)) {
+                if (!nowVisible.contains(id)) {
+                    viewport.visible.remove(id);
+                    unwatch(id, viewport);
+                    left.add(id);
+                }
+            }
+            seq = ++eventSeq;
+        }
+
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "viewport");
+        event.put("seq", seq);
+        event.put("enter", entered.stream().map(TelemetryDeltaEncoder::fields).toList());
+        event.put("leave", left);
+        send(event, List.of(viewport));
+    }
+
+    // ============ Vehicle updates ============
+
+    /**
+     * Index the vehicle's new position and notify the viewports it is in,
+     * entered or left
+     */
+    public void update(@NonNull Vehicle vehicle) {
+        String id = vehicle.getId();
+        List<Viewport> entered = new ArrayList<>();
+        List<Viewport> updated = new ArrayList<>();
+        List<Viewport> left = new ArrayList<>();
+        long seq;
+        synchronized (this) {
+            vehicles.put(id, vehicle);
+            long cell = cell(vehicle.getLat(), vehicle.getLon());
+            Long previousCell = vehicleCells.put(id, cell);
+            if (previousCell == null || previousCell != cell) {
+                if (previousCell != null) {
+                    Set<String> members = grid.get(previousCell);
+                    if (members != null && members.remove(id) && members.isEmpty()) {
+                        grid.remove(previousCell);
+                    }
+                }
+                grid.computeIfAbsent(cell, key -> new HashSet<>()).add(id);
+            }
+
+            Set<Viewport> candidates = new HashSet<>(largeViewports);
+            candidates.addAll(viewportGrid.getOrDefault(cell, Set.of()));
+            candidates.addAll(watchers.getOrDefault(id, Set.of()));
+            for (Viewport viewport : candidates) {
+                boolean inside = viewport.contains(vehicle.getLat(), vehicle.getLon());
+                boolean wasVisible = viewport.visible.contains(id);
+                if (inside && wasVisible) {
+                    updated.add(viewport);
+                } else if (inside) {
+                    viewport.visible.add(id);
+                    watchers.computeIfAbsent(id, key -> new HashSet<>()).add(viewport);
+                    entered.add(viewport);
+                } else if (wasVisible) {
+                    viewport.visible.remove(id);
+                    unwatch(id, viewport);
+                    left.add(viewport);
+                }
+            }
+            seq = ++eventSeq;
+        }
+
+        if (!entered.isEmpty() || !updated.isEmpty()) {
+            Map<String, Object> fields = TelemetryDeltaEncoder.fields(vehicle);
+            send(Map.of("type", "enter", "seq", seq, "vehicle", fields), entered);
+            send(Map.of("type", "update", "seq", seq, "vehicle", fields), updated);
+        }
+        send(Map.of("type", "leave", "seq", seq, "id", id), left);
+    }
+
+    // ============ Grid ============
+
+    private long cell(double lat, double lon) {
+        long row = (long) Math.floor(lat / cellSize);
+        long col = (long) Math.floor(lon / cellSize);
+        return (row << 32) ^ (col & 0xFFFFFFFFL);
+    }
+
+    private long cellCount(double[] bbox) {
+        long rows = (long) Math.floor(bbox[2] / cellSize) - (long) Math.floor(bbox[0] / cellSize) + 1;
+        long cols = (long) Math.floor(bbox[3] / cellSize) - (long) Math.floor(bbox[1] / cellSize) + 1;
+        return rows * cols;
+    }
+
+    private List<Long> cells(double[] bbox) {
+        List<Long> cells = new ArrayList<>();
+        long rowFrom = (long) Math.floor(bbox[0] / cellSize);
+        long rowTo = (long) Math.floor(bbox[2] / cellSize);
+        long colFrom = (long) Math.floor(bbox[1] / cellSize);
+        long colTo = (long) Math.floor(bbox[3] / cellSize);
+        for (long row = rowFrom; row <= rowTo; row++) {
+            for (long col = colFrom; col <= colTo; col++) {
+                cells.add((row << 32) ^ (col & 0xFFFFFFFFL));
+            }
+        }
+        return cells;
+    }
+
+    private void register(Viewport viewport) {
+        if (cellCount(viewport.bbox) > maxViewportCells) {
+            largeViewports.add(viewport);
+            return;
+        }
+        viewport.cells = cells(viewport.bbox);
+        for (long cell : viewport.cells) {
+            viewportGrid.computeIfAbsent(cell, key -> new HashSet<>()).add(viewport);
+        }
+    }
+
+    private void unregister(Viewport viewport) {
+        largeViewports.remove(viewport);
+        for (long cell : viewport.cells) {
+            Set<Viewport> members = viewportGrid.get(cell);
+            if (members != null && members.remove(viewport) && members.isEmpty()) {
+                viewportGrid.remove(cell);
+            }
+        }
+        viewport.cells = List.of();
+    }
+
+    private void remove(Viewport viewport) {
+        unregister(viewport);
+        for (String id : viewport.visible) {
+            unwatch(id, viewport);
+        }
+        viewport.visible.clear();
+    }
+
+    private void unwatch(String id, Viewport viewport) {
+        Set<Viewport> seeing = watchers.get(id);
+        if (seeing != null && seeing.remove(viewport) && seeing.isEmpty()) {
+            watchers.remove(id);
+        }
+    }
+
+    /**
+     * Vehicles that may be inside a viewport: those in its cells, or all of
+     * them for a large viewport
+     */
+    private Collection<Vehicle> candidates(Viewport viewport) {
+        if (viewport.cells.isEmpty()) {
+            return vehicles.values();
+        }
+        List<Vehicle> result = new ArrayList<>();
+        for (long cell : viewport.cells) {
+            for (String id : grid.getOrDefault(cell, Set.of())) {
+                result.add(vehicles.get(id));
+            }
+        }
+        return result;
+    }
+
+    // ============ Delivery ============
+
+    /**
+     * Serialise once and send straight to each viewport's subscription
+     */
+    private void send(Object event, Collection<Viewport> targets) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialise fleet event: {}", e.getMessage());
+            return;
+        }
+        for (Viewport viewport : targets) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(viewport.sessionId);
+            accessor.setSubscriptionId(viewport.subscriptionId);
+            accessor.setDestination(FLEET_TOPIC);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setLeaveMutable(true);
+            clientOutboundChannel.send(MessageBuilder.createMessage(body, accessor.getMessageHeaders()));
+        }
+    }
+
+    public static double[] parseBbox(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox needs minLat,minLon,maxLat,maxLon");
+        }
+        double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = Double.parseDouble(parts[i].trim());
+        }
+        return bbox;
+    }
+}
@@ -0,0 +1,650 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Columnar, compressed file format for the telemetry of one completed flight.
+ *
+ * Rows are grouped into blocks of {@value #BLOCK_ROWS}. Each block stores its
+ * columns separately: id and timestamp (epoch micros) delta-of-delta encoded,
+ * floating point columns XOR encoded as in Gorilla, small ints delta-of-delta,
+ * flight mode dictionary encoded and armed as 2-bit codes. A block directory in
+ * the header holds the first/last (timestamp, id) of each block so readers can
+ * seek without decoding earlier blocks.
+ */
+public final class FlightArchive {
+
+    public static final int MAGIC = 0x4E464131; // "NFA1"
+    public static final short VERSION = 1;
+    public static final int BLOCK_ROWS = 1024;
+
+    private static final int COLUMNS = 11;
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 4 + 4 + 8 + 8;
+    private static final int DIRECTORY_ENTRY_BYTES = 8 + 8 + 8 + 8 + 4 + 4 + 4;
+    private static final long NULL_INT = Integer.MIN_VALUE;
+
+    private FlightArchive() {
+    }
+
+    // ============ Writer ============
+
+    /**
+     * Streams rows into blocks; only the current block is held uncompressed.
+     * Rows must be added in (timestamp, id) order.
+     */
+    public static final class Writer {
+        private final long missionId;
+        private final long flightLogId;
+        private final List<Telemetry> pending = new ArrayList<>(BLOCK_ROWS);
+        private final List<long[]> directory = new ArrayList<>();
+        private final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        private int rowCount;
+
+        public Writer(long missionId, long flightLogId) {
+            this.missionId = missionId;
+            this.flightLogId = flightLogId;
+        }
+
+        public void add(Telemetry t) {
+            pending.add(t);
+            rowCount++;
+            if (pending.size() == BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public void writeTo(OutputStream target) throws IOException {
+            if (!pending.isEmpty()) {
+                flushBlock();
+            }
+
+            DataOutputStream out = new DataOutputStream(target);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(missionId);
+            out.writeLong(flightLogId);
+            out.writeInt(rowCount);
+            out.writeInt(directory.size());
+            out.writeLong(directory.isEmpty() ? 0 : directory.get(0)[0]);
+            out.writeLong(directory.isEmpty() ? 0 : directory.get(directory.size() - 1)[2]);
+
+            int dataStart = HEADER_BYTES + directory.size() * DIRECTORY_ENTRY_BYTES;
+            for (long[] entry : directory) {
+                out.writeLong(entry[0]); // first timestamp
+                out.writeLong(entry[1]); // first id
+                out.writeLong(entry[2]); // last timestamp
+                out.writeLong(entry[3]); // last id
+                out.writeInt((int) entry[4]); // rows
+                out.writeInt(dataStart + (int) entry[5]); // offset
+                out.writeInt((int) entry[6]); // length
+            }
+            blocks.writeTo(out);
+            out.flush();
+        }
+
+        private void flushBlock() {
+            int n = pending.size();
+            byte[][] columns = new byte[COLUMNS][];
+
+            BitWriter ids = new BitWriter();
+            BitWriter timestamps = new BitWriter();
+            long prevId = 0, prevIdDelta = 0, prevTs = 0, prevTsDelta = 0;
+            for (int i = 0; i < n; i++) {
+                Telemetry t = pending.get(i);
+                long id = t.getId() != null ? t.getId() : 0;
+                long ts = toMicros(t.getTimestamp());
+                if (i == 0) {
+                    ids.writeBits(id, 64);
+                    timestamps.writeBits(ts, 64);
+                } else {
+                    long idDelta = id - prevId;
+                    ids.writeDeltaOfDelta(idDelta - prevIdDelta);
+                    prevIdDelta = idDelta;
+                    long tsDelta = ts - prevTs;
+                    timestamps.writeDeltaOfDelta(tsDelta - prevTsDelta);
+                    prevTsDelta = tsDelta;
+                }
+                prevId = id;
+                prevTs = ts;
+            }
+            columns[0] = ids.toByteArray();
+            columns[1] = timestamps.toByteArray();
+            columns[2] = encodeDoubles(n, i -> pending.get(i).getLatitude());
+            columns[3] = encodeDoubles(n, i -> pending.get(i).getLongitude());
+            columns[4] = encodeDoubles(n, i -> pending.get(i).getAltitude());
+            columns[5] = encodeDoubles(n, i -> pending.get(i).getSpeed());
+            columns[6] = encodeDoubles(n, i -> pending.get(i).getBattery());
+            columns[7] = encodeInts(n, i -> pending.get(i).getHeading());
+            columns[8] = encodeInts(n, i -> pending.get(i).getSatellites());
+            columns[9] = encodeModes(n);
+            columns[10] = encodeArmed(n);
+
+            int length = 4 * COLUMNS;
+            for (byte[] column : columns) {
+                length += column.length;
+            }
+            Telemetry first = pending.get(0);
+            Telemetry last = pending.get(n - 1);
+            directory.add(new long[] {
+                    toMicros(first.getTimestamp()), first.getId() != null ? first.getId() : 0,
+                    toMicros(last.getTimestamp()), last.getId() != null ? last.getId() : 0,
+                    n, blocks.size(), length });
+
+            DataOutputStream out = new DataOutputStream(blocks);
+            try {
+                for (byte[] column : columns) {
+                    out.writeInt(column.length);
+                }
+                for (byte[] column : columns) {
+                    out.write(column);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("In-memory block write failed", e);
+            }
+            pending.clear();
+        }
+
+        private byte[] encodeDoubles(int n, IntFunction<Double> column) {
+            BitWriter out = new BitWriter();
+            long prev = 0;
+            int prevLeading = -1, prevTrailing = 0;
+            for (int i = 0; i < n; i++) {
+                Double value = column.apply(i);
+                long bits = Double.doubleToRawLongBits(value != null ? value : Double.NaN);
+                if (i == 0) {
+                    out.writeBits(bits, 64);
+                    prev = bits;
+                    continue;
+                }
+
+                long xor = bits ^ prev;
+                prev = bits;
+                if (xor == 0) {
+                    out.writeBit(false);
+                    continue;
+                }
+                out.writeBit(true);
+
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    // Fits in the previous meaningful window
+                    out.writeBit(false);
+                    out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.writeBit(true);
+                    out.writeBits(leading, 5);
+                    out.writeBits(meaningful & 63, 6); // 64 wraps to 0
+                    out.writeBits(xor >>> trailing, meaningful);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            return out.toByteArray();
+        }
+
+        private byte[] encodeInts(int n, IntFunction<Integer> column) {
+            BitWriter out = new BitWriter();
+            long prev = 0, prevDelta = 0;
+            for (int i = 0; i < n; i++) {
+                Integer value = column.apply(i);
+                long v = value != null ? value : NULL_INT;
+                if (i == 0) {
+                    out.writeBits(v, 64);
+                } else {
+                    long delta = v - prev;
+                    out.writeDeltaOfDelta(delta - prevDelta);
+                    prevDelta = delta;
+                }
+                prev = v;
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Dictionary of the block's distinct modes, then one bit per row for
+         * "same as previous" or a 1 bit plus an 8-bit dictionary code
+         */
+        private byte[] encodeModes(int n) {
+            List<String> dictionary = new ArrayList<>();
+            BitWriter codes = new BitWriter();
+            int prevCode = -1;
+            for (int i = 0; i < n; i++) {
+                String mode = pending.get(i).getFlightMode();
+                int code = mode == null ? 0 : dictionary.indexOf(mode) + 1;
+                if (mode != null && code == 0) {
+                    if (dictionary.size() >= 255) {
+                        throw new IllegalStateException("Too many distinct flight modes in block");
+                    }
+                    dictionary.add(mode);
+                    code = dictionary.size();
+                }
+                if (code == prevCode) {
+                    codes.writeBit(false);
+                } else {
+                    codes.writeBit(true);
+                    codes.writeBits(code, 8);
+                    prevCode = code;
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(dictionary.size());
+                for (String mode : dictionary) {
+                    out.writeUTF(mode);
+                }
+                out.write(codes.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException("In-memory block write failed", e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private byte[] encodeArmed(int n) {
+            BitWriter out = new BitWriter();
+            for (int i = 0; i < n; i++) {
+                Boolean armed = pending.get(i).getArmed();
+                out.writeBits(armed == null ? 0 : (armed ? 2 : 1), 2);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    // ============ Reader ============
+
+    /**
+     * Reads an archive from a (typically memory-mapped) buffer. The buffer is
+     * only read with absolute offsets, so one Reader can be shared by threads.
+     */
+    public static final class Reader {
+        private final ByteBuffer data;
+        private final long missionId;
+        private final long flightLogId;
+        private final int rowCount;
+        private final int blockCount;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+
+        public Reader(ByteBuffer data) {
+            this.data = data;
+            if (data.getInt(0) != MAGIC || data.getShort(4) != VERSION) {
+                throw new IllegalArgumentException("Not a flight archive");
+            }
+            this.missionId = data.getLong(6);
+            this.flightLogId = data.getLong(14);
+            this.rowCount = data.getInt(22);
+            this.blockCount = data.getInt(26);
+            this.minTimestamp = data.getLong(30);
+            this.maxTimestamp = data.getLong(38);
+        }
+
+        public long getMissionId() {
+            return missionId;
+        }
+
+        public long getFlightLogId() {
+            return flightLogId;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public LocalDateTime getStartTime() {
+            return fromMicros(minTimestamp);
+        }
+
+        public LocalDateTime getEndTime() {
+            return fromMicros(maxTimestamp);
+        }
+
+        /**
+         * Rows in blocks that overlap [from, to]; exact at block granularity
+         */
+        public long estimateRows(LocalDateTime from, LocalDateTime to) {
+            long fromMicros = from != null ? toMicros(from) : Long.MIN_VALUE;
+            long toMicros = to != null ? toMicros(to) : Long.MAX_VALUE;
+            long rows = 0;
+            for (int b = 0; b < blockCount; b++) {
+                int entry = HEADER_BYTES + b * DIRECTORY_ENTRY_BYTES;
+                if (data.getLong(entry + 16) >= fromMicros && data.getLong(entry) <= toMicros) {
+                    rows += data.getInt(entry + 32);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Visit rows strictly after the (afterTimestamp, afterId) cursor and up
+         * to {@code to}, in order, until the consumer returns false.
+         *
+         * @return false if the consumer stopped the scan
+         */
+        public boolean scan(LocalDateTime afterTimestamp, long afterId, LocalDateTime to,
+                Predicate<Telemetry> consumer) {
+            long afterMicros = afterTimestamp != null ? toMicros(afterTimestamp) : Long.MIN_VALUE;
+            long toMicros = to != null ? toMicros(to) : Long.MAX_VALUE;
+
+            for (int b = firstBlockAfter(afterMicros, afterId); b < blockCount; b++) {
+                int entry = HEADER_BYTES + b * DIRECTORY_ENTRY_BYTES;
+                if (data.getLong(entry) > toMicros) {
+                    return true;
+                }
+                Block block = decodeBlock(entry);
+                for (int i = 0; i < block.rows; i++) {
+                    long ts = block.timestamps[i];
+                    if (ts < afterMicros || (ts == afterMicros && block.ids[i] <= afterId)) {
+                        continue;
+                    }
+                    if (ts > toMicros) {
+                        return true;
+                    }
+                    if (!consumer.test(block.toTelemetry(i))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Binary search the directory for the first block whose last row is
+         * after the cursor
+         */
+        private int firstBlockAfter(long afterMicros, long afterId) {
+            int lo = 0, hi = blockCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int entry = HEADER_BYTES + mid * DIRECTORY_ENTRY_BYTES;
+                long lastTs = data.getLong(entry + 16);
+                long lastId = data.getLong(entry + 24);
+                if (lastTs < afterMicros || (lastTs == afterMicros && lastId <= afterId)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private Block decodeBlock(int entry) {
+            int rows = data.getInt(entry + 32);
+            int offset = data.getInt(entry + 36);
+
+            int[] lengths = new int[COLUMNS];
+            int[] starts = new int[COLUMNS];
+            int position = offset + 4 * COLUMNS;
+            for (int c = 0; c < COLUMNS; c++) {
+                lengths[c] = data.getInt(offset + 4 * c);
+                starts[c] = position;
+                position += lengths[c];
+            }
+
+            Block block = new Block(rows);
+            decodeLongs(new BitReader(data, starts[0], lengths[0]), block.ids, rows);
+            decodeLongs(new BitReader(data, starts[1], lengths[1]), block.timestamps, rows);
+            decodeDoubles(new BitReader(data, starts[2], lengths[2]), block.latitudes, rows);
+            decodeDoubles(new BitReader(data, starts[3], lengths[3]), block.longitudes, rows);
+            decodeDoubles(new BitReader(data, starts[4], lengths[4]), block.altitudes, rows);
+            decodeDoubles(new BitReader(data, starts[5], lengths[5]), block.speeds, rows);
+            decodeDoubles(new BitReader(data, starts[6], lengths[6]), block.batteries, rows);
+            decodeLongs(new BitReader(data, starts[7], lengths[7]), block.headings, rows);
+            decodeLongs(new BitReader(data, starts[8], lengths[8]), block.satellites, rows);
+            decodeModes(starts[9], lengths[9], block, rows);
+            BitReader armed = new BitReader(data, starts[10], lengths[10]);
+            for (int i = 0; i < rows; i++) {
+                block.armed[i] = (byte) armed.readBits(2);
+            }
+            return block;
+        }
+
+        private static void decodeLongs(BitReader in, long[] out, int rows) {
+            long prev = 0, prevDelta = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0) {
+                    prev = in.readBits(64);
+                } else {
+                    long delta = prevDelta + in.readDeltaOfDelta();
+                    prev += delta;
+                    prevDelta = delta;
+                }
+                out[i] = prev;
+            }
+        }
+
+        private static void decodeDoubles(BitReader in, double[] out, int rows) {
+            long prev = 0;
+            int leading = 0, trailing = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0) {
+                    prev = in.readBits(64);
+                } else if (in.readBit()) {
+                    if (in.readBit()) {
+                        leading = (int) in.readBits(5);
+                        int meaningful = (int) in.readBits(6);
+                        if (meaningful == 0) {
+                            meaningful = 64;
+                        }
+                        trailing = 64 - leading - meaningful;
+                    }
+                    prev ^= in.readBits(64 - leading - trailing) << trailing;
+                }
+                out[i] = Double.longBitsToDouble(prev);
+            }
+        }
+
+        private void decodeModes(int start, int length, Block block, int rows) {
+            int dictionarySize = data.get(start) & 0xFF;
+            String[] dictionary = new String[dictionarySize + 1];
+            int position = start + 1;
+            for (int d = 1; d <= dictionarySize; d++) {
+                int utfLength = data.getShort(position) & 0xFFFF;
+                byte[] utf = new byte[utfLength];
+                data.get(position + 2, utf);
+                // Flight modes are plain ASCII, where modified UTF-8 equals UTF-8
+                dictionary[d] = new String(utf, StandardCharsets.UTF_8);
+                position += 2 + utfLength;
+            }
+
+            BitReader codes = new BitReader(data, position, start + length - position);
+            String current = null;
+            for (int i = 0; i < rows; i++) {
+                if (codes.readBit()) {
+                    current = dictionary[(int) codes.readBits(8)];
+                }
+                block.modes[i] = current;
+            }
+        }
+    }
+
+    private static final class Block {
+        final int rows;
+        final long[] ids;
+        final long[] timestamps;
+        final double[] latitudes;
+        final double[] longitudes;
+        final double[] altitudes;
+        final double[] speeds;
+        final double[] batteries;
+        final long[] headings;
+        final long[] satellites;
+        final String[] modes;
+        final byte[] armed;
+
+        Block(int rows) {
+            this.rows = rows;
+            this.ids = new long[rows];
+            this.timestamps = new long[rows];
+            this.latitudes = new double[rows];
+            this.longitudes = new double[rows];
+            this.altitudes = new double[rows];
+            this.speeds = new double[rows];
+            this.batteries = new double[rows];
+            this.headings = new long[rows];
+            this.satellites = new long[rows];
+            this.modes = new String[rows];
+            this.armed = new byte[rows];
+        }
+
+        /**
+         * Rebuild a detached Telemetry row. Drone and mission are not archived.
+         */
+        Telemetry toTelemetry(int i) {
+            Telemetry t = new Telemetry();
+            t.setId(ids[i]);
+            t.setTimestamp(fromMicros(timestamps[i]));
+            t.setLatitude(nullable(latitudes[i]));
+            t.setLongitude(nullable(longitudes[i]));
+            t.setAltitude(nullable(altitudes[i]));
+            t.setSpeed(nullable(speeds[i]));
+            t.setBattery(nullable(batteries[i]));
+            t.setHeading(headings[i] == NULL_INT ? null : (int) headings[i]);
+            t.setSatellites(satellites[i] == NULL_INT ? null : (int) satellites[i]);
+            t.setFlightMode(modes[i]);
+            t.setArmed(armed[i] == 0 ? null : armed[i] == 2);
+            return t;
+        }
+
+        private static Double nullable(double value) {
+            return Double.isNaN(value) ? null : value;
+        }
+    }
+
+    // ============ Bit I/O ============
+
+    private static final class BitWriter {
+        private byte[] buffer = new byte[256];
+        private long bitLength;
+
+        void writeBit(boolean bit) {
+            writeBits(bit ? 1 : 0, 1);
+        }
+
+        /**
+         * Write the low {@code count} bits of value, most significant first
+         */
+        void writeBits(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                int byteIndex = (int) (bitLength >>> 3);
+                if (byteIndex == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                if (((value >>> i) & 1) != 0) {
+                    buffer[byteIndex] |= (byte) (0x80 >>> (bitLength & 7));
+                }
+                bitLength++;
+            }
+        }
+
+        /**
+         * Gorilla-style variable-width buckets on the zigzag-encoded value
+         */
+        void writeDeltaOfDelta(long dod) {
+            long zigzag = (dod << 1) ^ (dod >> 63);
+            if (zigzag == 0) {
+                writeBits(0b0, 1);
+            } else if (zigzag < 0 || zigzag >= (1L << 32)) {
+                // Top bit set means the unsigned value needs all 64 bits
+                writeBits(0b11111, 5);
+                writeBits(zigzag, 64);
+            } else if (zigzag < (1L << 7)) {
+                writeBits(0b10, 2);
+                writeBits(zigzag, 7);
+            } else if (zigzag < (1L << 9)) {
+                writeBits(0b110, 3);
+                writeBits(zigzag, 9);
+            } else if (zigzag < (1L << 12)) {
+                writeBits(0b1110, 4);
+                writeBits(zigzag, 12);
+            } else {
+                writeBits(0b11110, 5);
+                writeBits(zigzag, 32);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (int) ((bitLength + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+        private final ByteBuffer data;
+        private final long end;
+        private long position; // in bits, absolute within the buffer
+
+        BitReader(ByteBuffer data, int offset, int length) {
+            this.data = data;
+            this.position = (long) offset << 3;
+            this.end = (long) (offset + length) << 3;
+        }
+
+        boolean readBit() {
+            return readBits(1) != 0;
+        }
+
+        long readBits(int count) {
+            if (position + count > end) {
+                throw new IllegalStateException("Corrupt flight archive: column overrun");
+            }
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                int b = data.get((int) (position >>> 3));
+                value = (value << 1) | ((b >>> (7 - (position & 7))) & 1);
+                position++;
+            }
+            return value;
+        }
+
+        long readDeltaOfDelta() {
+            long zigzag;
+            if (!readBit()) {
+                return 0;
+            } else if (!readBit()) {
+                zigzag = readBits(7);
+            } else if (!readBit()) {
+                zigzag = readBits(9);
+            } else if (!readBit()) {
+                zigzag = readBits(12);
+            } else if (!readBit()) {
+                zigzag = readBits(32);
+            } else {
+                zigzag = readBits(64);
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+
+    // Recorded timestamps are zone-less; UTC is only used as a fixed scale
+    static long toMicros(LocalDateTime time) {
+        if (time == null) {
+            return 0;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
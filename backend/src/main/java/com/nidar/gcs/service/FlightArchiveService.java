@@ -0,0 +1,217 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.FlightLog;
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.repository.FlightLogRepository;
+import com.nidar.gcs.repository.TelemetryRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Moves the telemetry of completed flights out of the telemetry table into
+ * one compressed columnar file per flight (see {@link FlightArchive}), and
+ * serves reads from those files through memory-mapped buffers.
+ *
+ * A flight is the time range of its FlightLog. Archiving runs on a sweep a
+ * little after the flight ends, so late samples still land in the table first.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FlightArchiveService {
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+
+    private final TelemetryRepository telemetryRepository;
+    private final FlightLogRepository flightLogRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${archive.dir:archive}")
+    private String archiveDir;
+
+    @Value("${archive.delay:60000}")
+    private long archiveDelayMs;
+
+    @Value("${archive.cache.max-files:32}")
+    private int maxOpenFiles;
+
+    // Mapped archives, least recently used first
+    private final Map<Long, FlightArchive.Reader> readers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, FlightArchive.Reader> eldest) {
+            return size() > maxOpenFiles;
+        }
+    };
+
+    @Scheduled(fixedDelayString = "${archive.sweep-interval:60000}")
+    public void archiveCompletedFlights() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(archiveDelayMs * 1_000_000L);
+        for (FlightLog flightLog : flightLogRepository.findByArchivePathIsNullAndEndTimeBefore(cutoff)) {
+            try {
+                archiveFlight(flightLog);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to archive flight {}: {}", flightLog.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the flight's telemetry to its archive file, then delete the rows.
+     * The file is complete on disk before anything is deleted, and archivePath
+     * is committed together with the delete: readers take archived flights from
+     * the file and everything else from the table, so a flight must never be
+     * in both. If the delete fails the flight stays unarchived and the next
+     * sweep writes the file again.
+     */
+    public void archiveFlight(@NonNull FlightLog flightLog) throws IOException {
+        if (flightLog.getMission() == null || flightLog.getStartTime() == null || flightLog.getEndTime() == null) {
+            return;
+        }
+        Long missionId = flightLog.getMission().getId();
+        long start = System.currentTimeMillis();
+
+        FlightArchive.Writer writer = new FlightArchive.Writer(missionId, flightLog.getId());
+        LocalDateTime afterTimestamp = flightLog.getStartTime();
+        long afterId = -1L;
+        List<Telemetry> rows;
+        do {
+            rows = telemetryRepository.findMissionPage(missionId, afterTimestamp, afterId,
+                    flightLog.getEndTime(), PageRequest.of(0, EXPORT_PAGE_SIZE));
+            for (Telemetry t : rows) {
+                writer.add(t);
+                afterTimestamp = t.getTimestamp();
+                afterId = t.getId();
+                entityManager.detach(t);
+            }
+        } while (rows.size() == EXPORT_PAGE_SIZE);
+
+        Path path = Paths.get(archiveDir).resolve("flight-" + flightLog.getId() + ".nfa");
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            writer.writeTo(out);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Integer deleted = transactionTemplate.execute(status -> {
+            flightLog.setArchivePath(path.toString());
+            flightLog.setArchivedRows(writer.getRowCount());
+            flightLogRepository.save(flightLog);
+            // Same range the export read, including rows at exactly startTime
+            return telemetryRepository.deleteMissionRange(missionId, flightLog.getStartTime(), flightLog.getEndTime());
+        });
+
+        log.info("Archived flight {} (mission {}): {} rows, {} KB, {} deleted, {}ms", flightLog.getId(), missionId,
+                writer.getRowCount(), Files.size(path) / 1024, deleted, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Visit archived telemetry of a mission in (timestamp, id) order, starting
+     * strictly after the cursor, until the consumer returns false.
+     *
+     * @return false if the consumer stopped the scan
+     */
+    public boolean scan(@NonNull Long missionId, LocalDateTime afterTimestamp, long afterId, LocalDateTime to,
+            Predicate<Telemetry> consumer) {
+        for (FlightLog flightLog : archivedFlights(missionId)) {
+            if (afterTimestamp != null && flightLog.getEndTime().isBefore(afterTimestamp)) {
+                continue;
+            }
+            if (to != null && flightLog.getStartTime().isAfter(to)) {
+                break;
+            }
+            FlightArchive.Reader reader = reader(flightLog);
+            if (reader != null && !reader.scan(afterTimestamp, afterId, to, consumer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Archived rows of a mission within [from, to]; rounded up to whole blocks
+     * when a range is given
+     */
+    public long countRows(@NonNull Long missionId, LocalDateTime from, LocalDateTime to) {
+        long rows = 0;
+        for (FlightLog flightLog : archivedFlights(missionId)) {
+            if (from == null && to == null) {
+                rows += flightLog.getArchivedRows() != null ? flightLog.getArchivedRows() : 0;
+                continue;
+            }
+            FlightArchive.Reader reader = reader(flightLog);
+            if (reader != null) {
+                rows += reader.estimateRows(from, to);
+            }
+        }
+        return rows;
+    }
+
+    public boolean hasArchive(@NonNull Long missionId) {
+        return flightLogRepository.existsByMissionIdAndArchivePathIsNotNull(missionId);
+    }
+
+    @PreDestroy
+    public void clear() {
+        synchronized (readers) {
+            readers.clear();
+        }
+    }
+
+    private List<FlightLog> archivedFlights(Long missionId) {
+        return flightLogRepository.findByMissionIdAndArchivePathIsNotNullOrderByStartTimeAsc(missionId);
+    }
+
+    private FlightArchive.Reader reader(FlightLog flightLog) {
+        synchronized (readers) {
+            FlightArchive.Reader reader = readers.get(flightLog.getId());
+            if (reader != null) {
+                return reader;
+            }
+        }
+
+        Path path = Paths.get(flightLog.getArchivePath());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            FlightArchive.Reader reader = new FlightArchive.Reader(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            synchronized (readers) {
+                readers.put(flightLog.getId(), reader);
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot open flight archive {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+}
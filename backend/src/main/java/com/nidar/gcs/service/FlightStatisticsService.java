@@ -0,0 +1,215 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.FlightLog;
+import com.nidar.gcs.model.Mission;
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.repository.FlightLogRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps running flight statistics for every mission that is receiving
+ * telemetry, updated in constant time per sample. When the mission completes
+ * or is stopped the totals are written out as a FlightLog row.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FlightStatisticsService {
+
+    private static final double EARTH_RADIUS_M = 6371000;
+
+    private final FlightLogRepository flightLogRepository;
+
+    private final Map<Long, FlightAggregator> activeFlights = new ConcurrentHashMap<>();
+
+    /**
+     * Running totals for one flight
+     */
+    private static class FlightAggregator {
+        LocalDateTime startTime;
+        LocalDateTime endTime;
+        Double startBattery;
+        Double endBattery;
+        Double homeLatitude;
+        Double homeLongitude;
+        double maxAltitude;
+        double maxSpeed;
+        double speedSum;
+        double totalDistance;
+        double maxDistanceFromHome;
+        long samples;
+
+        // Last position, for the incremental distance
+        Double lastLatitude;
+        Double lastLongitude;
+
+        synchronized void add(Telemetry t) {
+            LocalDateTime timestamp = t.getTimestamp() != null ? t.getTimestamp() : LocalDateTime.now();
+            if (startTime == null) {
+                startTime = timestamp;
+            }
+            endTime = timestamp;
+            samples++;
+
+            if (t.getAltitude() != null) {
+                maxAltitude = Math.max(maxAltitude, t.getAltitude());
+            }
+            if (t.getSpeed() != null) {
+                maxSpeed = Math.max(maxSpeed, t.getSpeed());
+                speedSum += t.getSpeed();
+            }
+            if (t.getBattery() != null) {
+                if (startBattery == null) {
+                    startBattery = t.getBattery();
+                }
+                endBattery = t.getBattery();
+            }
+
+            Double lat = t.getLatitude();
+            Double lon = t.getLongitude();
+            if (lat == null || lon == null) {
+                return;
+            }
+            if (homeLatitude == null) {
+                homeLatitude = lat;
+                homeLongitude = lon;
+            }
+            if (lastLatitude != null) {
+                totalDistance += distance(lastLatitude, lastLongitude, lat, lon);
+            }
+            maxDistanceFromHome = Math.max(maxDistanceFromHome, distance(homeLatitude, homeLongitude, lat, lon));
+            lastLatitude = lat;
+            lastLongitude = lon;
+        }
+
+        long durationSeconds() {
+            return startTime != null ? Duration.between(startTime, endTime).getSeconds() : 0;
+        }
+
+        double avgSpeed() {
+            // Time-weighted when we can, so irregular telemetry rates don't skew it
+            long duration = durationSeconds();
+            if (duration > 0) {
+                return totalDistance / duration;
+            }
+            return samples > 0 ? speedSum / samples : 0.0;
+        }
+
+        double batteryUsed() {
+            return startBattery != null && endBattery != null ? startBattery - endBattery : 0.0;
+        }
+    }
+
+    /**
+     * Fold one telemetry sample into its mission's running statistics.
+     * Samples without a mission are ignored.
+     */
+    public void record(@NonNull Telemetry telemetry) {
+        Mission mission = telemetry.getMission();
+        if (mission == null || mission.getId() == null) {
+            return;
+        }
+        activeFlights.computeIfAbsent(mission.getId(), id -> new FlightAggregator()).add(telemetry);
+    }
+
+    /**
+     * Close the running statistics for a mission and persist them.
+     *
+     * @return the saved log, or null if no telemetry was recorded
+     */
+    public FlightLog finishFlight(@NonNull Mission mission, String flightStatus, int waypointsCompleted) {
+        FlightAggregator aggregator = mission.getId() != null ? activeFlights.remove(mission.getId()) : null;
+        if (aggregator == null) {
+            return null;
+        }
+
+        FlightLog flightLog = new FlightLog();
+        synchronized (aggregator) {
+            flightLog.setMission(mission);
+            flightLog.setStartTime(aggregator.startTime);
+            flightLog.setEndTime(aggregator.endTime);
+            flightLog.setDurationSeconds((int) aggregator.durationSeconds());
+            flightLog.setMaxAltitude(aggregator.maxAltitude);
+            flightLog.setMaxSpeed(aggregator.maxSpeed);
+            flightLog.setTotalDistance(aggregator.totalDistance);
+            flightLog.setAvgSpeed(aggregator.avgSpeed());
+            flightLog.setStartBattery(aggregator.startBattery);
+            flightLog.setEndBattery(aggregator.endBattery);
+            flightLog.setBatteryUsed(aggregator.batteryUsed());
+            flightLog.setHomeLatitude(aggregator.homeLatitude);
+            flightLog.setHomeLongitude(aggregator.homeLongitude);
+            flightLog.setMaxDistanceFromHome(aggregator.maxDistanceFromHome);
+        }
+        flightLog.setWaypointsPlanned(mission.getWaypoints() != null ? mission.getWaypoints().size() : 0);
+        flightLog.setWaypointsCompleted(waypointsCompleted);
+        flightLog.setFlightStatus(flightStatus);
+
+        FlightLog saved = flightLogRepository.save(flightLog);
+        log.info("Flight log {} written for mission {}: {}s, {}m", saved.getId(), mission.getId(),
+                saved.getDurationSeconds(), Math.round(aggregator.totalDistance));
+        return saved;
+    }
+
+    /**
+     * Replay statistics for a mission: the live aggregate while it is flying,
+     * otherwise its latest flight log. Null if neither exists.
+     */
+    public Map<String, Object> getStatistics(@NonNull Long missionId) {
+        FlightAggregator aggregator = activeFlights.get(missionId);
+        if (aggregator != null) {
+            synchronized (aggregator) {
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("maxAltitude", aggregator.maxAltitude);
+                stats.put("maxSpeed", aggregator.maxSpeed);
+                stats.put("avgSpeed", aggregator.avgSpeed());
+                stats.put("totalDistance", aggregator.totalDistance);
+                stats.put("batteryUsed", aggregator.batteryUsed());
+                stats.put("maxDistanceFromHome", aggregator.maxDistanceFromHome);
+                stats.put("duration", aggregator.durationSeconds());
+                stats.put("startTime", aggregator.startTime);
+                stats.put("endTime", aggregator.endTime);
+                stats.put("inProgress", true);
+                return stats;
+            }
+        }
+
+        return flightLogRepository.findTopByMissionIdOrderByStartTimeDesc(missionId)
+                .map(FlightStatisticsService::toStatistics)
+                .orElse(null);
+    }
+
+    private static Map<String, Object> toStatistics(FlightLog flightLog) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxAltitude", flightLog.getMaxAltitude());
+        stats.put("maxSpeed", flightLog.getMaxSpeed());
+        stats.put("avgSpeed", flightLog.getAvgSpeed());
+        stats.put("totalDistance", flightLog.getTotalDistance());
+        stats.put("batteryUsed", flightLog.getBatteryUsed());
+        stats.put("maxDistanceFromHome", flightLog.getMaxDistanceFromHome());
+        stats.put("duration", flightLog.getDurationSeconds());
+        stats.put("startTime", flightLog.getStartTime());
+        stats.put("endTime", flightLog.getEndTime());
+        stats.put("flightStatus", flightLog.getFlightStatus());
+        stats.put("flightLogId", flightLog.getId());
+        return stats;
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        // Haversine formula to calculate distance between two GPS coordinates
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return EARTH_RADIUS_M * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
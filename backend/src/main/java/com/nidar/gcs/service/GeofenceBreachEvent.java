@@ -0,0 +1,16 @@
+package com.nidar.gcs.service;
+
+/**
+ * Published when a monitored vehicle breaches a geofence zone, so whoever
+ * holds the vehicle's command link can carry out the zone's violation action
+ * (WARN, RTL, LAND, BRAKE).
+ */
+public record GeofenceBreachEvent(String vehicleId, long missionId, long zoneId, String violationAction) {
+
+    /**
+     * True when the action is a flight mode to switch to rather than a warning
+     */
+    public boolean isModeChange() {
+        return "RTL".equals(violationAction) || "LAND".equals(violationAction) || "BRAKE".equals(violationAction);
+    }
+}
@@ -0,0 +1,490 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.GeofencePoint;
+import com.nidar.gcs.model.GeofenceZone;
+import com.nidar.gcs.repository.GeofenceZoneRepository;
+import com.nidar.gcs.repository.MissionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Enabled geofence zones of each mission, compiled for position checks that
+ * never touch the database. A zone's polygon becomes primitive coordinate
+ * arrays with its bounding box and per-edge slopes precomputed, and a
+ * mission's zones are held in a packed R-tree over those boxes, so only the
+ * polygons whose box contains the position are ray cast.
+ *
+ * A mission is compiled on first use and dropped whenever one of its zones is
+ * created, updated or deleted (GeofenceService) or the mission itself is
+ * updated or deleted (MissionFenceListener), to be recompiled on next use.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GeofenceIndex {
+
+    private final GeofenceZoneRepository geofenceZoneRepository;
+    private final MissionRepository missionRepository;
+
+    private final Map<Long, MissionFences> compiled = new ConcurrentHashMap<>();
+
+    private final List<Consumer<Long>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public enum ViolationKind {
+        BELOW_MIN_ALTITUDE, ABOVE_MAX_ALTITUDE, INSIDE_EXCLUSION, OUTSIDE_INCLUSION
+    }
+
+    public record Violation(CompiledZone zone, ViolationKind kind) {
+    }
+
+    /**
+     * A violation expected in {@code seconds} if the vehicle holds its velocity
+     */
+    public record Prediction(CompiledZone zone, ViolationKind kind, double seconds) {
+    }
+
+    /**
+     * Compiled zones of the mission, or null if there is no such mission
+     */
+    public MissionFences get(@NonNull Long missionId) {
+        MissionFences fences = compiled.get(missionId);
+        if (fences != null) {
+            return fences;
+        }
+        // An invalidation of this mission waits for a compile in progress and
+        // then drops its result, so a stale compile is never kept
+        return compiled.computeIfAbsent(missionId, this::compile);
+    }
+
+    public void invalidate(Long missionId) {
+        if (missionId == null) {
+            return;
+        }
+        if (compiled.remove(missionId) != null) {
+            invalidations.incrementAndGet();
+        }
+        invalidationListeners.forEach(listener -> listener.accept(missionId));
+    }
+
+    /**
+     * Called with the mission id whenever a mission is invalidated, for
+     * caches derived from its compiled zones
+     */
+    public void addInvalidationListener(@NonNull Consumer<Long> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    private MissionFences compile(Long missionId) {
+        if (!missionRepository.existsById(missionId)) {
+            return null;
+        }
+        List<GeofenceZone> zones = geofenceZoneRepository.findEnabledWithPoints(missionId);
+        CompiledZone[] compiledZones = new CompiledZone[zones.size()];
+        for (int i = 0; i < compiledZones.length; i++) {
+            compiledZones[i] = new CompiledZone(zones.get(i));
+        }
+        compilations.incrementAndGet();
+        log.debug("Compiled {} geofence zones for mission {}", compiledZones.length, missionId);
+        return new MissionFences(missionId, compiledZones);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("missions", compiled.size());
+        stats.put("zones", compiled.values().stream().mapToInt(f -> f.zones.length).sum());
+        stats.put("compilations", compilations.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    // ============ Compiled forms ============
+
+    /**
+     * The zones of one mission, in id order, which is the order violations
+     * are reported in
+     */
+    public static final class MissionFences {
+        private final long missionId;
+        private final CompiledZone[] zones;
+        private final PackedRTree tree;
+
+        MissionFences(long missionId, CompiledZone[] zones) {
+            this.missionId = missionId;
+            this.zones = zones;
+            this.tree = new PackedRTree(zones);
+        }
+
+        public long getMissionId() {
+            return missionId;
+        }
+
+        public List<CompiledZone> getZones() {
+            return List.of(zones);
+        }
+
+        /**
+         * First zone the position violates: an altitude limit of any zone,
+         * outside an inclusion zone or inside an exclusion zone; null if none
+         */
+        public Violation check(double latitude, double longitude, double altitude) {
+            if (zones.length == 0) {
+                return null;
+            }
+            int[] inside = new int[zones.length];
+            int insideCount = insideZones(latitude, longitude, inside);
+
+            int next = 0;
+            for (int i = 0; i < zones.length; i++) {
+                CompiledZone zone = zones[i];
+                if (altitude < zone.minAltitude) {
+                    return new Violation(zone, ViolationKind.BELOW_MIN_ALTITUDE);
+                }
+                if (altitude > zone.maxAltitude) {
+                    return new Violation(zone, ViolationKind.ABOVE_MAX_ALTITUDE);
+                }
+                boolean contains = next < insideCount && inside[next] == i;
+                if (contains) {
+                    next++;
+                }
+                if (contains ? zone.exclusion : zone.inclusion) {
+                    return new Violation(zone, contains ? ViolationKind.INSIDE_EXCLUSION
+                            : ViolationKind.OUTSIDE_INCLUSION);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Earliest violation within horizon seconds for a vehicle at a valid
+         * position moving at the given rates (degrees and metres per second),
+         * or null if there is none. Only zones whose box meets the swept
+         * segment are tested for a boundary crossing.
+         */
+        public Prediction predict(double latitude, double longitude, double altitude,
+                double latRate, double lonRate, double altRate, double horizon) {
+            CompiledZone soonest = null;
+            ViolationKind kind = null;
+            double seconds = horizon;
+
+            for (CompiledZone zone : zones) {
+                // Unset limits are infinite, which never beats the horizon
+                double t = altRate < 0 ? (altitude - zone.minAltitude) / -altRate
+                        : altRate > 0 ? (zone.maxAltitude - altitude) / altRate : Double.POSITIVE_INFINITY;
+                if (t < seconds) {
+                    soonest = zone;
+                    kind = altRate < 0 ? ViolationKind.BELOW_MIN_ALTITUDE : ViolationKind.ABOVE_MAX_ALTITUDE;
+                    seconds = t;
+                }
+            }
+
+            if ((latRate != 0 || lonRate != 0) && zones.length > 0) {
+                double endLat = latitude + latRate * horizon;
+                double endLon = longitude + lonRate * horizon;
+                int[] candidates = new int[zones.length];
+                int count = tree.search(Math.min(latitude, endLat), Math.min(longitude, endLon),
+                        Math.max(latitude, endLat), Math.max(longitude, endLon), candidates);
+                for (int c = 0; c < count; c++) {
+                    CompiledZone zone = zones[candidates[c]];
+                    if (!zone.inclusion && !zone.exclusion) {
+                        continue;
+                    }
+                    // From a valid position, crossing any boundary leaves an
+                    // inclusion zone or enters an exclusion zone
+                    double t = zone.timeToBoundary(latitude, longitude, latRate, lonRate, seconds);
+                    if (t < seconds) {
+                        soonest = zone;
+                        kind = zone.inclusion ? ViolationKind.OUTSIDE_INCLUSION : ViolationKind.INSIDE_EXCLUSION;
+                        seconds = t;
+                    }
+                }
+            }
+            return soonest != null ? new Prediction(soonest, kind, seconds) : null;
+        }
+
+        /**
+         * Indexes of the zones containing the position, ascending
+         */
+        int insideZones(double latitude, double longitude, int[] out) {
+            int candidates = tree.search(latitude, longitude, latitude, longitude, out);
+            int count = 0;
+            for (int c = 0; c < candidates; c++) {
+                if (zones[out[c]].contains(latitude, longitude)) {
+                    out[count++] = out[c];
+                }
+            }
+            Arrays.sort(out, 0, count);
+            return count;
+        }
+    }
+
+    public static final class CompiledZone {
+        private final long id;
+        private final String name;
+        private final String violationAction;
+        private final boolean inclusion;
+        private final boolean exclusion;
+        // Unset limits are -inf / +inf so the checks need no null test
+        private final double minAltitude;
+        private final double maxAltitude;
+
+        // Vertices in sequence order; slope[i] is dLat/dLon of the edge from
+        // vertex i to the previous vertex
+        private final double[] lat;
+        private final double[] lon;
+        private final double[] slope;
+        private final double minLat;
+        private final double minLon;
+        private final double maxLat;
+        private final double maxLon;
+
+        CompiledZone(GeofenceZone zone) {
+            this.id = zone.getId();
+            this.name = zone.getName();
+            this.violationAction = zone.getViolationAction();
+            this.inclusion = "INCLUSION".equals(zone.getZoneType());
+            this.exclusion = "EXCLUSION".equals(zone.getZoneType());
+            this.minAltitude = zone.getMinAltitude() != null ? zone.getMinAltitude() : Double.NEGATIVE_INFINITY;
+            this.maxAltitude = zone.getMaxAltitude() != null ? zone.getMaxAltitude() : Double.POSITIVE_INFINITY;
+
+            List<GeofencePoint> points = new ArrayList<>();
+            for (GeofencePoint point : zone.getPoints()) {
+                if (point.getLatitude() != null && point.getLongitude() != null) {
+                    points.add(point);
+                }
+            }
+            if (points.stream().allMatch(p -> p.getSequence() != null)) {
+                points.sort(Comparator.comparing(GeofencePoint::getSequence));
+            }
+
+            // Fewer than 3 vertices is not a polygon and contains nothing
+            int n = points.size() >= 3 ? points.size() : 0;
+            this.lat = new double[n];
+            this.lon = new double[n];
+            this.slope = new double[n];
+            double loLat = Double.POSITIVE_INFINITY, loLon = Double.POSITIVE_INFINITY;
+            double hiLat = Double.NEGATIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                lat[i] = points.get(i).getLatitude();
+                lon[i] = points.get(i).getLongitude();
+                loLat = Math.min(loLat, lat[i]);
+                loLon = Math.min(loLon, lon[i]);
+                hiLat = Math.max(hiLat, lat[i]);
+                hiLon = Math.max(hiLon, lon[i]);
+            }
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                slope[i] = (lat[j] - lat[i]) / (lon[j] - lon[i]);
+            }
+            this.minLat = loLat;
+            this.minLon = loLon;
+            this.maxLat = hiLat;
+            this.maxLon = hiLon;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getViolationAction() {
+            return violationAction;
+        }
+
+        public boolean isInclusion() {
+            return inclusion;
+        }
+
+        public boolean isExclusion() {
+            return exclusion;
+        }
+
+        public double getMinAltitude() {
+            return minAltitude;
+        }
+
+        public double getMaxAltitude() {
+            return maxAltitude;
+        }
+
+        // Vertex arrays for geometry built on the zone; not to be modified
+        double[] latitudes() {
+            return lat;
+        }
+
+        double[] longitudes() {
+            return lon;
+        }
+
+        public boolean contains(double latitude, double longitude) {
+            if (latitude < minLat || latitude > maxLat || longitude < minLon || longitude > maxLon) {
+                return false;
+            }
+            // Ray cast; an edge only counts when it straddles the longitude,
+            // so its slope is finite wherever it is used
+            boolean inside = false;
+            for (int i = 0, j = lat.length - 1; i < lat.length; j = i++) {
+                if ((lon[i] > longitude) != (lon[j] > longitude)
+                        && latitude < slope[i] * (longitude - lon[i]) + lat[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        /**
+         * Seconds until a point moving at the given rates first crosses an
+         * edge, or limit if that is not sooner
+         */
+        double timeToBoundary(double latitude, double longitude, double latRate, double lonRate, double limit) {
+            double soonest = limit;
+            for (int i = 0, j = lat.length - 1; i < lat.length; j = i++) {
+                double edgeLon = lon[j] - lon[i];
+                double edgeLat = lat[j] - lat[i];
+                double denom = lonRate * edgeLat - latRate * edgeLon;
+                if (denom == 0) {
+                    continue; // Moving parallel to the edge
+                }
+                double toLon = lon[i] - longitude;
+                double toLat = lat[i] - latitude;
+                double t = (toLon * edgeLat - toLat * edgeLon) / denom;
+                double s = (toLon * latRate - toLat * lonRate) / denom;
+                if (t >= 0 && t < soonest && s >= 0 && s <= 1) {
+                    soonest = t;
+                }
+            }
+            return soonest;
+        }
+    }
+
+    /**
+     * Static R-tree over zone bounding boxes, bulk loaded by sort-tile-recursive
+     * packing and stored level by level in flat arrays (leaves first, root
+     * last). Entry e has box [4e, 4e + 4) as minLat, minLon, maxLat, maxLon;
+     * a leaf entry's index is its zone, a node's is its first child entry.
+     */
+    static final class PackedRTree {
+        private static final int NODE_SIZE = 8;
+
+        private final double[] boxes;
+        private final int[] indices;
+        private final int[] levelEnds;
+
+        PackedRTree(CompiledZone[] zones) {
+            int n = zones.length;
+            List<Integer> ends = new ArrayList<>();
+            int total = n;
+            ends.add(total);
+            for (int count = n; count > 1; ) {
+                count = (count + NODE_SIZE - 1) / NODE_SIZE;
+                total += count;
+                ends.add(total);
+            }
+            this.levelEnds = ends.stream().mapToInt(Integer::intValue).toArray();
+            this.boxes = new double[total * 4];
+            this.indices = new int[total];
+
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            // Slice by longitude, then order each slice by latitude
+            Arrays.sort(order, Comparator.comparingDouble(i -> zones[i].minLon + zones[i].maxLon));
+            int leafNodes = (n + NODE_SIZE - 1) / NODE_SIZE;
+            int sliceSize = NODE_SIZE * (int) Math.ceil(Math.sqrt(leafNodes));
+            for (int from = 0; from < n; from += sliceSize) {
+                Arrays.sort(order, from, Math.min(from + sliceSize, n),
+                        Comparator.comparingDouble(i -> zones[i].minLat + zones[i].maxLat));
+            }
+
+            for (int e = 0; e < n; e++) {
+                CompiledZone zone = zones[order[e]];
+                setBox(e, zone.minLat, zone.minLon, zone.maxLat, zone.maxLon);
+                indices[e] = order[e];
+            }
+            int start = 0;
+            for (int level = 1; level < levelEnds.length; level++) {
+                int end = levelEnds[level - 1];
+                int e = end;
+                for (int child = start; child < end; child += NODE_SIZE, e++) {
+                    double loLat = Double.POSITIVE_INFINITY, loLon = Double.POSITIVE_INFINITY;
+                    double hiLat = Double.NEGATIVE_INFINITY, hiLon = Double.NEGATIVE_INFINITY;
+                    for (int c = child; c < Math.min(child + NODE_SIZE, end); c++) {
+                        loLat = Math.min(loLat, boxes[4 * c]);
+                        loLon = Math.min(loLon, boxes[4 * c + 1]);
+                        hiLat = Math.max(hiLat, boxes[4 * c + 2]);
+                        hiLon = Math.max(hiLon, boxes[4 * c + 3]);
+                    }
+                    setBox(e, loLat, loLon, hiLat, hiLon);
+                    indices[e] = child;
+                }
+                start = end;
+            }
+        }
+
+        private void setBox(int e, double minLat, double minLon, double maxLat, double maxLon) {
+            boxes[4 * e] = minLat;
+            boxes[4 * e + 1] = minLon;
+            boxes[4 * e + 2] = maxLat;
+            boxes[4 * e + 3] = maxLon;
+        }
+
+        private boolean intersects(int e, double minLat, double minLon, double maxLat, double maxLon) {
+            return maxLat >= boxes[4 * e] && maxLon >= boxes[4 * e + 1]
+                    && minLat <= boxes[4 * e + 2] && minLon <= boxes[4 * e + 3];
+        }
+
+        /**
+         * Writes the zones whose box meets the query box to out, in no
+         * particular order, and returns how many there are; a point query
+         * passes the point as both corners
+         */
+        int search(double minLat, double minLon, double maxLat, double maxLon, int[] out) {
+            int top = levelEnds.length - 1;
+            int root = levelEnds[top] - 1;
+            if (root < 0 || !intersects(root, minLat, minLon, maxLat, maxLon)) {
+                return 0;
+            }
+            // Pairs of (entry, level); each pop pushes at most NODE_SIZE pairs
+            int[] stack = new int[2 * NODE_SIZE * (top + 1)];
+            int sp = 0;
+            stack[sp++] = root;
+            stack[sp++] = top;
+            int count = 0;
+            while (sp > 0) {
+                int level = stack[--sp];
+                int entry = stack[--sp];
+                if (level == 0) {
+                    out[count++] = indices[entry];
+                    continue;
+                }
+                int first = indices[entry];
+                int last = Math.min(first + NODE_SIZE, levelEnds[level - 1]);
+                for (int child = first; child < last; child++) {
+                    if (intersects(child, minLat, minLon, maxLat, maxLon)) {
+                        stack[sp++] = child;
+                        stack[sp++] = level - 1;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+}
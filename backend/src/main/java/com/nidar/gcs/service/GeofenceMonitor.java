@@ -0,0 +1,270 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.Vehicle;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks every live position against the compiled geofence zones of the
+ * vehicle's mission (GeofenceIndex) and reports changes on /topic/geofence:
+ *   {"type": "BREACH", ...}       the position violates a zone
+ *   {"type": "NEAR_BREACH", ...}  a violation is predicted within
+ *                                 warning-seconds at the current velocity;
+ *                                 repeated every update-interval ms with a
+ *                                 fresh timeToBreach while it lasts
+ *   {"type": "CLEAR", ...}        no violation is current or predicted
+ * Velocity comes from the vehicle's last two positions.
+ *
+ * Entering a breach also publishes a GeofenceBreachEvent, which the vehicle's
+ * command link acts on according to the zone's violationAction.
+ *
+ * The MAVProxy drone is checked against its active mission; other vehicles
+ * have no mission of their own and are monitored once assigned one.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GeofenceMonitor {
+
+    public static final String GEOFENCE_TOPIC = "/topic/geofence";
+    public static final String MAVPROXY_VEHICLE = "mavproxy";
+
+    private final GeofenceIndex geofenceIndex;
+    private final BroadcastService broadcastService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${geofence.monitor.warning-seconds:10}")
+    private double warningSeconds;
+
+    @Value("${geofence.monitor.update-interval:1000}")
+    private long updateIntervalMs;
+
+    // Samples further apart than this give no velocity
+    @Value("${geofence.monitor.max-sample-gap:5000}")
+    private long maxSampleGapMs;
+
+    private final Map<String, Long> assignments = new ConcurrentHashMap<>();
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong evaluationNanos = new AtomicLong();
+    private final AtomicLong breaches = new AtomicLong();
+    private final AtomicLong nearBreaches = new AtomicLong();
+
+    private enum Status {
+        CLEAR, NEAR_BREACH, BREACH
+    }
+
+    private static final class Watch {
+        long missionId;
+        boolean hasSample;
+        double lat;
+        double lon;
+        double alt;
+        long sampledAt;
+
+        Status status = Status.CLEAR;
+        long zoneId;
+        GeofenceIndex.ViolationKind kind;
+        double timeToBreach;
+        long reportedAt;
+    }
+
+    // ============ Assignments ============
+
+    public void assign(@NonNull String vehicleId, @NonNull Long missionId) {
+        assignments.put(vehicleId, missionId);
+        log.info("Geofence monitoring {} against mission {}", vehicleId, missionId);
+    }
+
+    /**
+     * Mission whose zones apply to the vehicle, or null if none is assigned
+     */
+    public Long getAssignedMission(@NonNull String vehicleId) {
+        return assignments.get(vehicleId);
+    }
+
+    public void unassign(@NonNull String vehicleId) {
+        assignments.remove(vehicleId);
+        watches.remove(vehicleId);
+    }
+
+    // ============ Positions ============
+
+    public void onVehicle(@NonNull Vehicle vehicle) {
+        Long missionId = assignments.get(vehicle.getId());
+        if (missionId != null) {
+            long sampledAt = vehicle.getSampledAt() != null ? vehicle.getSampledAt() : vehicle.getLastHeartbeat();
+            evaluate(vehicle.getId(), missionId, vehicle.getLat(), vehicle.getLon(), vehicle.getAlt(), sampledAt);
+        }
+    }
+
+    public void onDrone(@NonNull Telemetry telemetry) {
+        Long missionId = telemetry.getMission() != null ? telemetry.getMission().getId()
+                : assignments.get(MAVPROXY_VEHICLE);
+        if (missionId != null && telemetry.getLatitude() != null && telemetry.getLongitude() != null
+                && telemetry.getAltitude() != null) {
+            long sampledAt = telemetry.getTimestamp() != null
+                    ? telemetry.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : System.currentTimeMillis();
+            evaluate(MAVPROXY_VEHICLE, missionId, telemetry.getLatitude(), telemetry.getLongitude(),
+                    telemetry.getAltitude(), sampledAt);
+        }
+    }
+
+    /**
+     * Velocity for breach prediction is taken between sample timestamps, so
+     * batched or delayed samples do not look like bursts of speed; an older
+     * sample than the last one is checked but not used as a velocity base
+     */
+    private void evaluate(String vehicleId, long missionId, double lat, double lon, double alt, long sampledAt) {
+        long started = System.nanoTime();
+        GeofenceIndex.MissionFences fences = geofenceIndex.get(missionId);
+        if (fences == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Watch watch = watches.computeIfAbsent(vehicleId, id -> new Watch());
+        Map<String, Object> report = null;
+        GeofenceBreachEvent breach = null;
+        synchronized (watch) {
+            double latRate = 0, lonRate = 0, altRate = 0;
+            long gap = sampledAt - watch.sampledAt;
+            if (watch.hasSample && watch.missionId == missionId && gap > 0 && gap <= maxSampleGapMs) {
+                double seconds = gap / 1000.0;
+                latRate = (lat - watch.lat) / seconds;
+                lonRate = (lon - watch.lon) / seconds;
+                altRate = (alt - watch.alt) / seconds;
+            }
+            if (watch.missionId != missionId) {
+                watch.status = Status.CLEAR;
+            }
+            if (!watch.hasSample || watch.missionId != missionId || gap > 0) {
+                watch.lat = lat;
+                watch.lon = lon;
+                watch.alt = alt;
+                watch.sampledAt = sampledAt;
+            }
+            watch.missionId = missionId;
+            watch.hasSample = true;
+
+            GeofenceIndex.Violation violation = fences.check(lat, lon, alt);
+            if (violation != null) {
+                if (transition(watch, Status.BREACH, violation.zone(), violation.kind(), 0)) {
+                    breaches.incrementAndGet();
+                    report = report(vehicleId, watch, violation.zone(), lat, lon, alt);
+                    breach = new GeofenceBreachEvent(vehicleId, missionId, violation.zone().getId(),
+                            violation.zone().getViolationAction());
+                }
+            } else {
+                GeofenceIndex.Prediction prediction = fences.predict(lat, lon, alt, latRate, lonRate, altRate,
+                        warningSeconds);
+                if (prediction != null) {
+                    boolean changed = transition(watch, Status.NEAR_BREACH, prediction.zone(), prediction.kind(),
+                            prediction.seconds());
+                    if (changed) {
+                        nearBreaches.incrementAndGet();
+                    }
+                    if (changed || now - watch.reportedAt >= updateIntervalMs) {
+                        report = report(vehicleId, watch, prediction.zone(), lat, lon, alt);
+                    }
+                } else if (transition(watch, Status.CLEAR, null, null, 0)) {
+                    report = report(vehicleId, watch, null, lat, lon, alt);
+                }
+            }
+            if (report != null) {
+                watch.reportedAt = now;
+            }
+        }
+
+        evaluations.incrementAndGet();
+        evaluationNanos.addAndGet(System.nanoTime() - started);
+        if (report != null) {
+            broadcastService.publish(report, GEOFENCE_TOPIC);
+        }
+        if (breach != null) {
+            log.warn("Geofence breach: {} in zone {}, action {}", vehicleId, breach.zoneId(),
+                    breach.violationAction());
+            eventPublisher.publishEvent(breach);
+        }
+    }
+
+    /**
+     * Moves the watch to the given state; true if that is a change of status,
+     * zone or kind of violation
+     */
+    private static boolean transition(Watch watch, Status status, GeofenceIndex.CompiledZone zone,
+            GeofenceIndex.ViolationKind kind, double timeToBreach) {
+        long zoneId = zone != null ? zone.getId() : 0;
+        boolean changed = watch.status != status || watch.zoneId != zoneId || watch.kind != kind;
+        watch.status = status;
+        watch.zoneId = zoneId;
+        watch.kind = kind;
+        watch.timeToBreach = timeToBreach;
+        return changed;
+    }
+
+    private static Map<String, Object> report(String vehicleId, Watch watch, GeofenceIndex.CompiledZone zone,
+            double lat, double lon, double alt) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("type", watch.status.name());
+        report.put("vehicleId", vehicleId);
+        report.put("missionId", watch.missionId);
+        if (zone != null) {
+            report.put("zoneId", zone.getId());
+            report.put("zoneName", zone.getName());
+            report.put("kind", watch.kind.name());
+            report.put("message", GeofenceService.describe(new GeofenceIndex.Violation(zone, watch.kind)));
+            report.put("violationAction", zone.getViolationAction());
+            report.put("timeToBreach", watch.timeToBreach);
+        }
+        report.put("lat", lat);
+        report.put("lon", lon);
+        report.put("alt", alt);
+        report.put("timestamp", watch.sampledAt);
+        return report;
+    }
+
+    // ============ Status ============
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> vehicles = new HashMap<>();
+        watches.forEach((id, watch) -> {
+            synchronized (watch) {
+                Map<String, Object> state = new HashMap<>();
+                state.put("missionId", watch.missionId);
+                state.put("status", watch.status.name());
+                if (watch.status != Status.CLEAR) {
+                    state.put("zoneId", watch.zoneId);
+                    state.put("kind", watch.kind.name());
+                    state.put("timeToBreach", watch.timeToBreach);
+                }
+                state.put("lastSampleAt", watch.sampledAt);
+                vehicles.put(id, state);
+            }
+        });
+
+        long count = evaluations.get();
+        Map<String, Object> status = new HashMap<>();
+        status.put("assignments", new HashMap<>(assignments));
+        status.put("vehicles", vehicles);
+        status.put("evaluations", count);
+        status.put("avgEvaluationMicros", count > 0 ? evaluationNanos.get() / 1000.0 / count : 0);
+        status.put("breaches", breaches.get());
+        status.put("nearBreaches", nearBreaches.get());
+        return status;
+    }
+}
@@ -1,6 +1,5 @@
 package com.nidar.gcs.service;
 
-import com.nidar.gcs.model.GeofencePoint;
 import com.nidar.gcs.model.GeofenceZone;
 import com.nidar.gcs.model.Mission;
 import com.nidar.gcs.repository.GeofenceZoneRepository;
@@ -21,6 +20,7 @@ public class GeofenceService {
 
     private final GeofenceZoneRepository geofenceZoneRepository;
     private final MissionRepository missionRepository;
+    private final GeofenceIndex geofenceIndex;
 
     public List<GeofenceZone> getAllZones() {
         return geofenceZoneRepository.findAll();
@@ -40,7 +40,9 @@ public class GeofenceService {
 
     public GeofenceZone createZone(GeofenceZone zone) {
         log.info("Creating geofence zone: {}", zone.getName());
-        return geofenceZoneRepository.save(zone);
+        GeofenceZone saved = geofenceZoneRepository.save(zone);
+        geofenceIndex.invalidate(missionId(saved));
+        return saved;
     }
 
     public GeofenceZone updateZone(@NonNull Long id, GeofenceZone zoneDetails) {
@@ -52,89 +54,56 @@ public class GeofenceService {
             zone.setMinAltitude(zoneDetails.getMinAltitude());
             zone.setMaxAltitude(zoneDetails.getMaxAltitude());
             zone.setViolationAction(zoneDetails.getViolationAction());
-            return geofenceZoneRepository.save(zone);
+            GeofenceZone saved = geofenceZoneRepository.save(zone);
+            geofenceIndex.invalidate(missionId(saved));
+            return saved;
         }
         return null;
     }
 
     public void deleteZone(@NonNull Long id) {
+        GeofenceZone zone = getZoneById(id);
         geofenceZoneRepository.deleteById(id);
+        if (zone != null) {
+            geofenceIndex.invalidate(missionId(zone));
+        }
     }
 
-    public Map<String, Object> validatePosition(Double latitude, Double longitude, Double altitude,
+    private static Long missionId(GeofenceZone zone) {
+        return zone.getMission() != null ? zone.getMission().getId() : null;
+    }
+
+    public Map<String, Object> validatePosition(double latitude, double longitude, double altitude,
             @NonNull Long missionId) {
         Map<String, Object> result = new HashMap<>();
         result.put("valid", true);
 
-        Mission mission = missionRepository.findById(missionId).orElse(null);
-        if (mission == null) {
+        GeofenceIndex.MissionFences fences = geofenceIndex.get(missionId);
+        if (fences == null) {
             result.put("valid", false);
             result.put("message", "Mission not found");
             return result;
         }
 
-        List<GeofenceZone> zones = geofenceZoneRepository.findByMissionAndEnabled(mission, true);
-
-        for (GeofenceZone zone : zones) {
-            // Check altitude constraints
-            if (zone.getMinAltitude() != null && altitude < zone.getMinAltitude()) {
-                result.put("valid", false);
-                result.put("message", "Below minimum altitude for zone: " + zone.getName());
-                result.put("violationAction", zone.getViolationAction());
-                return result;
-            }
-
-            if (zone.getMaxAltitude() != null && altitude > zone.getMaxAltitude()) {
-                result.put("valid", false);
-                result.put("message", "Above maximum altitude for zone: " + zone.getName());
-                result.put("violationAction", zone.getViolationAction());
-                return result;
-            }
-
-            // Check if point is inside zone (simplified point-in-polygon check)
-            if (isPointInZone(latitude, longitude, zone)) {
-                if ("EXCLUSION".equals(zone.getZoneType())) {
-                    result.put("valid", false);
-                    result.put("message", "Inside exclusion zone: " + zone.getName());
-                    result.put("violationAction", zone.getViolationAction());
-                    return result;
-                }
-            } else {
-                if ("INCLUSION".equals(zone.getZoneType())) {
-                    result.put("valid", false);
-                    result.put("message", "Outside inclusion zone: " + zone.getName());
-                    result.put("violationAction", zone.getViolationAction());
-                    return result;
-                }
-            }
+        GeofenceIndex.Violation violation = fences.check(latitude, longitude, altitude);
+        if (violation != null) {
+            result.put("valid", false);
+            result.put("message", describe(violation));
+            result.put("violationAction", violation.zone().getViolationAction());
+            return result;
         }
 
         result.put("message", "Position is valid");
         return result;
     }
 
-    private boolean isPointInZone(Double latitude, Double longitude, GeofenceZone zone) {
-        List<GeofencePoint> points = zone.getPoints();
-        if (points.size() < 3) {
-            return false; // Not a valid polygon
-        }
-
-        // Ray casting algorithm for point-in-polygon test
-        boolean inside = false;
-        int j = points.size() - 1;
-
-        for (int i = 0; i < points.size(); i++) {
-            GeofencePoint pi = points.get(i);
-            GeofencePoint pj = points.get(j);
-
-            if ((pi.getLongitude() > longitude) != (pj.getLongitude() > longitude) &&
-                    (latitude < (pj.getLatitude() - pi.getLatitude()) * (longitude - pi.getLongitude()) /
-                            (pj.getLongitude() - pi.getLongitude()) + pi.getLatitude())) {
-                inside = !inside;
-            }
-            j = i;
-        }
-
-        return inside;
+    static String describe(GeofenceIndex.Violation violation) {
+        String zone = violation.zone().getName();
+        return switch (violation.kind()) {
+            case BELOW_MIN_ALTITUDE -> "Below minimum altitude for zone: " + zone;
+            case ABOVE_MAX_ALTITUDE -> "Above maximum altitude for zone: " + zone;
+            case INSIDE_EXCLUSION -> "Inside exclusion zone: " + zone;
+            case OUTSIDE_INCLUSION -> "Outside inclusion zone: " + zone;
+        };
     }
 }
@@ -4,7 +4,7 @@ import com.nidar.gcs.model.*;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -30,7 +30,7 @@ public class MAVProxyService {
     @Value("${mavlink.serial.enabled:false}")
     private boolean serialEnabled;
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final TelemetryPublisher telemetryPublisher;
     private final TelemetryService telemetryService;
     private final MAVLinkMessageService mavLinkMessageService;
     private final MissionExecutionService missionExecutionService;
@@ -41,12 +41,12 @@ public class MAVProxyService {
     private boolean connected = false;
     private Random random = new Random();
 
-    public MAVProxyService(SimpMessagingTemplate messagingTemplate,
+    public MAVProxyService(TelemetryPublisher telemetryPublisher,
             TelemetryService telemetryService,
             MAVLinkMessageService mavLinkMessageService,
             MissionExecutionService missionExecutionService,
             MAVLinkSerialService mavLinkSerialService) {
-        this.messagingTemplate = messagingTemplate;
+        this.telemetryPublisher = telemetryPublisher;
         this.telemetryService = telemetryService;
         this.mavLinkMessageService = mavLinkMessageService;
         this.missionExecutionService = missionExecutionService;
@@ -168,8 +168,8 @@ public class MAVProxyService {
         Telemetry telemetry = generateTelemetry();
         telemetryService.saveTelemetry(telemetry);
 
-        // Send telemetry via WebSocket to frontend
-        messagingTemplate.convertAndSend("/topic/telemetry", telemetry);
+        // Send telemetry via WebSocket to frontend (keyframe/delta format)
+        telemetryPublisher.publishDrone(telemetry);
 
         // Only send MAVLink updates if simulation is enabled (virtual drone)
         // Real drone sends its own MAVLink via hardware/QGC
@@ -204,6 +204,11 @@ public class MAVProxyService {
             telemetry.setHeading((int) missionExecutionService.getHeading());
             telemetry.setFlightMode(missionExecutionService.getFlightMode());
             telemetry.setArmed(missionExecutionService.isArmed());
+            if (missionExecutionService.isMissionActive()) {
+                telemetry.setMission(missionExecutionService.getActiveMission());
+                telemetry.setCurrentWaypoint(missionExecutionService.getCurrentWaypoint());
+                telemetry.setTotalWaypoints(missionExecutionService.getTotalWaypoints());
+            }
         } else {
             // Drone is idle - use stationary position with random small variations for
             // realism
@@ -373,6 +378,16 @@ public class MAVProxyService {
         }
     }
 
+    /**
+     * Carries out the violation action of a geofence zone the drone breached
+     */
+    @EventListener
+    public void onGeofenceBreach(GeofenceBreachEvent event) {
+        if (GeofenceMonitor.MAVPROXY_VEHICLE.equals(event.vehicleId()) && event.isModeChange()) {
+            sendCommand("MODE " + event.violationAction());
+        }
+    }
+
     public boolean sendCommand(String command) {
         if (!connected) {
             log.error("Cannot send command: Not connected to MAVProxy");
@@ -4,6 +4,7 @@ import com.nidar.gcs.model.Mission;
 import com.nidar.gcs.model.Waypoint;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -27,6 +28,9 @@ public class MissionExecutionService {
     @Value("${mission.execution.start-position.longitude:-74.0060}")
     private double startLongitude;
 
+    @Autowired
+    private FlightStatisticsService flightStatisticsService;
+
     private Mission activeMission;
     private MissionState currentState;
     private int currentWaypointIndex = 0;
@@ -229,6 +233,9 @@ public class MissionExecutionService {
      */
     public void stopMission() {
         log.info("Mission stopped");
+        if (activeMission != null && currentState != MissionState.COMPLETED) {
+            flightStatisticsService.finishFlight(activeMission, "ABORTED", currentWaypointIndex);
+        }
         activeMission = null;
         currentState = MissionState.IDLE;
         flightMode = "STABILIZE";
@@ -246,6 +253,7 @@ public class MissionExecutionService {
         currentState = MissionState.COMPLETED;
         flightMode = "LOITER";
         missionCompleted = true;
+        flightStatisticsService.finishFlight(activeMission, "COMPLETED", activeMission.getWaypoints().size());
     }
 
     /**
@@ -355,6 +363,14 @@ public class MissionExecutionService {
         return activeMission;
     }
 
+    public int getCurrentWaypoint() {
+        return currentWaypointIndex;
+    }
+
+    public int getTotalWaypoints() {
+        return activeMission != null ? activeMission.getWaypoints().size() : 0;
+    }
+
     public MissionState getCurrentState() {
         return currentState;
     }
@@ -0,0 +1,32 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Mission;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Drops a mission's compiled geofences whenever the mission row is updated or
+ * deleted, whichever code path does it. Zone changes are handled by
+ * GeofenceService.
+ *
+ * Created by Hibernate through Spring's bean container; the index is looked
+ * up on use because the listener exists before the repositories it needs.
+ */
+public class MissionFenceListener {
+
+    private final ObjectProvider<GeofenceIndex> geofenceIndex;
+
+    public MissionFenceListener(ObjectProvider<GeofenceIndex> geofenceIndex) {
+        this.geofenceIndex = geofenceIndex;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void missionChanged(Mission mission) {
+        GeofenceIndex index = geofenceIndex.getIfAvailable();
+        if (index != null) {
+            index.invalidate(mission.getId());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.nidar.gcs.service;
+
+/**
+ * Published when the mission items stored for a vehicle change, so open agent
+ * channels can push the new mission without being polled. forwarded is set
+ * when the change happened on another cluster node and came over the broker.
+ */
+public record MissionItemsChangedEvent(String vehicleId, boolean forwarded) {
+
+    public MissionItemsChangedEvent(String vehicleId) {
+        this(vehicleId, false);
+    }
+}
@@ -4,23 +4,87 @@ import com.nidar.gcs.model.Mission;
 import com.nidar.gcs.model.Telemetry;
 import com.nidar.gcs.repository.MissionRepository;
 import com.nidar.gcs.repository.TelemetryRepository;
+import jakarta.persistence.EntityManager;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.lang.NonNull;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MissionReplayService {
 
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    private static final LocalDateTime MIN_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime MAX_TIME = LocalDateTime.of(9999, 12, 31, 23, 59);
+
     private final MissionRepository missionRepository;
     private final TelemetryRepository telemetryRepository;
+    private final FlightStatisticsService flightStatisticsService;
+    private final FlightArchiveService flightArchiveService;
+    private final EntityManager entityManager;
+
+    /**
+     * One keyset page of mission telemetry. Pass nextCursor (or
+     * nextTimestamp and nextId together) back to get the following page.
+     */
+    @Data
+    public static class TelemetryPage {
+        private List<Telemetry> telemetry;
+        private boolean hasMore;
+        private LocalDateTime nextTimestamp;
+        private Long nextId;
+        private String nextCursor; // "<timestamp>_<id>"
+    }
+
+    /**
+     * Position after which a page starts: rows are compared on the
+     * (timestamp, id) tuple, so rows sharing the boundary timestamp are
+     * neither repeated nor skipped
+     */
+    public record Cursor(LocalDateTime timestamp, long id) {
+
+        public static Cursor parse(String cursor) {
+            int separator = cursor.lastIndexOf('_');
+            try {
+                return new Cursor(LocalDateTime.parse(cursor.substring(0, separator)),
+                        Long.parseLong(cursor.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor: " + cursor);
+            }
+        }
+
+        /**
+         * Cursor from separate parameters, which must be given together
+         */
+        public static Cursor of(LocalDateTime timestamp, Long id) {
+            if (timestamp == null && id == null) {
+                return null;
+            }
+            if (timestamp == null || id == null) {
+                throw new IllegalArgumentException("afterTimestamp and afterId must be given together");
+            }
+            return new Cursor(timestamp, id);
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "_" + id;
+        }
+    }
 
     public Map<String, Object> getMissionReplayData(@NonNull Long missionId) {
         Map<String, Object> result = new HashMap<>();
@@ -31,91 +95,173 @@ public class MissionReplayService {
             return result;
         }
 
-        // Get all telemetry data for the mission sorted by timestamp
-        List<Telemetry> telemetryData = telemetryRepository.findAll(Sort.by(Sort.Direction.ASC, "timestamp"));
-
-        // Filter telemetry for this mission if mission reference exists
-        List<Telemetry> missionTelemetry = telemetryData.stream()
-                .filter(t -> t.getMission() != null && t.getMission().getId().equals(missionId))
-                .toList();
+        // First page only - clients follow the cursor via /api/replay/telemetry
+        TelemetryPage firstPage = getTelemetryPage(missionId, null, null, null, DEFAULT_PAGE_SIZE);
 
         result.put("mission", mission);
-        result.put("telemetry", missionTelemetry);
-        result.put("totalPoints", missionTelemetry.size());
+        result.put("telemetry", firstPage.getTelemetry());
+        result.put("hasMore", firstPage.isHasMore());
+        result.put("nextTimestamp", firstPage.getNextTimestamp());
+        result.put("nextId", firstPage.getNextId());
+        result.put("nextCursor", firstPage.getNextCursor());
+        result.put("totalPoints", countTelemetry(missionId, null, null));
 
-        // Calculate mission statistics
-        if (!missionTelemetry.isEmpty()) {
-            Map<String, Object> stats = calculateMissionStatistics(missionTelemetry);
+        // Statistics come from the flight log (or the live aggregate); only
+        // flights recorded without one fall back to a pass over the telemetry
+        Map<String, Object> stats = flightStatisticsService.getStatistics(missionId);
+        if (stats == null && !firstPage.getTelemetry().isEmpty()) {
+            stats = calculateMissionStatistics(missionId);
+        }
+        if (stats != null) {
             result.put("statistics", stats);
         }
 
         return result;
     }
 
-    public List<Telemetry> getTelemetryByMission(@NonNull Long missionId) {
-        Mission mission = missionRepository.findById(missionId).orElse(null);
-        if (mission == null) {
-            return List.of();
+    public TelemetryPage getTelemetryPage(@NonNull Long missionId, LocalDateTime from, LocalDateTime to,
+            Cursor after, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // Without a cursor, start just before 'from' so rows at exactly 'from' are included
+        LocalDateTime cursorTime = after != null ? after.timestamp() : (from != null ? from : MIN_TIME);
+        long cursorId = after != null ? after.id() : -1L;
+
+        // Fetch one extra row to learn whether another page follows. Archived
+        // flights precede the rows still in the telemetry table.
+        List<Telemetry> rows = new ArrayList<>();
+        flightArchiveService.scan(missionId, cursorTime, cursorId, to, t -> {
+            rows.add(t);
+            return rows.size() <= pageSize;
+        });
+        if (rows.size() <= pageSize) {
+            if (!rows.isEmpty()) {
+                Telemetry lastArchived = rows.get(rows.size() - 1);
+                cursorTime = lastArchived.getTimestamp();
+                cursorId = lastArchived.getId();
+            }
+            rows.addAll(telemetryRepository.findMissionPage(missionId, cursorTime, cursorId,
+                    to != null ? to : MAX_TIME, PageRequest.of(0, pageSize + 1 - rows.size())));
         }
 
-        List<Telemetry> allTelemetry = telemetryRepository.findAll(Sort.by(Sort.Direction.ASC, "timestamp"));
-        return allTelemetry.stream()
-                .filter(t -> t.getMission() != null && t.getMission().getId().equals(missionId))
-                .toList();
+        return toPage(rows, pageSize);
     }
 
-    private Map<String, Object> calculateMissionStatistics(List<Telemetry> telemetry) {
-        Map<String, Object> stats = new HashMap<>();
+    private static TelemetryPage toPage(List<Telemetry> rows, int pageSize) {
+        TelemetryPage page = new TelemetryPage();
+        page.setHasMore(rows.size() > pageSize);
+        page.setTelemetry(page.isHasMore() ? rows.subList(0, pageSize) : rows);
 
-        if (telemetry.isEmpty()) {
-            return stats;
+        if (!page.getTelemetry().isEmpty()) {
+            Telemetry last = page.getTelemetry().get(page.getTelemetry().size() - 1);
+            page.setNextTimestamp(last.getTimestamp());
+            page.setNextId(last.getId());
+            page.setNextCursor(new Cursor(last.getTimestamp(), last.getId()).toString());
         }
+        return page;
+    }
+
+    /**
+     * Visit every telemetry row of a mission in timestamp order: archived
+     * flights in one pass over their files, then the telemetry table one page
+     * at a time. Rows are detached after each page so memory stays bounded
+     * even inside a request-scoped persistence context.
+     */
+    public void forEachTelemetry(@NonNull Long missionId, LocalDateTime from, LocalDateTime to,
+            Consumer<Telemetry> consumer) {
+        Telemetry[] lastArchived = new Telemetry[1];
+        flightArchiveService.scan(missionId, from, -1L, to, t -> {
+            consumer.accept(t);
+            lastArchived[0] = t;
+            return true;
+        });
+
+        Cursor after = lastArchived[0] != null
+                ? new Cursor(lastArchived[0].getTimestamp(), lastArchived[0].getId())
+                : null;
+        TelemetryPage page;
+        do {
+            page = getTableTelemetryPage(missionId, from, to, after, DEFAULT_PAGE_SIZE);
+            for (Telemetry t : page.getTelemetry()) {
+                consumer.accept(t);
+                entityManager.detach(t);
+            }
+            if (page.getNextTimestamp() != null) {
+                after = new Cursor(page.getNextTimestamp(), page.getNextId());
+            }
+        } while (page.isHasMore());
+    }
+
+    /**
+     * Telemetry rows of a mission in [from, to], archived and live. Archived
+     * counts are rounded to whole blocks when a range is given.
+     */
+    public long countTelemetry(@NonNull Long missionId, LocalDateTime from, LocalDateTime to) {
+        long archived = flightArchiveService.countRows(missionId, from, to);
+        if (from == null && to == null) {
+            return archived + telemetryRepository.countByMissionId(missionId);
+        }
+        return archived + telemetryRepository.countByMissionIdAndTimestampBetween(missionId,
+                from != null ? from : MIN_TIME, to != null ? to : MAX_TIME);
+    }
 
-        // Calculate max altitude
-        double maxAltitude = telemetry.stream()
-                .mapToDouble(t -> t.getAltitude() != null ? t.getAltitude() : 0.0)
-                .max()
-                .orElse(0.0);
-
-        // Calculate max speed
-        double maxSpeed = telemetry.stream()
-                .mapToDouble(t -> t.getSpeed() != null ? t.getSpeed() : 0.0)
-                .max()
-                .orElse(0.0);
-
-        // Calculate average speed
-        double avgSpeed = telemetry.stream()
-                .mapToDouble(t -> t.getSpeed() != null ? t.getSpeed() : 0.0)
-                .average()
-                .orElse(0.0);
-
-        // Calculate total distance (simplified)
-        double totalDistance = 0.0;
-        for (int i = 1; i < telemetry.size(); i++) {
-            Telemetry prev = telemetry.get(i - 1);
-            Telemetry curr = telemetry.get(i);
-
-            if (prev.getLatitude() != null && prev.getLongitude() != null &&
-                    curr.getLatitude() != null && curr.getLongitude() != null) {
-                totalDistance += calculateDistance(
+    /**
+     * Keyset page read from the telemetry table only
+     */
+    private TelemetryPage getTableTelemetryPage(@NonNull Long missionId, LocalDateTime from, LocalDateTime to,
+            Cursor after, int pageSize) {
+        LocalDateTime cursorTime = after != null ? after.timestamp() : (from != null ? from : MIN_TIME);
+        long cursorId = after != null ? after.id() : -1L;
+
+        List<Telemetry> rows = telemetryRepository.findMissionPage(missionId, cursorTime, cursorId,
+                to != null ? to : MAX_TIME, PageRequest.of(0, pageSize + 1));
+        return toPage(rows, pageSize);
+    }
+
+    private Map<String, Object> calculateMissionStatistics(@NonNull Long missionId) {
+        Map<String, Object> stats = new HashMap<>();
+
+        // Single pass over the mission: max/avg, distance and battery in one go
+        double[] acc = new double[5]; // maxAlt, maxSpeed, speedSum, distance, count
+        Telemetry[] endpoints = new Telemetry[2]; // first, last
+
+        forEachTelemetry(missionId, null, null, t -> {
+            acc[0] = Math.max(acc[0], t.getAltitude() != null ? t.getAltitude() : 0.0);
+            double speed = t.getSpeed() != null ? t.getSpeed() : 0.0;
+            acc[1] = Math.max(acc[1], speed);
+            acc[2] += speed;
+            acc[4]++;
+
+            Telemetry prev = endpoints[1];
+            if (prev != null && prev.getLatitude() != null && prev.getLongitude() != null &&
+                    t.getLatitude() != null && t.getLongitude() != null) {
+                acc[3] += calculateDistance(
                         prev.getLatitude(), prev.getLongitude(),
-                        curr.getLatitude(), curr.getLongitude());
+                        t.getLatitude(), t.getLongitude());
+            }
+            if (endpoints[0] == null) {
+                endpoints[0] = t;
             }
+            endpoints[1] = t;
+        });
+
+        if (endpoints[0] == null) {
+            return stats;
         }
 
         // Battery usage
-        Telemetry first = telemetry.get(0);
-        Telemetry last = telemetry.get(telemetry.size() - 1);
+        Telemetry first = endpoints[0];
+        Telemetry last = endpoints[1];
         double batteryUsed = (first.getBattery() != null && last.getBattery() != null)
                 ? first.getBattery() - last.getBattery()
                 : 0.0;
 
-        stats.put("maxAltitude", maxAltitude);
-        stats.put("maxSpeed", maxSpeed);
-        stats.put("avgSpeed", avgSpeed);
-        stats.put("totalDistance", totalDistance);
+        stats.put("maxAltitude", acc[0]);
+        stats.put("maxSpeed", acc[1]);
+        stats.put("avgSpeed", acc[2] / acc[4]);
+        stats.put("totalDistance", acc[3]);
         stats.put("batteryUsed", batteryUsed);
-        stats.put("duration", telemetry.size()); // in seconds (assuming 1Hz telemetry)
+        stats.put("duration", Duration.between(first.getTimestamp(), last.getTimestamp()).getSeconds());
         stats.put("startTime", first.getTimestamp());
         stats.put("endTime", last.getTimestamp());
 
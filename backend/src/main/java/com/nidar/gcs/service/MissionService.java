@@ -3,12 +3,16 @@ package com.nidar.gcs.service;
 import com.nidar.gcs.model.Detection;
 import com.nidar.gcs.model.Mission;
 import com.nidar.gcs.model.MissionItem;
+import com.nidar.gcs.model.Vehicle;
 import com.nidar.gcs.model.Waypoint;
+import com.nidar.gcs.repository.DetectionRepository;
 import com.nidar.gcs.repository.MissionItemRepository;
 import com.nidar.gcs.repository.MissionRepository;
 import com.nidar.gcs.repository.WaypointRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -21,6 +25,8 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.lang.NonNull;
@@ -34,6 +40,18 @@ public class MissionService {
     private final WaypointRepository waypointRepository;
     private final MissionItemRepository missionItemRepository;
     private final MAVProxyService mavProxyService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VehicleStateStore stateStore;
+    private final GeofenceMonitor geofenceMonitor;
+    private final PathPlanner pathPlanner;
+    private final DetectionRepository detectionRepository;
+    private final DeliveryRouteOptimizer deliveryRouteOptimizer;
+
+    @Value("${delivery.route.payload-capacity:4}")
+    private int defaultPayloadCapacity;
+
+    @Value("${delivery.route.range-metres:8000}")
+    private double defaultRangeMetres;
 
     @Transactional
     public Mission createMission(Mission mission) {
@@ -151,38 +169,168 @@ public class MissionService {
             item.setVehicleId(vehicleId);
         }
         missionItemRepository.saveAll(mission);
+        eventPublisher.publishEvent(new MissionItemsChangedEvent(vehicleId));
     }
 
     /**
-     * Generate mission for a detection target with full MAVLink commands
-     * Includes: Takeoff -> Navigate -> Descend -> Drop Payload -> Ascend -> RTL
+     * Replace the vehicle's mission with one multi-drop delivery route over
+     * approved detections (DeliveryRouteOptimizer). Sorties are limited by
+     * payload capacity and by range from the battery budget; between sorties
+     * the vehicle lands at the start position to reload and takes off again,
+     * and the last sortie ends in RTL. Legs are routed around the exclusion
+     * zones of the vehicle's geofence mission, if it is monitored against one,
+     * and the routed leg lengths are what range and the split are judged on.
+     *
+     * By default the route covers approved detections not yet delivered to;
+     * detectionIds may name any approved ones. Targets in the uploaded route
+     * are marked delivered. Returns the plan summary; targets out of range
+     * or without a legal route are listed as unreachable and left out.
+     *
+     * @throws IllegalArgumentException if there is no target or none can be
+     *         reached; the vehicle's mission is left unchanged
      */
-    public void generateMissionForDetection(Detection detection, String targetVehicleId) {
-        log.info("Generating mission for detection {} to vehicle {}", detection.getId(), targetVehicleId);
-        List<MissionItem> mission = new ArrayList<>();
+    @Transactional
+    public Map<String, Object> planDeliveryRoute(@NonNull DeliveryRouteOptimizer.RouteRequest request) {
+        String vehicleId = request.getVehicleId() != null ? request.getVehicleId() : "delivery";
+        List<Detection> targets = (request.getDetectionIds() != null
+                ? detectionRepository.findAllById(request.getDetectionIds()).stream()
+                        .filter(Detection::isApproved).toList()
+                : detectionRepository.findUndelivered());
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No approved detections to deliver to");
+        }
+
+        double homeLat;
+        double homeLon;
+        if (request.getStartLat() != null && request.getStartLon() != null) {
+            homeLat = request.getStartLat();
+            homeLon = request.getStartLon();
+        } else {
+            Vehicle vehicle = stateStore.getVehicle(vehicleId);
+            if (vehicle == null) {
+                throw new IllegalArgumentException("No position for " + vehicleId + ", give startLat and startLon");
+            }
+            homeLat = vehicle.getLat();
+            homeLon = vehicle.getLon();
+        }
+        int capacity = request.getPayloadCapacity() != null ? request.getPayloadCapacity() : defaultPayloadCapacity;
+        double range = request.getRangeMetres() != null ? request.getRangeMetres() : defaultRangeMetres;
+
+        Long fenceMissionId = geofenceMonitor.getAssignedMission(vehicleId);
+        double cruiseAlt = 30;
+        double dropAlt = 10;
+        if (fenceMissionId != null) {
+            double clampedCruise = pathPlanner.clampAltitude(fenceMissionId, cruiseAlt);
+            double clampedDrop = pathPlanner.clampAltitude(fenceMissionId, dropAlt);
+            if (Double.isNaN(clampedCruise) || Double.isNaN(clampedDrop)) {
+                throw new IllegalArgumentException("The geofences of mission " + fenceMissionId
+                        + " leave no altitude to fly " + vehicleId + " at");
+            }
+            cruiseAlt = clampedCruise;
+            dropAlt = Math.min(clampedDrop, cruiseAlt);
+        }
+
+        // Routes between home (node 0) and every target (node k + 1), around the zones
+        int count = targets.size();
+        double[] lat = new double[count + 1];
+        double[] lon = new double[count + 1];
+        lat[0] = homeLat;
+        lon[0] = homeLon;
+        for (int k = 0; k < count; k++) {
+            lat[k + 1] = targets.get(k).getLat();
+            lon[k + 1] = targets.get(k).getLon();
+        }
+        PathPlanner.Route[][] routes = new PathPlanner.Route[count + 1][count + 1];
+        double[][] dist = new double[count + 1][count + 1];
+        for (int a = 0; a <= count; a++) {
+            for (int b = 0; b <= count; b++) {
+                if (a != b) {
+                    routes[a][b] = pathPlanner.plan(fenceMissionId, lat[a], lon[a], lat[b], lon[b], cruiseAlt);
+                    dist[a][b] = routes[a][b] != null ? routes[a][b].lengthMetres() : Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+        DeliveryRouteOptimizer.Solution solution = deliveryRouteOptimizer.solve(dist, capacity, range);
+        if (solution.sorties().isEmpty()) {
+            throw new IllegalArgumentException("None of the " + count + " targets can be reached and returned from"
+                    + " within " + Math.round(range) + " m" + (fenceMissionId != null
+                            ? " on a legal route under mission " + fenceMissionId + " geofences" : ""));
+        }
 
-        // 1. Takeoff to safe altitude (e.g. 30m) - MAV_CMD_NAV_TAKEOFF (22)
-        mission.add(createItem(targetVehicleId, 1, 22, 0, 0, 30));
+        List<MissionItem> mission = new ArrayList<>();
+        List<List<String>> sorties = new ArrayList<>();
+        List<Detection> delivered = new ArrayList<>();
+        for (int s = 0; s < solution.sorties().size(); s++) {
+            int[] sortie = solution.sorties().get(s);
+            boolean last = s == solution.sorties().size() - 1;
+            List<String> sortieIds = new ArrayList<>(sortie.length);
+
+            // Takeoff - MAV_CMD_NAV_TAKEOFF (22)
+            mission.add(createItem(vehicleId, mission.size() + 1, 22, 0, 0, cruiseAlt));
+            int from = 0;
+            for (int target : sortie) {
+                Detection detection = targets.get(target);
+                addLeg(mission, vehicleId, routes[from][target + 1], cruiseAlt, false);
+                addDrop(mission, vehicleId, detection.getLat(), detection.getLon(), cruiseAlt, dropAlt);
+                from = target + 1;
+                sortieIds.add(detection.getId());
+                delivered.add(detection);
+            }
+            addLeg(mission, vehicleId, routes[from][0], cruiseAlt, last);
+            if (last) {
+                // RTL - MAV_CMD_NAV_RETURN_TO_LAUNCH (20)
+                mission.add(createItem(vehicleId, mission.size() + 1, 20, 0, 0, 0));
+            } else {
+                // Land at the start to reload - MAV_CMD_NAV_LAND (21)
+                mission.add(createItem(vehicleId, mission.size() + 1, 21, homeLat, homeLon, 0));
+            }
+            sorties.add(sortieIds);
+        }
+        setMission(vehicleId, mission);
+        detectionRepository.markDelivered(delivered.stream().map(Detection::getId).toList());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("vehicleId", vehicleId);
+        result.put("targets", targets.size());
+        result.put("sorties", sorties);
+        result.put("distanceMetres", Math.round(solution.distanceMetres()));
+        result.put("unreachable", Arrays.stream(solution.unreachable()).mapToObj(k -> targets.get(k).getId()).toList());
+        result.put("missionItems", mission.size());
+        result.put("payloadCapacity", capacity);
+        result.put("rangeMetres", range);
+        result.put("elapsedMs", solution.elapsedMs());
+        return result;
+    }
 
-        // 2. Fly to detection location - MAV_CMD_NAV_WAYPOINT (16)
-        mission.add(createItem(targetVehicleId, 2, 16, detection.getLat(), detection.getLon(), 30));
+    /**
+     * Waypoints of a planned leg; the final waypoint is left out when RTL flies it
+     */
+    private void addLeg(List<MissionItem> mission, String vehicleId, PathPlanner.Route route, double cruiseAlt,
+            boolean omitLast) {
+        // The optimiser only uses legs it has a length for
+        List<double[]> waypoints = route.waypoints();
+        for (int i = 0; i < waypoints.size() - (omitLast ? 1 : 0); i++) {
+            double[] wp = waypoints.get(i);
+            mission.add(createItem(vehicleId, mission.size() + 1, 16, wp[0], wp[1], cruiseAlt));
+        }
+    }
 
-        // 3. Descend for drop (e.g. 10m)
-        mission.add(createItem(targetVehicleId, 3, 16, detection.getLat(), detection.getLon(), 10));
+    /**
+     * Descend over the target, drop the payload and climb back to cruise
+     */
+    private void addDrop(List<MissionItem> mission, String vehicleId, double lat, double lon, double cruiseAlt,
+            double dropAlt) {
+        // Descend for drop (e.g. 10m)
+        mission.add(createItem(vehicleId, mission.size() + 1, 16, lat, lon, dropAlt));
 
-        // 4. Drop payload (Servo command placeholder) - MAV_CMD_DO_SET_SERVO (183)
-        MissionItem drop = createItem(targetVehicleId, 4, 183, 0, 0, 0);
+        // Drop payload (Servo command placeholder) - MAV_CMD_DO_SET_SERVO (183)
+        MissionItem drop = createItem(vehicleId, mission.size() + 1, 183, 0, 0, 0);
         drop.setParam1(9); // Servo Instance
         drop.setParam2(1100); // PWM
         mission.add(drop);
 
-        // 5. Ascend back to safe altitude
-        mission.add(createItem(targetVehicleId, 5, 16, detection.getLat(), detection.getLon(), 30));
-
-        // 6. RTL - MAV_CMD_NAV_RETURN_TO_LAUNCH (20)
-        mission.add(createItem(targetVehicleId, 6, 20, 0, 0, 0));
-
-        missionItemRepository.saveAll(mission);
+        // Ascend back to safe altitude
+        mission.add(createItem(vehicleId, mission.size() + 1, 16, lat, lon, cruiseAlt));
     }
 
     /**
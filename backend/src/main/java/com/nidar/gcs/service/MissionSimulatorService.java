@@ -2,8 +2,11 @@ package com.nidar.gcs.service;
 
 import com.nidar.gcs.model.Mission;
 import com.nidar.gcs.model.Waypoint;
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -13,12 +16,32 @@ import java.util.List;
  * Service for simulating and validating missions before deployment
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class MissionSimulatorService {
 
     private static final double EARTH_RADIUS_KM = 6371.0;
     private static final double MAX_SAFE_ALTITUDE = 120.0; // meters (FAA limit)
     private static final double MIN_WAYPOINT_DISTANCE = 5.0; // meters
+    // Finer than SRTM's 30 m posting gains nothing; the cap bounds the work per leg
+    public static final double MIN_SAMPLE_SPACING = 5.0; // meters
+    private static final int MAX_SAMPLES_PER_LEG = 10_000;
+
+    private final TerrainService terrainService;
+
+    @Value("${terrain.sample-spacing:30.0}")
+    private double terrainSampleSpacing; // meters between terrain samples along a leg
+
+    @Value("${terrain.min-clearance:15.0}")
+    private double minTerrainClearance; // meters AGL
+
+    @PostConstruct
+    public void checkConfiguration() {
+        if (!(terrainSampleSpacing >= MIN_SAMPLE_SPACING) || Double.isInfinite(terrainSampleSpacing)) {
+            throw new IllegalStateException("terrain.sample-spacing must be at least " + MIN_SAMPLE_SPACING
+                    + " m, got " + terrainSampleSpacing);
+        }
+    }
 
     @Data
     public static class SimulationResult {
@@ -31,6 +54,9 @@ public class MissionSimulatorService {
         private double maxAltitude; // meters
         private double avgSpeed; // m/s
         private int waypointCount;
+        private boolean terrainChecked;
+        private Double minAgl; // meters above ground along the whole route
+        private List<Double> legMinAgl; // per leg, null where terrain is unknown
 
         public SimulationResult() {
             this.errors = new ArrayList<>();
@@ -42,6 +68,19 @@ public class MissionSimulatorService {
      * Simulate and validate a mission
      */
     public SimulationResult simulateMission(Mission mission) {
+        return simulateMission(mission, terrainSampleSpacing);
+    }
+
+    /**
+     * Simulate and validate a mission, sampling terrain every sampleSpacing
+     * metres along each leg (at least MIN_SAMPLE_SPACING); a leg is sampled
+     * at most MAX_SAMPLES_PER_LEG times, more widely spaced if it is longer
+     */
+    public SimulationResult simulateMission(Mission mission, double sampleSpacing) {
+        if (!(sampleSpacing >= MIN_SAMPLE_SPACING) || Double.isInfinite(sampleSpacing)) {
+            throw new IllegalArgumentException("Terrain sample spacing must be at least " + MIN_SAMPLE_SPACING
+                    + " m, got " + sampleSpacing);
+        }
         SimulationResult result = new SimulationResult();
 
         List<Waypoint> waypoints = mission.getWaypoints();
@@ -66,6 +105,7 @@ public class MissionSimulatorService {
         checkAltitudeChanges(waypoints, result);
         checkWaypointSpacing(waypoints, result);
         checkGeofence(waypoints, mission, result);
+        checkTerrainClearance(waypoints, sampleSpacing, result);
 
         // Determine if valid
         result.setValid(result.getErrors().isEmpty());
@@ -207,6 +247,75 @@ public class MissionSimulatorService {
         }
     }
 
+    /**
+     * Sample terrain along every leg and report the lowest height above ground.
+     * Waypoint altitudes are relative to home (the first waypoint), so AGL is
+     * home elevation + relative altitude - ground elevation.
+     */
+    private void checkTerrainClearance(List<Waypoint> waypoints, double sampleSpacing, SimulationResult result) {
+        Waypoint home = waypoints.get(0);
+        double homeElevation = terrainService.getElevation(home.getLatitude(), home.getLongitude());
+        if (Double.isNaN(homeElevation)) {
+            result.getWarnings().add("No terrain data at home position - terrain clearance not checked");
+            return;
+        }
+
+        List<Double> legMinAgl = new ArrayList<>();
+        double routeMinAgl = Double.POSITIVE_INFINITY;
+        boolean missingTerrain = false;
+
+        for (int i = 0; i < waypoints.size() - 1; i++) {
+            Waypoint wp1 = waypoints.get(i);
+            Waypoint wp2 = waypoints.get(i + 1);
+
+            double legLength = calculateDistance(
+                    wp1.getLatitude(), wp1.getLongitude(), 0,
+                    wp2.getLatitude(), wp2.getLongitude(), 0);
+            int steps = (int) Math.max(1, Math.min(MAX_SAMPLES_PER_LEG, Math.ceil(legLength / sampleSpacing)));
+
+            double legMin = Double.POSITIVE_INFINITY;
+            for (int s = 0; s <= steps; s++) {
+                double f = (double) s / steps;
+                double lat = wp1.getLatitude() + (wp2.getLatitude() - wp1.getLatitude()) * f;
+                double lon = wp1.getLongitude() + (wp2.getLongitude() - wp1.getLongitude()) * f;
+                double alt = wp1.getAltitude() + (wp2.getAltitude() - wp1.getAltitude()) * f;
+
+                double ground = terrainService.getElevation(lat, lon);
+                if (Double.isNaN(ground)) {
+                    missingTerrain = true;
+                    continue;
+                }
+                legMin = Math.min(legMin, homeElevation + alt - ground);
+            }
+
+            if (legMin == Double.POSITIVE_INFINITY) {
+                legMinAgl.add(null);
+                continue;
+            }
+            legMinAgl.add(legMin);
+            routeMinAgl = Math.min(routeMinAgl, legMin);
+
+            if (legMin < 0) {
+                result.getErrors().add(String.format(
+                        "WP%d to WP%d: Path intersects terrain (%.1fm AGL)", i, i + 1, legMin));
+            } else if (legMin < minTerrainClearance) {
+                result.getWarnings().add(String.format(
+                        "WP%d to WP%d: Low terrain clearance %.1fm (minimum %.1fm)",
+                        i, i + 1, legMin, minTerrainClearance));
+            }
+        }
+
+        if (missingTerrain) {
+            result.getWarnings().add("Terrain data missing for part of the route");
+        }
+
+        result.setTerrainChecked(true);
+        result.setLegMinAgl(legMinAgl);
+        if (routeMinAgl != Double.POSITIVE_INFINITY) {
+            result.setMinAgl(routeMinAgl);
+        }
+    }
+
     private void checkGeofence(List<Waypoint> waypoints, Mission mission, SimulationResult result) {
         if (!Boolean.TRUE.equals(mission.getGeofenceEnabled())) {
             return;
@@ -0,0 +1,445 @@
+package com.nidar.gcs.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shortest legal route between two points through a mission's geofence zones.
+ *
+ * Zones are projected to local metres around the mission's zones, exclusion
+ * zones pushed outward by the buffer distance and inclusion zones pulled
+ * inward by it. A leg is legal when it neither crosses nor touches an edge of
+ * a buffered zone, stays out of buffered exclusion zones and inside every
+ * buffered inclusion zone, so no leg cuts through the buffer band, at corners
+ * either; endpoints inside a band have no legal route. Nodes are the buffered
+ * vertices moved a further NODE_MARGIN out, so legs between them clear the
+ * buffered edges. The visibility graph between nodes is built once per
+ * compiled zone set and dropped when GeofenceIndex invalidates the mission,
+ * so a query only links its two endpoints to the nodes and runs A* over the
+ * graph.
+ *
+ * The route is flown at one altitude, the requested one clamped into the band
+ * every zone allows, matching how GeofenceIndex applies altitude limits.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PathPlanner {
+
+    private static final double METRES_PER_DEG_LAT = 110_540;
+    private static final double METRES_PER_DEG_LON = 111_320;
+    // Nodes sit this far outside the buffered zones, in metres
+    private static final double NODE_MARGIN = 1.0;
+
+    private final GeofenceIndex geofenceIndex;
+
+    @Value("${geofence.planner.buffer:15}")
+    private double bufferMetres;
+
+    private final Map<Long, Graph> graphs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        geofenceIndex.addInvalidationListener(graphs::remove);
+    }
+
+    /**
+     * Legs to fly after the start, ending at the goal, as [lat, lon] pairs
+     */
+    public record Route(List<double[]> waypoints, double altitude, double lengthMetres) {
+    }
+
+    /**
+     * Route from start to goal under the mission's zones, or a direct one if
+     * missionId is null. Null when the zones leave no legal route: an
+     * endpoint is not allowed, no altitude satisfies every zone, or the
+     * obstacles cut the goal off.
+     */
+    public Route plan(Long missionId, double startLat, double startLon, double goalLat, double goalLon,
+            double altitude) {
+        GeofenceIndex.MissionFences fences = missionId != null ? geofenceIndex.get(missionId) : null;
+        if (fences == null) {
+            return new Route(List.of(new double[] { goalLat, goalLon }), altitude,
+                    distance(startLat, startLon, goalLat, goalLon));
+        }
+
+        double cruise = clampAltitude(fences, altitude);
+        if (Double.isNaN(cruise)) {
+            return null;
+        }
+        long started = System.nanoTime();
+        Graph graph = graph(missionId, fences);
+        List<double[]> waypoints = graph.shortestPath(graph.toX(startLon), graph.toY(startLat),
+                graph.toX(goalLon), graph.toY(goalLat));
+        if (waypoints == null) {
+            return null;
+        }
+
+        double length = 0;
+        double lat = startLat, lon = startLon;
+        for (double[] wp : waypoints) {
+            length += distance(lat, lon, wp[0], wp[1]);
+            lat = wp[0];
+            lon = wp[1];
+        }
+        log.debug("Planned {} legs ({} m) through mission {} zones in {}us", waypoints.size(), Math.round(length),
+                missionId, (System.nanoTime() - started) / 1000);
+        return new Route(waypoints, cruise, length);
+    }
+
+    /**
+     * The altitude nearest the requested one that no zone's limits forbid,
+     * or NaN if the limits exclude every altitude; unchanged without a mission
+     */
+    public double clampAltitude(Long missionId, double altitude) {
+        GeofenceIndex.MissionFences fences = missionId != null ? geofenceIndex.get(missionId) : null;
+        return fences != null ? clampAltitude(fences, altitude) : altitude;
+    }
+
+    private static double clampAltitude(GeofenceIndex.MissionFences fences, double altitude) {
+        double floor = Double.NEGATIVE_INFINITY, ceiling = Double.POSITIVE_INFINITY;
+        for (GeofenceIndex.CompiledZone zone : fences.getZones()) {
+            floor = Math.max(floor, zone.getMinAltitude());
+            ceiling = Math.min(ceiling, zone.getMaxAltitude());
+        }
+        return floor > ceiling ? Double.NaN : Math.max(floor, Math.min(ceiling, altitude));
+    }
+
+    private Graph graph(Long missionId, GeofenceIndex.MissionFences fences) {
+        Graph graph = graphs.get(missionId);
+        if (graph == null || graph.fences != fences) {
+            long started = System.currentTimeMillis();
+            graph = new Graph(fences, bufferMetres);
+            graphs.put(missionId, graph);
+            log.info("Built path graph for mission {}: {} nodes in {}ms", missionId, graph.nodeX.length,
+                    System.currentTimeMillis() - started);
+        }
+        return graph;
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * METRES_PER_DEG_LAT;
+        double dx = (lon2 - lon1) * METRES_PER_DEG_LON * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.hypot(dx, dy);
+    }
+
+    /**
+     * Visibility graph of one compiled zone set, in local metres
+     */
+    private static final class Graph {
+        final GeofenceIndex.MissionFences fences;
+        final double lat0;
+        final double lon0;
+        final double lonScale;
+
+        // Buffered zone polygons as {xs, ys}
+        final List<double[][]> exclusions = new ArrayList<>();
+        final List<double[][]> inclusions = new ArrayList<>();
+        // Every buffered zone edge, flattened: ax, ay, bx, by
+        final double[] edges;
+
+        final double[] nodeX;
+        final double[] nodeY;
+        final int[][] neighbours;
+
+        Graph(GeofenceIndex.MissionFences fences, double buffer) {
+            this.fences = fences;
+            double latSum = 0, lonSum = 0;
+            int vertices = 0;
+            for (GeofenceIndex.CompiledZone zone : fences.getZones()) {
+                for (int i = 0; i < zone.latitudes().length; i++) {
+                    latSum += zone.latitudes()[i];
+                    lonSum += zone.longitudes()[i];
+                    vertices++;
+                }
+            }
+            this.lat0 = vertices > 0 ? latSum / vertices : 0;
+            this.lon0 = vertices > 0 ? lonSum / vertices : 0;
+            this.lonScale = METRES_PER_DEG_LON * Math.cos(Math.toRadians(lat0));
+
+            List<Double> xs = new ArrayList<>();
+            List<Double> ys = new ArrayList<>();
+            List<Double> edgeList = new ArrayList<>();
+            for (GeofenceIndex.CompiledZone zone : fences.getZones()) {
+                int n = zone.latitudes().length;
+                if (n < 3 || (!zone.isExclusion() && !zone.isInclusion())) {
+                    continue;
+                }
+                double[] px = new double[n];
+                double[] py = new double[n];
+                for (int i = 0; i < n; i++) {
+                    px[i] = toX(zone.longitudes()[i]);
+                    py[i] = toY(zone.latitudes()[i]);
+                }
+                double outward = zone.isExclusion() ? 1 : -1;
+                double[][] buffered = offset(px, py, outward * buffer);
+                for (int i = 0; i < n; i++) {
+                    int j = (i + n - 1) % n;
+                    edgeList.addAll(List.of(buffered[0][j], buffered[1][j], buffered[0][i], buffered[1][i]));
+                }
+                (zone.isExclusion() ? exclusions : inclusions).add(buffered);
+                double[][] nodes = offset(px, py, outward * (buffer + NODE_MARGIN));
+                for (int i = 0; i < n; i++) {
+                    xs.add(nodes[0][i]);
+                    ys.add(nodes[1][i]);
+                }
+            }
+            this.edges = edgeList.stream().mapToDouble(Double::doubleValue).toArray();
+
+            // Drop nodes that an overlapping zone makes illegal
+            List<Integer> keep = new ArrayList<>();
+            for (int i = 0; i < xs.size(); i++) {
+                if (allowed(xs.get(i), ys.get(i))) {
+                    keep.add(i);
+                }
+            }
+            this.nodeX = new double[keep.size()];
+            this.nodeY = new double[keep.size()];
+            for (int k = 0; k < keep.size(); k++) {
+                nodeX[k] = xs.get(keep.get(k));
+                nodeY[k] = ys.get(keep.get(k));
+            }
+
+            List<List<Integer>> links = new ArrayList<>();
+            for (int i = 0; i < nodeX.length; i++) {
+                links.add(new ArrayList<>());
+            }
+            for (int i = 0; i < nodeX.length; i++) {
+                for (int j = i + 1; j < nodeX.length; j++) {
+                    if (legal(nodeX[i], nodeY[i], nodeX[j], nodeY[j])) {
+                        links.get(i).add(j);
+                        links.get(j).add(i);
+                    }
+                }
+            }
+            this.neighbours = new int[nodeX.length][];
+            for (int i = 0; i < nodeX.length; i++) {
+                neighbours[i] = links.get(i).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        double toX(double lon) {
+            return (lon - lon0) * lonScale;
+        }
+
+        double toY(double lat) {
+            return (lat - lat0) * METRES_PER_DEG_LAT;
+        }
+
+        /**
+         * A* from start to goal over the graph plus the two endpoints; the
+         * legs after the start as [lat, lon], or null if there is no route
+         */
+        List<double[]> shortestPath(double sx, double sy, double gx, double gy) {
+            if (!allowed(sx, sy) || !allowed(gx, gy)) {
+                return null;
+            }
+            if (legal(sx, sy, gx, gy)) {
+                return List.of(toLatLon(gx, gy));
+            }
+
+            // Nodes 0..n-1 are the graph's, n is the start and n + 1 the goal
+            int n = nodeX.length;
+            boolean[] fromStart = new boolean[n];
+            boolean[] toGoal = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                fromStart[i] = legal(sx, sy, nodeX[i], nodeY[i]);
+                toGoal[i] = legal(nodeX[i], nodeY[i], gx, gy);
+            }
+
+            double[] cost = new double[n + 2];
+            int[] previous = new int[n + 2];
+            boolean[] done = new boolean[n + 2];
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+            Arrays.fill(previous, -1);
+            cost[n] = 0;
+            int goal = n + 1;
+            while (true) {
+                int current = -1;
+                double best = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < n + 2; i++) {
+                    if (!done[i] && cost[i] < Double.POSITIVE_INFINITY) {
+                        double f = cost[i] + Math.hypot(gx - x(i, sx, gx), gy - y(i, sy, gy));
+                        if (f < best) {
+                            best = f;
+                            current = i;
+                        }
+                    }
+                }
+                if (current < 0) {
+                    return null;
+                }
+                if (current == goal) {
+                    break;
+                }
+                done[current] = true;
+
+                double cx = x(current, sx, gx), cy = y(current, sy, gy);
+                if (current == n) {
+                    for (int i = 0; i < n; i++) {
+                        if (fromStart[i]) {
+                            relax(current, i, cost[current] + Math.hypot(nodeX[i] - cx, nodeY[i] - cy), cost, previous);
+                        }
+                    }
+                    continue;
+                }
+                for (int next : neighbours[current]) {
+                    relax(current, next, cost[current] + Math.hypot(nodeX[next] - cx, nodeY[next] - cy), cost,
+                            previous);
+                }
+                if (toGoal[current]) {
+                    relax(current, goal, cost[current] + Math.hypot(gx - cx, gy - cy), cost, previous);
+                }
+            }
+
+            List<double[]> path = new ArrayList<>();
+            for (int i = goal; i != n; i = previous[i]) {
+                path.add(toLatLon(x(i, sx, gx), y(i, sy, gy)));
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        private static void relax(int from, int to, double cost, double[] costs, int[] previous) {
+            if (cost < costs[to]) {
+                costs[to] = cost;
+                previous[to] = from;
+            }
+        }
+
+        private double x(int node, double sx, double gx) {
+            return node < nodeX.length ? nodeX[node] : node == nodeX.length ? sx : gx;
+        }
+
+        private double y(int node, double sy, double gy) {
+            return node < nodeY.length ? nodeY[node] : node == nodeY.length ? sy : gy;
+        }
+
+        private double[] toLatLon(double x, double y) {
+            return new double[] { lat0 + y / METRES_PER_DEG_LAT, lon0 + x / lonScale };
+        }
+
+        /**
+         * Outside every exclusion zone and inside every inclusion zone
+         */
+        boolean allowed(double x, double y) {
+            for (double[][] zone : exclusions) {
+                if (inside(zone, x, y)) {
+                    return false;
+                }
+            }
+            for (double[][] zone : inclusions) {
+                if (!inside(zone, x, y)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * A leg meeting no buffered zone edge lies wholly inside or outside
+         * each buffered zone, so checking its midpoint decides the rest
+         */
+        boolean legal(double ax, double ay, double bx, double by) {
+            for (int e = 0; e < edges.length; e += 4) {
+                if (crosses(ax, ay, bx, by, edges[e], edges[e + 1], edges[e + 2], edges[e + 3])) {
+                    return false;
+                }
+            }
+            return allowed((ax + bx) / 2, (ay + by) / 2);
+        }
+
+        /**
+         * True if segments ab and cd share any point, touching at a vertex or
+         * running along each other included
+         */
+        private static boolean crosses(double ax, double ay, double bx, double by,
+                double cx, double cy, double dx, double dy) {
+            double d1 = cross(cx, cy, dx, dy, ax, ay);
+            double d2 = cross(cx, cy, dx, dy, bx, by);
+            double d3 = cross(ax, ay, bx, by, cx, cy);
+            double d4 = cross(ax, ay, bx, by, dx, dy);
+            if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+                return true;
+            }
+            // An endpoint on the other segment
+            return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay)) || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+                    || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+                    || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+        }
+
+        /**
+         * Whether p, collinear with ab, lies between a and b
+         */
+        private static boolean onSegment(double ax, double ay, double bx, double by, double px, double py) {
+            return px >= Math.min(ax, bx) && px <= Math.max(ax, bx) && py >= Math.min(ay, by)
+                    && py <= Math.max(ay, by);
+        }
+
+        private static double cross(double ox, double oy, double ax, double ay, double bx, double by) {
+            return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+        }
+
+        private static boolean inside(double[][] zone, double x, double y) {
+            double[] xs = zone[0], ys = zone[1];
+            boolean inside = false;
+            for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+                if ((ys[i] > y) != (ys[j] > y) && x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        /**
+         * Polygon with each vertex moved along its corner bisector so both
+         * adjacent edges shift by distance (outward when positive); the
+         * shift at sharp corners is capped at four times the distance
+         */
+        private static double[][] offset(double[] xs, double[] ys, double distance) {
+            int n = xs.length;
+            double area = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                area += xs[j] * ys[i] - xs[i] * ys[j];
+            }
+            // Outward normals point right of each edge for counter-clockwise rings
+            double side = area > 0 ? 1 : -1;
+            double[] ox = new double[n];
+            double[] oy = new double[n];
+            for (int i = 0; i < n; i++) {
+                int p = (i + n - 1) % n, q = (i + 1) % n;
+                double[] n1 = normal(xs[p], ys[p], xs[i], ys[i], side);
+                double[] n2 = normal(xs[i], ys[i], xs[q], ys[q], side);
+                double mx = n1[0] + n2[0], my = n1[1] + n2[1];
+                double dot = n1[0] * n2[0] + n1[1] * n2[1];
+                // Miter: moving along n1 + n2 by distance / (1 + dot) shifts both edges by distance
+                double length = Math.hypot(mx, my);
+                double factor = 1 + dot > 1e-9 ? 1 / (1 + dot) : Double.POSITIVE_INFINITY;
+                if (length * factor > 4) {
+                    factor = length > 0 ? 4 / length : 0;
+                }
+                ox[i] = xs[i] + mx * factor * distance;
+                oy[i] = ys[i] + my * factor * distance;
+            }
+            return new double[][] { ox, oy };
+        }
+
+        private static double[] normal(double ax, double ay, double bx, double by, double side) {
+            double length = Math.hypot(bx - ax, by - ay);
+            if (length == 0) {
+                return new double[] { 0, 0 };
+            }
+            return new double[] { side * (by - ay) / length, -side * (bx - ax) / length };
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.config.SchedulingConfig;
+import com.nidar.gcs.model.Telemetry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+import org.springframework.lang.NonNull;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams recorded mission telemetry over STOMP, paced by the original
+ * timestamps. Each session reads ahead from the database in small chunks,
+ * so neither side ever holds a whole flight in memory. Chunks are read on
+ * the fetch pool and only appended under the session lock, so a slow page
+ * never stalls the tick or a pause/seek on the same session; a session
+ * whose buffer runs dry holds its clock until the page arrives.
+ *
+ * Frames go to /topic/replay/{sessionId}, state changes to
+ * /topic/replay/{sessionId}/status. A session, playing or not, is closed
+ * once it has had no subscriber on either topic and no API call for
+ * idle-timeout ms.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayStreamService {
+
+    public static final int MIN_SPEED = 1;
+    public static final int MAX_SPEED = 64;
+
+    private final MissionReplayService missionReplayService;
+    private final BroadcastService broadcastService;
+
+    @Value("${replay.stream.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${replay.stream.max-sessions:20}")
+    private int maxSessions;
+
+    @Value("${replay.stream.idle-timeout:600000}")
+    private long idleTimeoutMs;
+
+    @Value("${replay.stream.fetch-threads:2}")
+    private int fetchThreads;
+
+    private ExecutorService fetchExecutor;
+
+    private final Map<String, ReplaySession> sessions = new ConcurrentHashMap<>();
+
+    // Replay session watched by each STOMP subscription, keyed by "stompSessionId:subscriptionId"
+    private final Map<String, String> watchers = new ConcurrentHashMap<>();
+
+    public enum ReplayState {
+        PAUSED,
+        PLAYING,
+        ENDED
+    }
+
+    /**
+     * Compact telemetry frame for replay and track views - avoids serialising
+     * the Telemetry entity graph
+     */
+    @Data
+    public static class ReplayFrame {
+        private Long id;
+        private LocalDateTime timestamp;
+        private Double latitude;
+        private Double longitude;
+        private Double altitude;
+        private Double speed;
+        private Double battery;
+        private Integer heading;
+        private String flightMode;
+        private Boolean armed;
+
+        public static ReplayFrame of(Telemetry t) {
+            ReplayFrame frame = new ReplayFrame();
+            frame.setId(t.getId());
+            frame.setTimestamp(t.getTimestamp());
+            frame.setLatitude(t.getLatitude());
+            frame.setLongitude(t.getLongitude());
+            frame.setAltitude(t.getAltitude());
+            frame.setSpeed(t.getSpeed());
+            frame.setBattery(t.getBattery());
+            frame.setHeading(t.getHeading());
+            frame.setFlightMode(t.getFlightMode());
+            frame.setArmed(t.getArmed());
+            return frame;
+        }
+    }
+
+    @Data
+    public static class ReplayStatus {
+        private String sessionId;
+        private Long missionId;
+        private String topic;
+        private ReplayState state;
+        private int speed;
+        private LocalDateTime position;
+    }
+
+    private static class ReplaySession {
+        final String id;
+        final Long missionId;
+        final ArrayDeque<Telemetry> buffer = new ArrayDeque<>();
+
+        ReplayState state = ReplayState.PAUSED;
+        int speed = 1;
+        long positionMillis = Long.MIN_VALUE; // virtual clock, in recorded time
+        long lastTickMillis;
+        long lastActivityMillis; // last API call, or last tick with a subscriber attached
+        int subscribers;
+
+        // Read-ahead cursor
+        LocalDateTime from;
+        LocalDateTime afterTimestamp;
+        Long afterId;
+        boolean hasMore = true;
+
+        // Page read in flight; a seek bumps fetchSeq so a stale page is dropped
+        boolean fetching;
+        long fetchSeq;
+
+        ReplaySession(String id, Long missionId) {
+            this.id = id;
+            this.missionId = missionId;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger count = new AtomicInteger();
+        fetchExecutor = Executors.newFixedThreadPool(Math.max(1, fetchThreads), runnable -> {
+            Thread thread = new Thread(runnable, "replay-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    public ReplayStatus createSession(@NonNull Long missionId, int speed) {
+        if (sessions.size() >= maxSessions) {
+            throw new IllegalStateException("Too many active replay sessions");
+        }
+
+        ReplaySession session = new ReplaySession(UUID.randomUUID().toString(), missionId);
+        session.speed = clampSpeed(speed);
+        session.lastActivityMillis = System.currentTimeMillis();
+        // Not yet visible to the tick, so the first page is read inline
+        synchronized (session) {
+            append(session, readPage(session));
+            if (!session.buffer.isEmpty()) {
+                session.positionMillis = toMillis(session.buffer.peek().getTimestamp());
+            }
+        }
+        sessions.put(session.id, session);
+
+        log.info("Created replay session {} for mission {} at {}x", session.id, missionId, session.speed);
+        return status(session);
+    }
+
+    public ReplayStatus play(String sessionId) {
+        ReplaySession session = require(sessionId);
+        synchronized (session) {
+            if (session.state != ReplayState.ENDED) {
+                session.state = ReplayState.PLAYING;
+                session.lastTickMillis = System.currentTimeMillis();
+            }
+            return publishStatus(session);
+        }
+    }
+
+    public ReplayStatus pause(String sessionId) {
+        ReplaySession session = require(sessionId);
+        synchronized (session) {
+            if (session.state == ReplayState.PLAYING) {
+                session.state = ReplayState.PAUSED;
+            }
+            return publishStatus(session);
+        }
+    }
+
+    public ReplayStatus setSpeed(String sessionId, int speed) {
+        ReplaySession session = require(sessionId);
+        synchronized (session) {
+            session.speed = clampSpeed(speed);
+            return publishStatus(session);
+        }
+    }
+
+    /**
+     * Jump to a recorded time. The read-ahead buffer is discarded and refilled
+     * from the new position in the background; the play/pause state is kept.
+     */
+    public ReplayStatus seek(String sessionId, @NonNull LocalDateTime time) {
+        ReplaySession session = require(sessionId);
+        synchronized (session) {
+            session.buffer.clear();
+            session.from = time;
+            session.afterTimestamp = null;
+            session.afterId = null;
+            session.hasMore = true;
+            session.fetching = false;
+            session.fetchSeq++;
+            session.positionMillis = toMillis(time);
+            session.lastTickMillis = System.currentTimeMillis();
+            if (session.state == ReplayState.ENDED) {
+                session.state = ReplayState.PAUSED;
+            }
+            prefetch(session);
+            return publishStatus(session);
+        }
+    }
+
+    public void closeSession(String sessionId) {
+        if (sessions.remove(sessionId) != null) {
+            log.info("Closed replay session {}", sessionId);
+        }
+    }
+
+    public ReplayStatus getStatus(String sessionId) {
+        ReplaySession session = require(sessionId);
+        synchronized (session) {
+            return status(session);
+        }
+    }
+
+    // ============ Subscribers ============
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String replayId = replayId(accessor.getDestination());
+        if (replayId == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        if (watchers.put(accessor.getSessionId() + ":" + accessor.getSubscriptionId(), replayId) == null) {
+            watch(replayId, 1);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String replayId = watchers.remove(accessor.getSessionId() + ":" + accessor.getSubscriptionId());
+        if (replayId != null) {
+            watch(replayId, -1);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String prefix = event.getSessionId() + ":";
+        watchers.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(prefix)) {
+                watch(entry.getValue(), -1);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void watch(String replayId, int delta) {
+        ReplaySession session = sessions.get(replayId);
+        if (session != null) {
+            synchronized (session) {
+                session.subscribers = Math.max(0, session.subscribers + delta);
+                session.lastActivityMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Session id of /topic/replay/{sessionId} or /topic/replay/{sessionId}/status
+     */
+    private static String replayId(String destination) {
+        String prefix = "/topic/replay/";
+        if (destination == null || !destination.startsWith(prefix)) {
+            return null;
+        }
+        String rest = destination.substring(prefix.length());
+        int slash = rest.indexOf('/');
+        return slash < 0 ? rest : rest.substring(0, slash);
+    }
+
+    /**
+     * Advance every playing session's virtual clock and emit the points that
+     * are now due, and close idle sessions. Runs on the tick scheduler, so no
+     * thread per session.
+     */
+    @Scheduled(fixedRate = 50, scheduler = SchedulingConfig.TICK_SCHEDULER)
+    public void tick() {
+        long now = System.currentTimeMillis();
+        for (ReplaySession session : sessions.values()) {
+            synchronized (session) {
+                if (session.subscribers > 0) {
+                    session.lastActivityMillis = now;
+                } else if (now - session.lastActivityMillis > idleTimeoutMs) {
+                    log.info("Replay session {} idle with no subscribers, closing", session.id);
+                    sessions.remove(session.id);
+                    continue;
+                }
+                if (session.state == ReplayState.PLAYING) {
+                    advance(session, now);
+                }
+            }
+        }
+    }
+
+    private void advance(ReplaySession session, long now) {
+        if (session.buffer.isEmpty() && (session.hasMore || session.fetching)) {
+            // Starved: hold the clock rather than burst frames when the page lands
+            session.lastTickMillis = now;
+            prefetch(session);
+            return;
+        }
+
+        session.positionMillis += (now - session.lastTickMillis) * session.speed;
+        session.lastTickMillis = now;
+
+        while (true) {
+            if (session.buffer.isEmpty()) {
+                if (session.hasMore || session.fetching) {
+                    break;
+                }
+                session.state = ReplayState.ENDED;
+                publishStatus(session);
+                return;
+            }
+
+            Telemetry next = session.buffer.peek();
+            if (toMillis(next.getTimestamp()) > session.positionMillis) {
+                break;
+            }
+            session.buffer.poll();
+            broadcastService.publish(ReplayFrame.of(next), "/topic/replay/" + session.id);
+        }
+
+        // Read ahead before the buffer runs dry
+        if (session.buffer.size() < chunkSize / 2) {
+            prefetch(session);
+        }
+    }
+
+    /**
+     * Start reading the next chunk on the fetch pool, unless one is already
+     * in flight or the recording is exhausted. Called with the session lock
+     * held; the page is appended under the lock once it arrives.
+     */
+    private void prefetch(ReplaySession session) {
+        if (!session.hasMore || session.fetching) {
+            return;
+        }
+        session.fetching = true;
+        long seq = session.fetchSeq;
+        LocalDateTime from = session.from;
+        MissionReplayService.Cursor cursor = MissionReplayService.Cursor.of(session.afterTimestamp, session.afterId);
+
+        CompletableFuture.supplyAsync(() -> missionReplayService.getTelemetryPage(
+                        session.missionId, from, null, cursor, chunkSize), fetchExecutor)
+                .whenComplete((page, error) -> {
+                    synchronized (session) {
+                        if (seq != session.fetchSeq) {
+                            return; // seeked away while reading
+                        }
+                        session.fetching = false;
+                        if (error != null) {
+                            // End after what is buffered; a seek starts reading again
+                            log.warn("Replay session {} could not read telemetry: {}", session.id, error.getMessage());
+                            session.hasMore = false;
+                            return;
+                        }
+                        append(session, page);
+                    }
+                });
+    }
+
+    private MissionReplayService.TelemetryPage readPage(ReplaySession session) {
+        return missionReplayService.getTelemetryPage(
+                session.missionId, session.from, null,
+                MissionReplayService.Cursor.of(session.afterTimestamp, session.afterId), chunkSize);
+    }
+
+    /**
+     * Append a chunk to the session buffer and move the read-ahead cursor past it
+     */
+    private static void append(ReplaySession session, MissionReplayService.TelemetryPage page) {
+        session.buffer.addAll(page.getTelemetry());
+        session.hasMore = page.isHasMore();
+        if (page.getNextTimestamp() != null) {
+            session.afterTimestamp = page.getNextTimestamp();
+            session.afterId = page.getNextId();
+        }
+    }
+
+    private ReplaySession require(String sessionId) {
+        ReplaySession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null) {
+            throw new IllegalArgumentException("Replay session not found: " + sessionId);
+        }
+        session.lastActivityMillis = System.currentTimeMillis();
+        return session;
+    }
+
+    private ReplayStatus publishStatus(ReplaySession session) {
+        ReplayStatus status = status(session);
+        broadcastService.publish(status, "/topic/replay/" + session.id + "/status");
+        return status;
+    }
+
+    private ReplayStatus status(ReplaySession session) {
+        ReplayStatus status = new ReplayStatus();
+        status.setSessionId(session.id);
+        status.setMissionId(session.missionId);
+        status.setTopic("/topic/replay/" + session.id);
+        status.setState(session.state);
+        status.setSpeed(session.speed);
+        if (session.positionMillis != Long.MIN_VALUE) {
+            status.setPosition(LocalDateTime.ofInstant(Instant.ofEpochMilli(session.positionMillis), ZoneOffset.UTC));
+        }
+        return status;
+    }
+
+    private static int clampSpeed(int speed) {
+        return Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    // Recorded timestamps are zone-less; UTC is only used as a fixed scale
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
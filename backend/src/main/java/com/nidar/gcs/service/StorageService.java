@@ -42,4 +42,21 @@ public class StorageService {
     public Path load(String filename) {
         return rootLocation.resolve(filename);
     }
+
+    /**
+     * Remove a stored file; returns false if it is outside the storage
+     * directory or could not be removed
+     */
+    public boolean delete(String filename) {
+        Path root = rootLocation.toAbsolutePath().normalize();
+        Path file = root.resolve(filename).normalize();
+        if (!root.equals(file.getParent())) {
+            return false;
+        }
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
 }
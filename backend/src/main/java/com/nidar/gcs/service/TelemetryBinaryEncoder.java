@@ -0,0 +1,125 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.Vehicle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.ZoneId;
+
+/**
+ * Fixed-layout little-endian records for subscribers that negotiated binary
+ * telemetry (see TelemetryFormatNegotiation). Each record is a full state, so
+ * it needs no keyframes. Records are written into a caller's buffer without
+ * allocating: no boxing, and strings are copied as ASCII char by char.
+ *
+ * Vehicle, 60 bytes (/topic/telemetry/{id}):
+ *   0  u8   record type = 1
+ *   1  u8   status (0 UNKNOWN, 1 DISARMED, 2 ARMED, 3 FLYING)
+ *   2  u8   id length
+ *   3  16B  id, ASCII, zero padded
+ *   19 u8   reserved
+ *   20 i64  last heartbeat, epoch ms
+ *   28 f64  lat
+ *   36 f64  lon
+ *   44 f32  alt m
+ *   48 f32  heading deg
+ *   52 f32  battery %
+ *   56 u32  stream version
+ *
+ * Drone, 60 bytes (/topic/telemetry):
+ *   0  u8   record type = 2
+ *   1  u8   flags (bit 0 armed, bit 1 armed known)
+ *   2  u8   satellites, 255 if unknown
+ *   3  u8   flight mode length
+ *   4  12B  flight mode, ASCII, zero padded
+ *   16 i64  timestamp, epoch ms (0 if unknown)
+ *   24 f64  latitude
+ *   32 f64  longitude
+ *   40 f32  altitude m
+ *   44 f32  speed m/s
+ *   48 f32  battery %
+ *   52 i16  heading deg, -1 if unknown
+ *   54 u16  reserved
+ *   56 u32  stream version
+ *
+ * Unknown floating point values are NaN.
+ */
+public final class TelemetryBinaryEncoder {
+
+    public static final int RECORD_VEHICLE = 1;
+    public static final int RECORD_DRONE = 2;
+    public static final int RECORD_BYTES = 60;
+
+    private static final int ID_BYTES = 16;
+    private static final int MODE_BYTES = 12;
+
+    // Same codes as the agent channel's status byte
+    private static final String[] STATUS_CODES = { "UNKNOWN", "DISARMED", "ARMED", "FLYING" };
+
+    private TelemetryBinaryEncoder() {
+    }
+
+    public static void writeVehicle(Vehicle v, long version, ByteBuffer out) {
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.put((byte) RECORD_VEHICLE);
+        out.put((byte) statusCode(v.getStatus()));
+        writeAscii(v.getId(), ID_BYTES, out);
+        out.put((byte) 0);
+        out.putLong(v.getLastHeartbeat());
+        out.putDouble(v.getLat());
+        out.putDouble(v.getLon());
+        out.putFloat((float) v.getAlt());
+        out.putFloat((float) v.getHeading());
+        out.putFloat((float) v.getBattery());
+        out.putInt((int) version);
+    }
+
+    public static void writeDrone(Telemetry t, long version, ByteBuffer out) {
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.put((byte) RECORD_DRONE);
+        int flags = t.getArmed() == null ? 0 : (t.getArmed() ? 3 : 2);
+        out.put((byte) flags);
+        out.put((byte) (t.getSatellites() != null ? Math.min(254, Math.max(0, t.getSatellites())) : 255));
+        writeAscii(t.getFlightMode(), MODE_BYTES, out);
+        out.putLong(t.getTimestamp() != null
+                ? t.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : 0L);
+        out.putDouble(t.getLatitude() != null ? t.getLatitude() : Double.NaN);
+        out.putDouble(t.getLongitude() != null ? t.getLongitude() : Double.NaN);
+        out.putFloat(t.getAltitude() != null ? t.getAltitude().floatValue() : Float.NaN);
+        out.putFloat(t.getSpeed() != null ? t.getSpeed().floatValue() : Float.NaN);
+        out.putFloat(t.getBattery() != null ? t.getBattery().floatValue() : Float.NaN);
+        out.putShort((short) (t.getHeading() != null ? t.getHeading() : -1));
+        out.putShort((short) 0);
+        out.putInt((int) version);
+    }
+
+    /**
+     * Length byte followed by a zero-padded field; longer strings and
+     * non-ASCII characters are truncated / replaced with '?'
+     */
+    private static void writeAscii(String value, int width, ByteBuffer out) {
+        int length = value != null ? Math.min(value.length(), width) : 0;
+        out.put((byte) length);
+        for (int i = 0; i < width; i++) {
+            if (i < length) {
+                char c = value.charAt(i);
+                out.put((byte) (c < 128 ? c : '?'));
+            } else {
+                out.put((byte) 0);
+            }
+        }
+    }
+
+    private static int statusCode(String status) {
+        if (status != null) {
+            for (int i = 1; i < STATUS_CODES.length; i++) {
+                if (STATUS_CODES[i].equals(status)) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+}
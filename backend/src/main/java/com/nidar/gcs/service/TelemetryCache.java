@@ -0,0 +1,112 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.TelemetryPoint;
+import com.nidar.gcs.repository.TelemetryRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest drone telemetry and recent history, kept in memory by the ingest paths so that
+ * dashboard reads never go to the database. Filled from the database once at
+ * startup; after that only writes update it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryCache {
+
+    private final TelemetryRepository telemetryRepository;
+
+    @Value("${telemetry.cache.history-size:100}")
+    private int historySize;
+
+    private Ring<Telemetry> recentTelemetry;
+    private final Map<String, Ring<TelemetryPoint>> vehicleHistory = new ConcurrentHashMap<>();
+
+    /**
+     * Fixed-size ring of the newest samples
+     */
+    private static class Ring<T> {
+        private final Object[] items;
+        private int next;
+        private int size;
+
+        Ring(int capacity) {
+            this.items = new Object[Math.max(1, capacity)];
+        }
+
+        synchronized void add(T item) {
+            items[next] = item;
+            next = (next + 1) % items.length;
+            size = Math.min(size + 1, items.length);
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized T newest() {
+            return size == 0 ? null : (T) items[(next - 1 + items.length) % items.length];
+        }
+
+        /**
+         * Newest first
+         */
+        @SuppressWarnings("unchecked")
+        synchronized List<T> snapshot() {
+            List<T> result = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                result.add((T) items[(next - i + items.length) % items.length]);
+            }
+            return result;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        recentTelemetry = new Ring<>(historySize);
+        List<Telemetry> persisted = new ArrayList<>(telemetryRepository.findTop100ByOrderByTimestampDesc());
+        Collections.reverse(persisted);
+        persisted.stream().skip(Math.max(0, persisted.size() - historySize)).forEach(recentTelemetry::add);
+        log.info("Telemetry cache warmed with {} samples", recentTelemetry.size);
+    }
+
+    // ============ Drone telemetry ============
+
+    public void recordTelemetry(@NonNull Telemetry telemetry) {
+        recentTelemetry.add(telemetry);
+    }
+
+    public Telemetry getLatestTelemetry() {
+        return recentTelemetry.newest();
+    }
+
+    /**
+     * Newest first, at most telemetry.cache.history-size samples
+     */
+    public List<Telemetry> getRecentTelemetry() {
+        return recentTelemetry.snapshot();
+    }
+
+    // ============ Vehicle history ============
+
+    public void recordVehicleTelemetry(@NonNull TelemetryPoint point) {
+        vehicleHistory.computeIfAbsent(point.getVehicleId(), id -> new Ring<>(historySize)).add(point);
+    }
+
+    /**
+     * Newest first
+     */
+    public List<TelemetryPoint> getRecentVehicleTelemetry(String vehicleId) {
+        Ring<TelemetryPoint> ring = vehicleId != null ? vehicleHistory.get(vehicleId) : null;
+        return ring != null ? ring.snapshot() : List.of();
+    }
+}
@@ -0,0 +1,178 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.Vehicle;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact wire format for live telemetry topics. Each stream (one per
+ * destination) sends a full keyframe every keyframe-interval ms and, in
+ * between, deltas holding only the fields that moved beyond epsilon since
+ * that keyframe:
+ *
+ *   {"v": 42, "base": 40, "key": false, "f": {"lat": 20.1, "lon": 78.2}}
+ *
+ * v counts messages per stream; base is the v of the keyframe the delta
+ * applies to (a keyframe has base == v). Deltas are cumulative since the
+ * keyframe, so a client that misses some of them (e.g. to conflation) still
+ * ends up with the right state; only a missed keyframe shows up, as a base
+ * it does not have, and the client then asks for a new one.
+ */
+@Service
+public class TelemetryDeltaEncoder {
+
+    // Degree fields get the position epsilon; other numbers the value epsilon
+    private static final Set<String> POSITION_FIELDS = Set.of("lat", "lon", "latitude", "longitude");
+
+    @Value("${telemetry.delta.keyframe-interval:5000}")
+    private long keyframeIntervalMs;
+
+    @Value("${telemetry.delta.min-requested-keyframe-interval:1000}")
+    private long minRequestedKeyframeIntervalMs;
+
+    @Value("${telemetry.delta.position-epsilon:0.0000001}")
+    private double positionEpsilon;
+
+    @Value("${telemetry.delta.value-epsilon:0.01}")
+    private double valueEpsilon;
+
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+
+    private static class Stream {
+        long version;
+        long keyVersion;
+        long keyframeAt;
+        long requestedKeyframeAt;
+        Map<String, Object> keyframe = Map.of();
+        Map<String, Object> latest = Map.of();
+    }
+
+    /**
+     * Encode the next update of a stream as a keyframe or a delta
+     */
+    public Map<String, Object> encode(String stream, Map<String, Object> fields) {
+        Stream s = streams.computeIfAbsent(stream, key -> new Stream());
+        synchronized (s) {
+            s.latest = fields;
+            long now = System.currentTimeMillis();
+            if (s.version == 0 || now - s.keyframeAt >= keyframeIntervalMs) {
+                return keyframe(s, now);
+            }
+
+            Map<String, Object> changed = new LinkedHashMap<>();
+            fields.forEach((name, value) -> {
+                if (differs(name, s.keyframe.get(name), value)) {
+                    changed.put(name, value);
+                }
+            });
+            s.keyframe.keySet().stream()
+                    .filter(name -> !fields.containsKey(name))
+                    .forEach(name -> changed.put(name, null));
+            s.version++;
+            return message(s.version, s.keyVersion, false, changed);
+        }
+    }
+
+    /**
+     * Keyframe of the stream's latest state for clients that lost track,
+     * or null if there is nothing to send or one was sent very recently
+     */
+    public Map<String, Object> requestKeyframe(String stream) {
+        Stream s = stream != null ? streams.get(stream) : null;
+        if (s == null) {
+            return null;
+        }
+        synchronized (s) {
+            long now = System.currentTimeMillis();
+            if (now - Math.max(s.keyframeAt, s.requestedKeyframeAt) < minRequestedKeyframeIntervalMs) {
+                return null;
+            }
+            s.requestedKeyframeAt = now;
+            return keyframe(s, now);
+        }
+    }
+
+    private Map<String, Object> keyframe(Stream s, long now) {
+        s.version++;
+        s.keyVersion = s.version;
+        s.keyframeAt = now;
+        s.keyframe = s.latest;
+        return message(s.version, s.keyVersion, true, s.latest);
+    }
+
+    private static Map<String, Object> message(long version, long base, boolean key, Map<String, Object> fields) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("v", version);
+        message.put("base", base);
+        message.put("key", key);
+        message.put("f", fields);
+        return message;
+    }
+
+    private boolean differs(String name, Object known, Object value) {
+        if (known instanceof Number a && value instanceof Number b) {
+            double epsilon = POSITION_FIELDS.contains(name) ? positionEpsilon : valueEpsilon;
+            return Math.abs(a.doubleValue() - b.doubleValue()) > epsilon;
+        }
+        return !Objects.equals(known, value);
+    }
+
+    // ============ Field sets ============
+
+    /**
+     * Null fields are left out of keyframes; a delta sends a field that
+     * became null as an explicit null
+     */
+    public static Map<String, Object> fields(Vehicle v) {
+        Map<String, Object> f = new HashMap<>();
+        f.put("id", v.getId());
+        put(f, "type", v.getType());
+        f.put("lat", v.getLat());
+        f.put("lon", v.getLon());
+        f.put("alt", v.getAlt());
+        f.put("heading", v.getHeading());
+        f.put("battery", v.getBattery());
+        put(f, "status", v.getStatus());
+        f.put("lastHeartbeat", v.getLastHeartbeat());
+        return f;
+    }
+
+    /**
+     * Relations are reduced to their ids and the timestamp to epoch millis
+     */
+    public static Map<String, Object> fields(Telemetry t) {
+        Map<String, Object> f = new HashMap<>();
+        put(f, "latitude", t.getLatitude());
+        put(f, "longitude", t.getLongitude());
+        put(f, "altitude", t.getAltitude());
+        put(f, "speed", t.getSpeed());
+        put(f, "battery", t.getBattery());
+        put(f, "heading", t.getHeading());
+        put(f, "satellites", t.getSatellites());
+        put(f, "flightMode", t.getFlightMode());
+        put(f, "armed", t.getArmed());
+        if (t.getTimestamp() != null) {
+            f.put("timestamp", t.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        put(f, "droneId", t.getDrone() != null ? t.getDrone().getId() : null);
+        put(f, "missionId", t.getMissionId());
+        put(f, "currentWaypoint", t.getCurrentWaypoint());
+        put(f, "totalWaypoints", t.getTotalWaypoints());
+        return f;
+    }
+
+    private static void put(Map<String, Object> f, String name, Object value) {
+        if (value != null) {
+            f.put(name, value);
+        }
+    }
+}
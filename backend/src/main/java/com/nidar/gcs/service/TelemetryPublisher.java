@@ -0,0 +1,78 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.Vehicle;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.util.Map;
+
+/**
+ * Publishes live telemetry to the WebSocket topics in the delta format of
+ * TelemetryDeltaEncoder:
+ *   /topic/telemetry         - the MAVProxy drone
+ *   /topic/telemetry/{id}    - vehicles reporting over HTTP or the agent channel
+ *   /topic/fleet             - vehicles in each subscriber's viewport (FleetViewService)
+ * and hands every position to the GeofenceMonitor.
+ * Each update also carries its TelemetryBinaryEncoder record for sessions
+ * that negotiated binary frames. Requested keyframes are JSON only.
+ *
+ * In clustered mode each vehicle state is also shared with the other nodes
+ * on ClusterService.VEHICLES_TOPIC.
+ */
+@Service
+@RequiredArgsConstructor
+public class TelemetryPublisher {
+
+    public static final String DRONE_TOPIC = "/topic/telemetry";
+    public static final String VEHICLE_TOPIC_PREFIX = "/topic/telemetry/";
+
+    private final BroadcastService broadcastService;
+    private final TelemetryDeltaEncoder deltaEncoder;
+    private final FleetViewService fleetViewService;
+    private final GeofenceMonitor geofenceMonitor;
+
+    @Value("${websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    public void publishDrone(@NonNull Telemetry telemetry) {
+        Map<String, Object> update = deltaEncoder.encode(DRONE_TOPIC, TelemetryDeltaEncoder.fields(telemetry));
+        long version = (Long) update.get("v");
+        double[] position = telemetry.getLatitude() != null && telemetry.getLongitude() != null
+                ? new double[] { telemetry.getLatitude(), telemetry.getLongitude() }
+                : null;
+        broadcastService.publish(update, out -> TelemetryBinaryEncoder.writeDrone(telemetry, version, out),
+                position, isKeyframe(update), DRONE_TOPIC);
+        geofenceMonitor.onDrone(telemetry);
+    }
+
+    public void publishVehicle(@NonNull Vehicle vehicle) {
+        String topic = VEHICLE_TOPIC_PREFIX + vehicle.getId();
+        Map<String, Object> update = deltaEncoder.encode(topic, TelemetryDeltaEncoder.fields(vehicle));
+        long version = (Long) update.get("v");
+        broadcastService.publish(update, out -> TelemetryBinaryEncoder.writeVehicle(vehicle, version, out),
+                new double[] { vehicle.getLat(), vehicle.getLon() }, isKeyframe(update), topic);
+        fleetViewService.update(vehicle);
+        geofenceMonitor.onVehicle(vehicle);
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            broadcastService.publish(vehicle, ClusterService.VEHICLES_TOPIC);
+        }
+    }
+
+    /**
+     * Re-broadcast a keyframe for a topic whose subscriber lost track of
+     * the base; requests are rate limited per topic
+     */
+    public void publishKeyframe(String topic) {
+        Map<String, Object> keyframe = deltaEncoder.requestKeyframe(topic);
+        if (keyframe != null) {
+            broadcastService.publish(keyframe, null, null, true, topic);
+        }
+    }
+
+    private static boolean isKeyframe(Map<String, Object> update) {
+        return Boolean.TRUE.equals(update.get("key"));
+    }
+}
@@ -0,0 +1,449 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.TelemetryPoint;
+import com.nidar.gcs.model.TelemetryRollup;
+import com.nidar.gcs.repository.TelemetryPointRepository;
+import com.nidar.gcs.repository.TelemetryRepository;
+import com.nidar.gcs.repository.TelemetryRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Background rollups and retention for the raw telemetry tables.
+ *
+ * Raw samples are aggregated into 1 s, 10 s and 60 s buckets per series, one
+ * closed minute at a time. Samples written behind the watermark re-open their
+ * minute, which is rolled up again on the next run. Raw rows are deleted in
+ * bounded chunks once they are past the retention age and rolled up; mission
+ * telemetry inside a logged flight is left for the flight archive. Series queries read the coarsest level that
+ * still gives the requested number of points over the span, at most
+ * max-results points per call.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryRollupService {
+
+    public static final int RAW = 0;
+    public static final int[] RESOLUTIONS = { 1, 10, 60 }; // seconds, finest first
+
+    private static final String LOCAL_DRONE = "drone:local";
+    private static final int DELETE_CHUNK = 10000;
+
+    private final TelemetryRepository telemetryRepository;
+    private final TelemetryPointRepository telemetryPointRepository;
+    private final TelemetryRollupRepository rollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${telemetry.rollup.enabled:true}")
+    private boolean rollupEnabled;
+
+    @Value("${telemetry.rollup.lag:15000}")
+    private long lagMs;
+
+    @Value("${telemetry.rollup.max-minutes-per-run:360}")
+    private int maxMinutesPerRun;
+
+    @Value("${telemetry.retention.raw-days:30}")
+    private int rawRetentionDays;
+
+    // Per resolution (1 s, 10 s, 60 s); 0 keeps forever
+    @Value("${telemetry.retention.rollup-days:7,90,0}")
+    private int[] rollupRetentionDays;
+
+    @Value("${telemetry.series.max-results:10000}")
+    private int maxResults;
+
+    // Start of the next minute to roll up; null until initialised
+    private volatile LocalDateTime watermark;
+
+    // Minutes behind the watermark that received samples after they were rolled up
+    private final NavigableSet<LocalDateTime> lateMinutes = new ConcurrentSkipListSet<>();
+
+    /**
+     * Running aggregate for one series and bucket
+     */
+    private static class Bucket {
+        final String series;
+        final LocalDateTime start;
+        int samples;
+        double minAltitude = Double.POSITIVE_INFINITY;
+        double maxAltitude = Double.NEGATIVE_INFINITY;
+        double altitudeSum;
+        int altitudeCount;
+        double minSpeed = Double.POSITIVE_INFINITY;
+        double maxSpeed = Double.NEGATIVE_INFINITY;
+        double speedSum;
+        int speedCount;
+        Double lastLatitude;
+        Double lastLongitude;
+        Double lastBattery;
+
+        Bucket(String series, LocalDateTime start) {
+            this.series = series;
+            this.start = start;
+        }
+
+        void add(Double latitude, Double longitude, Double altitude, Double speed, Double battery) {
+            samples++;
+            if (altitude != null) {
+                minAltitude = Math.min(minAltitude, altitude);
+                maxAltitude = Math.max(maxAltitude, altitude);
+                altitudeSum += altitude;
+                altitudeCount++;
+            }
+            if (speed != null) {
+                minSpeed = Math.min(minSpeed, speed);
+                maxSpeed = Math.max(maxSpeed, speed);
+                speedSum += speed;
+                speedCount++;
+            }
+            if (latitude != null && longitude != null) {
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+            }
+            if (battery != null) {
+                lastBattery = battery;
+            }
+        }
+
+        /**
+         * Fold in a finer bucket that follows everything merged so far
+         */
+        void merge(Bucket other) {
+            samples += other.samples;
+            minAltitude = Math.min(minAltitude, other.minAltitude);
+            maxAltitude = Math.max(maxAltitude, other.maxAltitude);
+            altitudeSum += other.altitudeSum;
+            altitudeCount += other.altitudeCount;
+            minSpeed = Math.min(minSpeed, other.minSpeed);
+            maxSpeed = Math.max(maxSpeed, other.maxSpeed);
+            speedSum += other.speedSum;
+            speedCount += other.speedCount;
+            if (other.lastLatitude != null) {
+                lastLatitude = other.lastLatitude;
+                lastLongitude = other.lastLongitude;
+            }
+            if (other.lastBattery != null) {
+                lastBattery = other.lastBattery;
+            }
+        }
+
+        TelemetryRollup toRollup(int resolution) {
+            TelemetryRollup rollup = new TelemetryRollup();
+            rollup.setSeries(series);
+            rollup.setResolution(resolution);
+            rollup.setBucketStart(start);
+            rollup.setSamples(samples);
+            if (altitudeCount > 0) {
+                rollup.setMinAltitude(minAltitude);
+                rollup.setMaxAltitude(maxAltitude);
+                rollup.setAvgAltitude(altitudeSum / altitudeCount);
+            }
+            if (speedCount > 0) {
+                rollup.setMinSpeed(minSpeed);
+                rollup.setMaxSpeed(maxSpeed);
+                rollup.setAvgSpeed(speedSum / speedCount);
+            }
+            rollup.setLastLatitude(lastLatitude);
+            rollup.setLastLongitude(lastLongitude);
+            rollup.setLastBattery(lastBattery);
+            return rollup;
+        }
+    }
+
+    // ============ Rollups ============
+
+    @Scheduled(fixedDelayString = "${telemetry.rollup.interval:10000}")
+    public void rollup() {
+        if (!rollupEnabled) {
+            return;
+        }
+        if (watermark == null && (watermark = initialWatermark()) == null) {
+            return; // nothing recorded yet
+        }
+
+        int minutes = 0;
+        LocalDateTime late;
+        while (minutes < maxMinutesPerRun && (late = lateMinutes.pollFirst()) != null) {
+            rollupRepository.deleteBucketsBetween(late, late.plusMinutes(1));
+            rollupMinute(late);
+            minutes++;
+        }
+
+        LocalDateTime closed = LocalDateTime.now().minusNanos(lagMs * 1_000_000L);
+        while (!watermark.plusMinutes(1).isAfter(closed) && minutes < maxMinutesPerRun) {
+            if (rollupMinute(watermark)) {
+                watermark = watermark.plusMinutes(1);
+            } else {
+                // Skip idle stretches in one step instead of minute by minute
+                LocalDateTime next = nextSample(watermark.plusMinutes(1));
+                LocalDateTime closedMinute = closed.truncatedTo(ChronoUnit.MINUTES);
+                watermark = next != null && next.isBefore(closedMinute) ? next.truncatedTo(ChronoUnit.MINUTES)
+                        : closedMinute.isAfter(watermark) ? closedMinute : watermark.plusMinutes(1);
+            }
+            minutes++;
+        }
+        if (minutes > 1) {
+            log.debug("Rolled up {} minutes of telemetry, now at {}", minutes, watermark);
+        }
+    }
+
+    /**
+     * Called once raw rows are committed with the earliest timestamp among
+     * them; if that minute has already been rolled up, re-open it so the late
+     * samples are aggregated
+     */
+    public void noteWritten(@NonNull LocalDateTime earliest) {
+        LocalDateTime current = watermark;
+        if (current != null && earliest.isBefore(current)) {
+            lateMinutes.add(earliest.truncatedTo(ChronoUnit.MINUTES));
+        }
+    }
+
+    public void noteWritten(long earliestMillis) {
+        noteWritten(toLocal(earliestMillis));
+    }
+
+    /**
+     * Aggregate one minute of raw samples into all three levels. The minute is
+     * aligned, so every 10 s and 60 s bucket in it is complete.
+     *
+     * @return false if the minute had no samples
+     */
+    private boolean rollupMinute(LocalDateTime minute) {
+        LocalDateTime end = minute.plusMinutes(1);
+        Map<String, Bucket> seconds = new LinkedHashMap<>();
+
+        for (Object[] row : telemetryRepository.findSamples(minute, end)) {
+            LocalDateTime timestamp = (LocalDateTime) row[0];
+            String series = row[1] != null ? "drone:" + row[1] : LOCAL_DRONE;
+            bucket(seconds, series, timestamp.truncatedTo(ChronoUnit.SECONDS))
+                    .add((Double) row[2], (Double) row[3], (Double) row[4], (Double) row[5], (Double) row[6]);
+        }
+        for (TelemetryPoint p : telemetryPointRepository
+                .findByTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(toMillis(minute), toMillis(end))) {
+            bucket(seconds, "vehicle:" + p.getVehicleId(), toLocal(p.getTimestamp()).truncatedTo(ChronoUnit.SECONDS))
+                    .add(p.getLat(), p.getLon(), p.getAlt(), null, null);
+        }
+        if (seconds.isEmpty()) {
+            return false;
+        }
+
+        List<TelemetryRollup> rollups = new ArrayList<>();
+        Map<String, Bucket> tens = new LinkedHashMap<>();
+        Map<String, Bucket> minutes = new LinkedHashMap<>();
+        for (Bucket second : seconds.values()) {
+            rollups.add(second.toRollup(1));
+            LocalDateTime start = second.start;
+            bucket(tens, second.series, start.withSecond(start.getSecond() / 10 * 10)).merge(second);
+        }
+        for (Bucket ten : tens.values()) {
+            rollups.add(ten.toRollup(10));
+            bucket(minutes, ten.series, minute).merge(ten);
+        }
+        for (Bucket sixty : minutes.values()) {
+            rollups.add(sixty.toRollup(60));
+        }
+        rollupRepository.saveAll(rollups);
+        return true;
+    }
+
+    private static Bucket bucket(Map<String, Bucket> buckets, String series, LocalDateTime start) {
+        return buckets.computeIfAbsent(series + "|" + start, key -> new Bucket(series, start));
+    }
+
+    /**
+     * Resume after the last complete minute, or start at the oldest raw sample
+     */
+    private LocalDateTime initialWatermark() {
+        return rollupRepository.findTopByResolutionOrderByBucketStartDesc(60)
+                .map(r -> r.getBucketStart().plusMinutes(1))
+                .orElseGet(() -> {
+                    LocalDateTime first = nextSample(LocalDateTime.of(1970, 1, 1, 0, 0));
+                    return first != null ? first.truncatedTo(ChronoUnit.MINUTES) : null;
+                });
+    }
+
+    /**
+     * Earliest raw sample in either table at or after the given time
+     */
+    private LocalDateTime nextSample(LocalDateTime from) {
+        LocalDateTime next = telemetryRepository.findFirstTimestampFrom(from);
+        Long nextPoint = telemetryPointRepository.findFirstTimestampFrom(toMillis(from));
+        if (nextPoint != null && (next == null || toLocal(nextPoint).isBefore(next))) {
+            next = toLocal(nextPoint);
+        }
+        return next;
+    }
+
+    // ============ Retention ============
+
+    /**
+     * Delete raw rows older than the retention age, never past what has been
+     * rolled up. Each chunk is its own statement and transaction, so locks are
+     * held briefly and the write-behind inserts interleave with a long run.
+     *
+     * Mission telemetry inside a FlightLog's time range is kept for the flight
+     * archive, which removes it once archived (with archive.enabled=false it is
+     * kept indefinitely). Mission rows no flight log covers, such as a flight
+     * cut off before its log was written, are never archived and are deleted
+     * here like any other row.
+     */
+    @Scheduled(fixedDelayString = "${telemetry.retention.interval:3600000}", initialDelay = 60000)
+    public void applyRetention() {
+        if (rawRetentionDays > 0 && watermark != null) {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(rawRetentionDays).truncatedTo(ChronoUnit.DAYS);
+            if (cutoff.isAfter(watermark)) {
+                cutoff = watermark;
+            }
+            long telemetryDeleted = deleteInChunks("DELETE FROM telemetry WHERE timestamp < ? AND (mission_id IS NULL " +
+                    "OR NOT EXISTS (SELECT 1 FROM flight_logs f WHERE f.mission_id = telemetry.mission_id " +
+                    "AND telemetry.timestamp BETWEEN f.start_time AND f.end_time)) LIMIT " + DELETE_CHUNK, cutoff);
+            long pointsDeleted = deleteInChunks("DELETE FROM telemetry_log WHERE timestamp < ? LIMIT " + DELETE_CHUNK,
+                    toMillis(cutoff));
+            if (telemetryDeleted + pointsDeleted > 0) {
+                log.info("Retention removed {} telemetry and {} telemetry_log rows before {}",
+                        telemetryDeleted, pointsDeleted, cutoff);
+            }
+        }
+
+        for (int i = 0; i < RESOLUTIONS.length && i < rollupRetentionDays.length; i++) {
+            if (rollupRetentionDays[i] > 0) {
+                deleteInChunks("DELETE FROM telemetry_rollup WHERE resolution = ? AND bucket_start < ? LIMIT " + DELETE_CHUNK,
+                        RESOLUTIONS[i], LocalDateTime.now().minusDays(rollupRetentionDays[i]));
+            }
+        }
+    }
+
+    private long deleteInChunks(String sql, Object... args) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, args);
+            total += deleted;
+        } while (deleted == DELETE_CHUNK);
+        return total;
+    }
+
+    // ============ Queries ============
+
+    public List<String> getSeries() {
+        return rollupRepository.findSeries();
+    }
+
+    /**
+     * Samples of a series over [from, to] at the coarsest resolution that
+     * still yields at least maxPoints buckets. Short spans read raw rows, as
+     * do spans newer than the rollups.
+     *
+     * At most max-results points are returned; when there are more, the
+     * result has truncated set and nextFrom, the time of the first point left
+     * out, to pass as from for the rest.
+     */
+    public Map<String, Object> getSeriesData(@NonNull String series, @NonNull LocalDateTime from,
+            @NonNull LocalDateTime to, int maxPoints) {
+        long spanSeconds = Math.max(1, Duration.between(from, to).getSeconds());
+
+        int resolution = RAW;
+        for (int i = RESOLUTIONS.length - 1; i >= 0; i--) {
+            if (spanSeconds / RESOLUTIONS[i] >= maxPoints) {
+                resolution = RESOLUTIONS[i];
+                break;
+            }
+        }
+        // Rollups only exist up to the watermark, and raw rows only within retention
+        if (resolution != RAW && watermark != null && from.isAfter(watermark)) {
+            resolution = RAW;
+        } else if (resolution == RAW && rawRetentionDays > 0
+                && from.isBefore(LocalDateTime.now().minusDays(rawRetentionDays))) {
+            resolution = RESOLUTIONS[0];
+        }
+
+        // One extra row tells whether the range was cut short
+        PageRequest page = PageRequest.of(0, maxResults + 1);
+        List<TelemetryRollup> points = resolution == RAW
+                ? rawSamples(series, from, to, page)
+                : rollupRepository.findBySeriesAndResolutionAndBucketStartBetweenOrderByBucketStartAsc(
+                        series, resolution, from, to, page);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("series", series);
+        result.put("resolution", resolution);
+        result.put("from", from);
+        result.put("to", to);
+        boolean truncated = points.size() > maxResults;
+        result.put("truncated", truncated);
+        if (truncated) {
+            result.put("nextFrom", points.get(maxResults).getBucketStart());
+            points = points.subList(0, maxResults);
+        }
+        result.put("points", points);
+        return result;
+    }
+
+    /**
+     * Raw samples shaped as single-sample buckets
+     */
+    private List<TelemetryRollup> rawSamples(String series, LocalDateTime from, LocalDateTime to, PageRequest page) {
+        List<TelemetryRollup> points = new ArrayList<>();
+        if (series.startsWith("vehicle:")) {
+            String vehicleId = series.substring("vehicle:".length());
+            for (TelemetryPoint p : telemetryPointRepository.findByVehicleIdAndTimestampBetweenOrderByTimestampAsc(
+                    vehicleId, toMillis(from), toMillis(to), page)) {
+                Bucket sample = new Bucket(series, toLocal(p.getTimestamp()));
+                sample.add(p.getLat(), p.getLon(), p.getAlt(), null, null);
+                points.add(sample.toRollup(RAW));
+            }
+            return points;
+        }
+
+        List<Object[]> rows;
+        if (series.equals(LOCAL_DRONE)) {
+            rows = telemetryRepository.findLocalSamples(from, to, page);
+        } else if (series.startsWith("drone:")) {
+            try {
+                rows = telemetryRepository.findDroneSamples(Long.parseLong(series.substring("drone:".length())),
+                        from, to, page);
+            } catch (NumberFormatException e) {
+                return points;
+            }
+        } else {
+            return points;
+        }
+        for (Object[] row : rows) {
+            Bucket sample = new Bucket(series, (LocalDateTime) row[0]);
+            sample.add((Double) row[2], (Double) row[3], (Double) row[4], (Double) row[5], (Double) row[6]);
+            points.add(sample.toRollup(RAW));
+        }
+        return points;
+    }
+
+    // telemetry_log stores epoch millis; telemetry stores server-local LocalDateTime
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -1,29 +1,48 @@
 package com.nidar.gcs.service;
 
 import com.nidar.gcs.model.Telemetry;
-import com.nidar.gcs.repository.TelemetryRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.lang.NonNull;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class TelemetryService {
 
-    private final TelemetryRepository telemetryRepository;
+    private final FlightStatisticsService flightStatisticsService;
+    private final TelemetryWriteBuffer telemetryWriteBuffer;
+    private final TelemetryCache telemetryCache;
 
+    /**
+     * Queue the sample for a batched insert. The id is assigned when the batch
+     * is written, so it is not set on the returned object yet.
+     */
     public Telemetry saveTelemetry(@NonNull Telemetry telemetry) {
-        return telemetryRepository.save(telemetry);
+        if (telemetry.getTimestamp() == null) {
+            telemetry.setTimestamp(LocalDateTime.now());
+        }
+        telemetryWriteBuffer.enqueue(telemetry);
+        telemetryCache.recordTelemetry(telemetry);
+        flightStatisticsService.record(telemetry);
+        return telemetry;
     }
 
+    public Map<String, Object> getWriterStats() {
+        return telemetryWriteBuffer.getStats();
+    }
+
+    /**
+     * Newest first, from memory
+     */
     public List<Telemetry> getRecentTelemetry() {
-        return telemetryRepository.findTop100ByOrderByTimestampDesc();
+        return telemetryCache.getRecentTelemetry();
     }
 
     public Telemetry getLatestTelemetry() {
-        List<Telemetry> telemetryList = telemetryRepository.findTop100ByOrderByTimestampDesc();
-        return telemetryList.isEmpty() ? null : telemetryList.get(0);
+        return telemetryCache.getLatestTelemetry();
     }
 }
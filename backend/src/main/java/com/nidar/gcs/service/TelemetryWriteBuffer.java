@@ -0,0 +1,244 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import com.nidar.gcs.model.TelemetryPoint;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.lang.NonNull;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for telemetry rows (Telemetry and TelemetryPoint).
+ * Callers enqueue and return immediately; a single writer thread persists the
+ * rows in one transaction per batch, flushing every batch-size rows or
+ * flush-interval ms, whichever comes first. Both entities use pooled sequence
+ * ids, so Hibernate can send the batch as JDBC batch inserts.
+ *
+ * When the queue is full, enqueue blocks for up to offer-timeout ms and then
+ * fails, so a stalled database pushes back on producers instead of growing the
+ * heap. Remaining rows are drained on shutdown.
+ */
+@Service
+@Slf4j
+public class TelemetryWriteBuffer {
+
+    // Must match allocationSize of the telemetry_seq / telemetry_log_seq generators
+    private static final int ID_ALLOCATION_SIZE = 500;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TelemetryRollupService telemetryRollupService;
+
+    @Value("${telemetry.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${telemetry.write-behind.flush-interval:250}")
+    private long flushIntervalMs;
+
+    @Value("${telemetry.write-behind.capacity:20000}")
+    private int capacity;
+
+    @Value("${telemetry.write-behind.offer-timeout:1000}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<Object> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        alignSequence("telemetry_seq", "telemetry", "id");
+        alignSequence("telemetry_log_seq", "telemetry_log", "log_id");
+
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        writer = new Thread(this::run, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Telemetry write-behind started: batch {}, interval {}ms, capacity {}",
+                batchSize, flushIntervalMs, capacity);
+    }
+
+    /**
+     * Queue an entity for insertion. Blocks while the buffer is full.
+     *
+     * @throws IllegalStateException if the buffer stays full past the offer timeout
+     */
+    public void enqueue(@NonNull Object entity) {
+        if (!running) {
+            throw new IllegalStateException("Telemetry writer is stopped");
+        }
+        try {
+            if (!queue.offer(entity, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Telemetry write buffer full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing telemetry", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", capacity);
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Telemetry writer stopped with {} rows unwritten", queue.size());
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Object first = running ? queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Fill up to batch size, waiting no longer than the flush interval
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Object next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Shutdown: fall through and write what we have, then drain
+            }
+
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Object> batch) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (Object entity : batch) {
+                        entityManager.persist(entity);
+                    }
+                    entityManager.flush();
+                    entityManager.clear();
+                });
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                reportEarliest(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Telemetry batch of {} failed (attempt {}): {}", batch.size(), attempt, e.getMessage());
+                // A failed persist may have assigned ids; let the retry draw fresh ones
+                batch.forEach(TelemetryWriteBuffer::clearId);
+                sleepQuietly(100L * attempt);
+            }
+        }
+        failed.addAndGet(batch.size());
+        log.error("Dropped {} telemetry rows after {} attempts", batch.size(), MAX_ATTEMPTS);
+    }
+
+    /**
+     * Rows can arrive late (agent backlog, gzip batches), so let the rollup
+     * re-open minutes it has already aggregated
+     */
+    private void reportEarliest(List<Object> batch) {
+        LocalDateTime earliest = null;
+        long earliestPoint = Long.MAX_VALUE;
+        for (Object entity : batch) {
+            if (entity instanceof Telemetry t && t.getTimestamp() != null
+                    && (earliest == null || t.getTimestamp().isBefore(earliest))) {
+                earliest = t.getTimestamp();
+            } else if (entity instanceof TelemetryPoint p) {
+                earliestPoint = Math.min(earliestPoint, p.getTimestamp());
+            }
+        }
+        if (earliest != null) {
+            telemetryRollupService.noteWritten(earliest);
+        }
+        if (earliestPoint != Long.MAX_VALUE) {
+            telemetryRollupService.noteWritten(earliestPoint);
+        }
+    }
+
+    private static void clearId(Object entity) {
+        if (entity instanceof Telemetry t) {
+            t.setId(null);
+        } else if (entity instanceof TelemetryPoint p) {
+            p.setLogId(null);
+        }
+    }
+
+    /**
+     * Tables that used IDENTITY before keep their rows; move the pooled
+     * sequence past them so new ids can't collide.
+     */
+    private void alignSequence(String sequenceTable, String table, String idColumn) {
+        try {
+            jdbcTemplate.update("UPDATE " + sequenceTable + " SET next_val = GREATEST(next_val, " +
+                    "(SELECT COALESCE(MAX(" + idColumn + "), 0) + " + (ID_ALLOCATION_SIZE + 1) + " FROM " + table + "))");
+        } catch (RuntimeException e) {
+            log.warn("Could not align {} with {}: {}", sequenceTable, table, e.getMessage());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.nidar.gcs.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Offline terrain elevation lookups from SRTM .hgt tiles on local disk.
+ * Tiles are memory-mapped on first use and kept in a small LRU so repeated
+ * sampling along a mission never touches the filesystem.
+ */
+@Service
+@Slf4j
+public class TerrainService {
+
+    private static final short SRTM_VOID = -32768;
+
+    @Value("${terrain.dem.dir:dem}")
+    private String demDirectory;
+
+    @Value("${terrain.cache.max-tiles:16}")
+    private int maxCachedTiles;
+
+    private final Map<Integer, Tile> tileCache = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+            return size() > maxCachedTiles;
+        }
+    };
+
+    // Most consecutive samples fall in the same tile; skip the cache lookup for them
+    private volatile Tile lastTile;
+
+    /**
+     * A single mapped 1x1 degree tile. A tile with a null buffer marks a
+     * missing file so we don't keep probing the disk for it.
+     */
+    private static final class Tile {
+        final int key;
+        final int latFloor;
+        final int lonFloor;
+        final int samples;
+        final MappedByteBuffer data;
+
+        Tile(int key, int latFloor, int lonFloor, int samples, MappedByteBuffer data) {
+            this.key = key;
+            this.latFloor = latFloor;
+            this.lonFloor = lonFloor;
+            this.samples = samples;
+            this.data = data;
+        }
+
+        short sample(int row, int col) {
+            return data.getShort((row * samples + col) << 1);
+        }
+    }
+
+    /**
+     * Ground elevation in metres above mean sea level, bilinearly interpolated
+     * between the four surrounding posts.
+     *
+     * @return elevation, or NaN if no tile covers the position or it is a void
+     */
+    public double getElevation(double latitude, double longitude) {
+        int latFloor = (int) Math.floor(latitude);
+        int lonFloor = (int) Math.floor(longitude);
+        int key = tileKey(latFloor, lonFloor);
+
+        Tile tile = lastTile;
+        if (tile == null || tile.key != key) {
+            tile = getTile(key, latFloor, lonFloor);
+            lastTile = tile;
+        }
+        if (tile.data == null) {
+            return Double.NaN;
+        }
+
+        int last = tile.samples - 1;
+        // Rows run north to south, columns west to east
+        double y = (tile.latFloor + 1 - latitude) * last;
+        double x = (longitude - tile.lonFloor) * last;
+
+        int row = Math.min((int) y, last - 1);
+        int col = Math.min((int) x, last - 1);
+        double fy = y - row;
+        double fx = x - col;
+
+        short h00 = tile.sample(row, col);
+        short h01 = tile.sample(row, col + 1);
+        short h10 = tile.sample(row + 1, col);
+        short h11 = tile.sample(row + 1, col + 1);
+        if (h00 == SRTM_VOID || h01 == SRTM_VOID || h10 == SRTM_VOID || h11 == SRTM_VOID) {
+            return Double.NaN;
+        }
+
+        double top = h00 + (h01 - h00) * fx;
+        double bottom = h10 + (h11 - h10) * fx;
+        return top + (bottom - top) * fy;
+    }
+
+    public boolean hasCoverage(double latitude, double longitude) {
+        int latFloor = (int) Math.floor(latitude);
+        int lonFloor = (int) Math.floor(longitude);
+        return getTile(tileKey(latFloor, lonFloor), latFloor, lonFloor).data != null;
+    }
+
+    private Tile getTile(int key, int latFloor, int lonFloor) {
+        synchronized (tileCache) {
+            Tile tile = tileCache.get(key);
+            if (tile == null) {
+                tile = loadTile(key, latFloor, lonFloor);
+                tileCache.put(key, tile);
+            }
+            return tile;
+        }
+    }
+
+    private Tile loadTile(int key, int latFloor, int lonFloor) {
+        Path path = Paths.get(demDirectory, tileName(latFloor, lonFloor));
+        if (!Files.isRegularFile(path)) {
+            log.debug("No terrain tile at {}", path);
+            return new Tile(key, latFloor, lonFloor, 0, null);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int samples = (int) Math.round(Math.sqrt(size / 2.0));
+            if ((long) samples * samples * 2 != size || samples < 2) {
+                log.warn("Ignoring terrain tile {} with unexpected size {} bytes", path, size);
+                return new Tile(key, latFloor, lonFloor, 0, null);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.BIG_ENDIAN);
+            log.info("Mapped terrain tile {} ({}x{} posts)", path.getFileName(), samples, samples);
+            return new Tile(key, latFloor, lonFloor, samples, data);
+        } catch (IOException e) {
+            log.error("Failed to map terrain tile {}", path, e);
+            return new Tile(key, latFloor, lonFloor, 0, null);
+        }
+    }
+
+    @PreDestroy
+    public void clear() {
+        synchronized (tileCache) {
+            tileCache.clear();
+        }
+        lastTile = null;
+    }
+
+    private static int tileKey(int latFloor, int lonFloor) {
+        return (latFloor + 90) * 360 + (lonFloor + 180);
+    }
+
+    /**
+     * SRTM naming: N37W122.hgt covers 37..38N, 122..121W
+     */
+    private static String tileName(int latFloor, int lonFloor) {
+        return String.format("%s%02d%s%03d.hgt",
+                latFloor >= 0 ? "N" : "S", Math.abs(latFloor),
+                lonFloor >= 0 ? "E" : "W", Math.abs(lonFloor));
+    }
+}
@@ -0,0 +1,292 @@
+package com.nidar.gcs.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Shape-preserving track downsampling that works on a stream of points.
+ * Feed points in time order with {@link #accept}, then call {@link #finish}.
+ *
+ * Two modes:
+ * - target count: Largest-Triangle-Three-Buckets, holding two buckets at a time;
+ *   a target of 1 or 2 keeps just the first point, or the first and last
+ * - tolerance: Douglas-Peucker over fixed windows, so no point of the input
+ *   is further than the tolerance (metres) from the simplified line
+ */
+public class TrajectoryDownsampler<T> implements Consumer<T> {
+
+    private static final double METERS_PER_DEG_LAT = 110540.0;
+    private static final double METERS_PER_DEG_LON = 111320.0;
+    private static final int DP_WINDOW = 2048;
+
+    private final ToDoubleFunction<T> latitude;
+    private final ToDoubleFunction<T> longitude;
+    private final List<T> output = new ArrayList<>();
+
+    // Local equirectangular projection, anchored on the first point
+    private double originLat = Double.NaN;
+    private double originLon;
+    private double lonScale;
+
+    // LTTB state
+    private final int targetPoints;
+    private final double bucketSize;
+    private List<T> currentBucket = new ArrayList<>();
+    private List<T> nextBucket = new ArrayList<>();
+    private int currentBucketIndex = 0;
+    private T selected;
+    private long seen = 0;
+    private T lastSeen;
+
+    // Douglas-Peucker state
+    private final double toleranceMeters;
+    private final List<T> window = new ArrayList<>();
+
+    private TrajectoryDownsampler(ToDoubleFunction<T> latitude, ToDoubleFunction<T> longitude,
+            int targetPoints, long expectedPoints, double toleranceMeters) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.targetPoints = targetPoints;
+        this.toleranceMeters = toleranceMeters;
+        this.bucketSize = targetPoints > 2 ? (double) (expectedPoints - 2) / (targetPoints - 2) : 0;
+    }
+
+    /**
+     * Downsample to at most {@code targetPoints}. {@code expectedPoints} is the
+     * size of the input; when it is within the target, points pass through.
+     */
+    public static <T> TrajectoryDownsampler<T> toCount(int targetPoints, long expectedPoints,
+            ToDoubleFunction<T> latitude, ToDoubleFunction<T> longitude) {
+        int target = Math.max(1, targetPoints);
+        if (expectedPoints <= target) {
+            return new TrajectoryDownsampler<>(latitude, longitude, 0, expectedPoints, 0);
+        }
+        return new TrajectoryDownsampler<>(latitude, longitude, target, expectedPoints, 0);
+    }
+
+    public static <T> TrajectoryDownsampler<T> toTolerance(double toleranceMeters,
+            ToDoubleFunction<T> latitude, ToDoubleFunction<T> longitude) {
+        return new TrajectoryDownsampler<>(latitude, longitude, 0, 0, Math.max(0, toleranceMeters));
+    }
+
+    /**
+     * Convenience for in-memory lists: pick whichever mode is requested.
+     */
+    public static <T> List<T> downsample(List<T> points, Integer maxPoints, Double toleranceMeters,
+            ToDoubleFunction<T> latitude, ToDoubleFunction<T> longitude) {
+        TrajectoryDownsampler<T> sampler = toleranceMeters != null
+                ? toTolerance(toleranceMeters, latitude, longitude)
+                : toCount(maxPoints, points.size(), latitude, longitude);
+        points.forEach(sampler);
+        return sampler.finish();
+    }
+
+    @Override
+    public void accept(T point) {
+        if (Double.isNaN(originLat)) {
+            originLat = latitude.applyAsDouble(point);
+            originLon = longitude.applyAsDouble(point);
+            lonScale = METERS_PER_DEG_LON * Math.cos(Math.toRadians(originLat));
+        }
+
+        if (toleranceMeters > 0) {
+            acceptWindowed(point);
+        } else if (targetPoints > 2) {
+            acceptBucketed(point);
+        } else if (targetPoints > 0) {
+            acceptEndpoint(point);
+        } else {
+            output.add(point);
+        }
+    }
+
+    public List<T> finish() {
+        if (toleranceMeters > 0) {
+            if (!window.isEmpty()) {
+                simplifyWindow(true);
+            }
+        } else if (targetPoints > 2 && lastSeen != null && seen > 1) {
+            finishBuckets();
+        } else if (targetPoints == 2 && seen > 1) {
+            output.add(lastSeen);
+        }
+        return output;
+    }
+
+    // ============ Endpoints (target of 1 or 2) ============
+
+    private void acceptEndpoint(T point) {
+        if (seen++ == 0) {
+            output.add(point);
+        }
+        lastSeen = point;
+    }
+
+    // ============ LTTB ============
+
+    private void acceptBucketed(T point) {
+        long index = seen++;
+        lastSeen = point;
+        if (index == 0) {
+            output.add(point);
+            selected = point;
+            return;
+        }
+
+        int bucket = (int) Math.min((index - 1) / bucketSize, targetPoints - 3);
+        if (bucket <= currentBucketIndex) {
+            currentBucket.add(point);
+        } else if (bucket == currentBucketIndex + 1) {
+            nextBucket.add(point);
+        } else {
+            // Next bucket is complete: pick from the current one using its average
+            selectFrom(currentBucket, centroidX(nextBucket), centroidY(nextBucket));
+            currentBucket = nextBucket;
+            nextBucket = new ArrayList<>();
+            nextBucket.add(point);
+            currentBucketIndex++;
+        }
+    }
+
+    private void finishBuckets() {
+        // The last point is always kept, so take it out of whichever bucket holds it
+        List<T> holder = !nextBucket.isEmpty() ? nextBucket : currentBucket;
+        holder.remove(holder.size() - 1);
+
+        double lastX = x(lastSeen);
+        double lastY = y(lastSeen);
+        if (!nextBucket.isEmpty()) {
+            selectFrom(currentBucket, centroidX(nextBucket), centroidY(nextBucket));
+            selectFrom(nextBucket, lastX, lastY);
+        } else {
+            selectFrom(currentBucket, lastX, lastY);
+        }
+        output.add(lastSeen);
+    }
+
+    private void selectFrom(List<T> bucket, double nextX, double nextY) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        double ax = x(selected);
+        double ay = y(selected);
+
+        T best = bucket.get(0);
+        double bestArea = -1;
+        for (T candidate : bucket) {
+            double area = Math.abs((ax - nextX) * (y(candidate) - ay) - (ax - x(candidate)) * (nextY - ay));
+            if (area > bestArea) {
+                bestArea = area;
+                best = candidate;
+            }
+        }
+        output.add(best);
+        selected = best;
+    }
+
+    private double centroidX(List<T> bucket) {
+        double sum = 0;
+        for (T p : bucket) {
+            sum += x(p);
+        }
+        return sum / bucket.size();
+    }
+
+    private double centroidY(List<T> bucket) {
+        double sum = 0;
+        for (T p : bucket) {
+            sum += y(p);
+        }
+        return sum / bucket.size();
+    }
+
+    // ============ Windowed Douglas-Peucker ============
+
+    private void acceptWindowed(T point) {
+        window.add(point);
+        if (window.size() >= DP_WINDOW) {
+            simplifyWindow(false);
+        }
+    }
+
+    /**
+     * Simplify the buffered window. Unless this is the final window, its last
+     * point is carried over as the anchor of the next one.
+     */
+    private void simplifyWindow(boolean last) {
+        int n = window.size();
+        if (n <= 2) {
+            output.addAll(last ? window : window.subList(0, n - 1));
+        } else {
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = x(window.get(i));
+                ys[i] = y(window.get(i));
+            }
+
+            boolean[] keep = new boolean[n];
+            keep[0] = true;
+            keep[n - 1] = true;
+
+            int[] stack = new int[2 * n];
+            int top = 0;
+            stack[top++] = 0;
+            stack[top++] = n - 1;
+            while (top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                double maxDist = -1;
+                int maxIndex = -1;
+                for (int i = start + 1; i < end; i++) {
+                    double d = segmentDistance(xs[i], ys[i], xs[start], ys[start], xs[end], ys[end]);
+                    if (d > maxDist) {
+                        maxDist = d;
+                        maxIndex = i;
+                    }
+                }
+                if (maxIndex >= 0 && maxDist > toleranceMeters) {
+                    keep[maxIndex] = true;
+                    stack[top++] = start;
+                    stack[top++] = maxIndex;
+                    stack[top++] = maxIndex;
+                    stack[top++] = end;
+                }
+            }
+
+            int limit = last ? n : n - 1;
+            for (int i = 0; i < limit; i++) {
+                if (keep[i]) {
+                    output.add(window.get(i));
+                }
+            }
+        }
+
+        T anchor = window.get(n - 1);
+        window.clear();
+        if (!last) {
+            window.add(anchor);
+        }
+    }
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSq : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    private double x(T p) {
+        return (longitude.applyAsDouble(p) - originLon) * lonScale;
+    }
+
+    private double y(T p) {
+        return (latitude.applyAsDouble(p) - originLat) * METERS_PER_DEG_LAT;
+    }
+}
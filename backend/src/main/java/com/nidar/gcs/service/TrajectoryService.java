@@ -0,0 +1,179 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Mission;
+import com.nidar.gcs.model.TelemetryPoint;
+import com.nidar.gcs.service.ReplayStreamService.ReplayFrame;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.lang.NonNull;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downsampled flight tracks for map display. Points are simplified while they
+ * stream out of the database; completed missions also get a cached pyramid of
+ * pre-simplified levels so zoomed-out views don't touch the telemetry table.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TrajectoryService {
+
+    // Pyramid levels, finest first. Coarser levels are built from the finest one.
+    private static final int[] PYRAMID_LEVELS = { 4096, 1024, 256 };
+
+    private final MissionReplayService missionReplayService;
+    private final MissionExecutionService missionExecutionService;
+    private final VehicleService vehicleService;
+
+    @Value("${trajectory.pyramid.cache-size:16}")
+    private int pyramidCacheSize;
+
+    private final Map<Long, Pyramid> pyramids = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Pyramid> eldest) {
+            return size() > pyramidCacheSize;
+        }
+    };
+
+    // Builds in progress; concurrent requests for a mission wait on one build
+    private final Map<Long, CompletableFuture<Pyramid>> building = new ConcurrentHashMap<>();
+
+    private static class Pyramid {
+        final long pointCount; // telemetry rows (live and archived) when built; a change invalidates the pyramid
+        final List<List<ReplayFrame>> levels;
+
+        Pyramid(long pointCount, List<List<ReplayFrame>> levels) {
+            this.pointCount = pointCount;
+            this.levels = levels;
+        }
+    }
+
+    /**
+     * Mission track reduced to at most maxPoints, or to within tolerance metres
+     * of the original when a tolerance is given.
+     */
+    public List<ReplayFrame> getMissionTrack(@NonNull Long missionId, LocalDateTime from, LocalDateTime to,
+            int maxPoints, Double toleranceMeters) {
+        boolean wholeFlight = from == null && to == null;
+        if (wholeFlight && toleranceMeters == null && maxPoints <= PYRAMID_LEVELS[0] && !isActive(missionId)) {
+            List<ReplayFrame> level = pyramidLevel(missionId, maxPoints);
+            return TrajectoryDownsampler.downsample(level, maxPoints, null,
+                    ReplayFrame::getLatitude, ReplayFrame::getLongitude);
+        }
+
+        TrajectoryDownsampler<ReplayFrame> sampler = toleranceMeters != null
+                ? TrajectoryDownsampler.toTolerance(toleranceMeters, ReplayFrame::getLatitude, ReplayFrame::getLongitude)
+                : TrajectoryDownsampler.toCount(maxPoints, missionReplayService.countTelemetry(missionId, from, to),
+                        ReplayFrame::getLatitude, ReplayFrame::getLongitude);
+        streamMissionFrames(missionId, from, to, sampler);
+        return sampler.finish();
+    }
+
+    public List<TelemetryPoint> getVehicleTrack(String vehicleId, int maxPoints, Double toleranceMeters) {
+        TrajectoryDownsampler<TelemetryPoint> sampler = toleranceMeters != null
+                ? TrajectoryDownsampler.toTolerance(toleranceMeters, TelemetryPoint::getLat, TelemetryPoint::getLon)
+                : TrajectoryDownsampler.toCount(maxPoints, vehicleService.countTelemetry(vehicleId),
+                        TelemetryPoint::getLat, TelemetryPoint::getLon);
+        vehicleService.forEachTelemetryPoint(vehicleId, sampler);
+        return sampler.finish();
+    }
+
+    public void evictMission(Long missionId) {
+        synchronized (pyramids) {
+            pyramids.remove(missionId);
+        }
+    }
+
+    /**
+     * Smallest cached level that still has at least maxPoints points
+     */
+    private List<ReplayFrame> pyramidLevel(@NonNull Long missionId, int maxPoints) {
+        long count = missionReplayService.countTelemetry(missionId, null, null);
+        Pyramid pyramid;
+        synchronized (pyramids) {
+            pyramid = pyramids.get(missionId);
+        }
+        if (pyramid == null || pyramid.pointCount != count) {
+            pyramid = buildOnce(missionId, count);
+        }
+
+        for (int i = PYRAMID_LEVELS.length - 1; i >= 0; i--) {
+            if (PYRAMID_LEVELS[i] >= maxPoints) {
+                return pyramid.levels.get(i);
+            }
+        }
+        return pyramid.levels.get(0);
+    }
+
+    /**
+     * Build and cache the pyramid, or wait for a build already running for
+     * the mission
+     */
+    private Pyramid buildOnce(@NonNull Long missionId, long count) {
+        CompletableFuture<Pyramid> build = new CompletableFuture<>();
+        CompletableFuture<Pyramid> running = building.putIfAbsent(missionId, build);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Pyramid pyramid = buildPyramid(missionId, count);
+            synchronized (pyramids) {
+                pyramids.put(missionId, pyramid);
+            }
+            build.complete(pyramid);
+            return pyramid;
+        } catch (RuntimeException e) {
+            build.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(missionId, build);
+        }
+    }
+
+    private Pyramid buildPyramid(@NonNull Long missionId, long count) {
+        long start = System.currentTimeMillis();
+
+        TrajectoryDownsampler<ReplayFrame> sampler = TrajectoryDownsampler.toCount(PYRAMID_LEVELS[0], count,
+                ReplayFrame::getLatitude, ReplayFrame::getLongitude);
+        streamMissionFrames(missionId, null, null, sampler);
+
+        List<List<ReplayFrame>> levels = new ArrayList<>();
+        levels.add(sampler.finish());
+        for (int i = 1; i < PYRAMID_LEVELS.length; i++) {
+            levels.add(TrajectoryDownsampler.downsample(levels.get(i - 1), PYRAMID_LEVELS[i], null,
+                    ReplayFrame::getLatitude, ReplayFrame::getLongitude));
+        }
+
+        log.info("Built track pyramid for mission {} from {} points in {}ms",
+                missionId, count, System.currentTimeMillis() - start);
+        return new Pyramid(count, levels);
+    }
+
+    private void streamMissionFrames(@NonNull Long missionId, LocalDateTime from, LocalDateTime to,
+            TrajectoryDownsampler<ReplayFrame> sampler) {
+        missionReplayService.forEachTelemetry(missionId, from, to, t -> {
+            if (t.getLatitude() != null && t.getLongitude() != null) {
+                sampler.accept(ReplayFrame.of(t));
+            }
+        });
+    }
+
+    private boolean isActive(Long missionId) {
+        Mission active = missionExecutionService.getActiveMission();
+        return active != null && missionId.equals(active.getId());
+    }
+}
@@ -0,0 +1,226 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.FlightLog;
+import com.nidar.gcs.model.Mission;
+import com.nidar.gcs.model.Waypoint;
+import com.nidar.gcs.repository.FlightLogRepository;
+import com.nidar.gcs.repository.MissionRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Geofence validation of whole trajectories: a list of positions, a mission's
+ * planned waypoints or a recorded flight, checked against the mission's
+ * compiled zones (GeofenceIndex) in parallel blocks.
+ *
+ * Only violations are returned, as runs of consecutive positions that
+ * violate the same zone in the same way:
+ *   {"start": 120, "end": 348, "zoneId": 4, "zoneName": "...", "kind": "INSIDE_EXCLUSION",
+ *    "message": "...", "violationAction": "RTL"}
+ * with start and end inclusive indexes into the trajectory.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TrajectoryValidationService {
+
+    private static final int BLOCK_SIZE = 16384;
+
+    private final GeofenceIndex geofenceIndex;
+    private final MissionRepository missionRepository;
+    private final FlightLogRepository flightLogRepository;
+    private final MissionReplayService missionReplayService;
+
+    @Data
+    public static class PositionBatch {
+        private Long missionId;
+        private double[][] positions; // [lat, lon, alt] each
+    }
+
+    /**
+     * Positions as [lat, lon, alt] triples; null if there is no such mission
+     */
+    public Map<String, Object> validatePositions(@NonNull Long missionId, @NonNull double[][] positions) {
+        Track track = new Track(positions.length);
+        for (double[] position : positions) {
+            if (position == null || position.length < 3) {
+                throw new IllegalArgumentException("Positions must be [lat, lon, alt]");
+            }
+            track.add(position[0], position[1], position[2]);
+        }
+        return validate(missionId, track);
+    }
+
+    /**
+     * The mission's waypoints, in sequence order, against its own zones
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> validateMissionPlan(@NonNull Long missionId) {
+        Mission mission = missionRepository.findById(missionId).orElse(null);
+        if (mission == null) {
+            return null;
+        }
+        double defaultAltitude = mission.getDefaultAltitude() != null ? mission.getDefaultAltitude() : Double.NaN;
+        List<Waypoint> waypoints = new ArrayList<>(mission.getWaypoints());
+        waypoints.sort((a, b) -> Integer.compare(
+                a.getSequence() != null ? a.getSequence() : Integer.MAX_VALUE,
+                b.getSequence() != null ? b.getSequence() : Integer.MAX_VALUE));
+
+        Track track = new Track(waypoints.size());
+        for (Waypoint wp : waypoints) {
+            track.add(orNaN(wp.getLatitude()), orNaN(wp.getLongitude()),
+                    wp.getAltitude() != null ? wp.getAltitude() : defaultAltitude);
+        }
+        return validate(missionId, track);
+    }
+
+    /**
+     * Every recorded telemetry row of the flight, archived or live, in
+     * timestamp order, against the zones of the flight's mission
+     */
+    public Map<String, Object> validateFlight(@NonNull Long flightLogId) {
+        FlightLog flight = flightLogRepository.findById(flightLogId).orElse(null);
+        if (flight == null || flight.getMission() == null) {
+            return null;
+        }
+        Long missionId = flight.getMission().getId();
+        Track track = new Track(1024);
+        missionReplayService.forEachTelemetry(missionId, flight.getStartTime(), flight.getEndTime(),
+                t -> track.add(orNaN(t.getLatitude()), orNaN(t.getLongitude()), orNaN(t.getAltitude())));
+
+        Map<String, Object> result = validate(missionId, track);
+        if (result != null) {
+            result.put("flightLogId", flightLogId);
+        }
+        return result;
+    }
+
+    private Map<String, Object> validate(Long missionId, Track track) {
+        GeofenceIndex.MissionFences fences = geofenceIndex.get(missionId);
+        if (fences == null) {
+            return null;
+        }
+        long started = System.currentTimeMillis();
+
+        int blocks = (track.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        List<List<Run>> perBlock = IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> checkBlock(fences, track, b * BLOCK_SIZE, Math.min((b + 1) * BLOCK_SIZE, track.size)))
+                .toList();
+
+        // Join runs that continue across a block boundary
+        List<Run> runs = new ArrayList<>();
+        long violating = 0;
+        for (List<Run> blockRuns : perBlock) {
+            for (Run run : blockRuns) {
+                Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                if (last != null && last.end == run.start - 1 && last.violation.equals(run.violation)) {
+                    last.end = run.end;
+                } else {
+                    runs.add(run);
+                }
+                violating += run.end - run.start + 1;
+            }
+        }
+
+        List<Map<String, Object>> violations = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            GeofenceIndex.CompiledZone zone = run.violation.zone();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("start", run.start);
+            entry.put("end", run.end);
+            entry.put("zoneId", zone.getId());
+            entry.put("zoneName", zone.getName());
+            entry.put("kind", run.violation.kind().name());
+            entry.put("message", GeofenceService.describe(run.violation));
+            entry.put("violationAction", zone.getViolationAction());
+            violations.add(entry);
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        log.info("Validated {} positions against mission {} geofences in {}ms: {} violating",
+                track.size, missionId, elapsed, violating);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("missionId", missionId);
+        result.put("valid", runs.isEmpty());
+        result.put("points", track.size);
+        result.put("violatingPoints", violating);
+        result.put("violations", violations);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    private static List<Run> checkBlock(GeofenceIndex.MissionFences fences, Track track, int from, int to) {
+        List<Run> runs = new ArrayList<>();
+        Run current = null;
+        for (int i = from; i < to; i++) {
+            // Positions without coordinates are skipped, not reported
+            GeofenceIndex.Violation violation = Double.isNaN(track.lat[i]) || Double.isNaN(track.lon[i]) ? null
+                    : fences.check(track.lat[i], track.lon[i], track.alt[i]);
+            if (violation == null) {
+                current = null;
+            } else if (current != null && current.violation.equals(violation)) {
+                current.end = i;
+            } else {
+                current = new Run(i, violation);
+                runs.add(current);
+            }
+        }
+        return runs;
+    }
+
+    private static double orNaN(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static final class Run {
+        final int start;
+        int end;
+        final GeofenceIndex.Violation violation;
+
+        Run(int start, GeofenceIndex.Violation violation) {
+            this.start = start;
+            this.end = start;
+            this.violation = violation;
+        }
+    }
+
+    /**
+     * Growable primitive columns, so a recorded flight costs 24 bytes a point
+     */
+    private static final class Track {
+        double[] lat;
+        double[] lon;
+        double[] alt;
+        int size;
+
+        Track(int capacity) {
+            lat = new double[Math.max(capacity, 16)];
+            lon = new double[lat.length];
+            alt = new double[lat.length];
+        }
+
+        void add(double latitude, double longitude, double altitude) {
+            if (size == lat.length) {
+                lat = Arrays.copyOf(lat, size * 2);
+                lon = Arrays.copyOf(lon, size * 2);
+                alt = Arrays.copyOf(alt, size * 2);
+            }
+            lat[size] = latitude;
+            lon[size] = longitude;
+            alt[size] = altitude;
+            size++;
+        }
+    }
+}
@@ -6,12 +6,19 @@ import com.nidar.gcs.model.Vehicle;
 import com.nidar.gcs.repository.DetectionRepository;
 import com.nidar.gcs.repository.TelemetryPointRepository;
 import com.nidar.gcs.repository.VehicleRepository;
+import jakarta.persistence.EntityManager;
+import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.lang.NonNull;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 public class VehicleService {
@@ -25,53 +32,226 @@ public class VehicleService {
     @Autowired
     private DetectionRepository detectionRepo;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TelemetryWriteBuffer telemetryWriteBuffer;
+
+    @Autowired
+    private TelemetryCache telemetryCache;
+
+    @Autowired
+    private VehicleStateStore stateStore;
+
+    private static final int HISTORY_PAGE_SIZE = 1000;
+
+    // Highest sequence number applied per vehicle, for idempotent batch retries
+    private final Map<String, IngestCursor> ingestCursors = new ConcurrentHashMap<>();
+
+    /**
+     * One sample of a batched telemetry upload
+     */
+    @Data
+    public static class TelemetrySample {
+        private Long seq;
+        private double lat;
+        private double lon;
+        private double alt;
+        private double heading;
+        private double battery;
+        private String status;
+        private Long timestamp; // epoch millis at the vehicle; receive time if absent
+    }
+
+    @Data
+    public static class TelemetryBatch {
+        private String session; // new per agent run; a new session restarts sequence numbers
+        private List<TelemetrySample> samples;
+    }
+
+    @Data
+    public static class BatchResult {
+        private int accepted;
+        private int duplicates;
+        private Long lastSeq;
+        private Vehicle vehicle; // state after the batch, null if nothing was applied
+        // Write buffer full: samples after lastSeq were not taken and should be resent later
+        private boolean backlogged;
+    }
+
+    private static class IngestCursor {
+        String session;
+        long lastSeq = -1;
+    }
+
     @PostConstruct
     public void init() {
         // Initialize default vehicles if not present
         if (!vehicleRepo.existsById("scout")) {
-            vehicleRepo.save(new Vehicle("scout", "SCOUT", 0, 0, 0, 0, 100, "DISARMED", System.currentTimeMillis()));
+            vehicleRepo.save(new Vehicle("scout", "SCOUT", 0, 0, 0, 0, 100, "DISARMED", System.currentTimeMillis(),
+                    null));
         }
         if (!vehicleRepo.existsById("delivery")) {
             vehicleRepo
-                    .save(new Vehicle("delivery", "DELIVERY", 0, 0, 0, 0, 100, "DISARMED", System.currentTimeMillis()));
+                    .save(new Vehicle("delivery", "DELIVERY", 0, 0, 0, 0, 100, "DISARMED", System.currentTimeMillis(),
+                            null));
         }
+
+        // Vehicles are only created here, so the store holds all of them from now on
+        vehicleRepo.findAll().forEach(stateStore::loadVehicle);
     }
 
     public List<Vehicle> getAllVehicles() {
-        return vehicleRepo.findAll();
+        return stateStore.getVehicles();
     }
 
     public Vehicle getVehicle(String id) {
-        if (id == null) return null;
-        return vehicleRepo.findById(id).orElse(null);
+        return stateStore.getVehicle(id);
     }
 
-    public void updateTelemetry(String id, double lat, double lon, double alt, double heading, double battery,
+    /**
+     * Apply a telemetry push to the vehicle's state.
+     *
+     * @return the new snapshot, or null if the vehicle is unknown
+     */
+    public Vehicle updateTelemetry(String id, double lat, double lon, double alt, double heading, double battery,
             String status) {
-        if (id == null) return;
-        Vehicle v = vehicleRepo.findById(id).orElse(null);
-        if (v != null) {
-            v.setLat(lat);
-            v.setLon(lon);
-            v.setAlt(alt);
-            v.setHeading(heading);
-            v.setBattery(battery);
-            v.setStatus(status != null ? status : "UNKNOWN");
-            v.setLastHeartbeat(System.currentTimeMillis());
-
-            vehicleRepo.save(v); // Update current state
-
-            // Log history
-            telemetryRepo.save(new TelemetryPoint(id, lat, lon, alt, System.currentTimeMillis()));
+        Vehicle current = stateStore.getVehicle(id);
+        if (current == null) return null;
+
+        long now = System.currentTimeMillis();
+        Vehicle v = applyState(current, lat, lon, alt, heading, battery, status, now, null);
+
+        // Log history (batched by the write-behind buffer)
+        recordHistory(new TelemetryPoint(id, lat, lon, alt, now));
+        return v;
+    }
+
+    /**
+     * Apply an ordered batch of samples in one pass: every new sample goes to
+     * the history, but the vehicle state is written once, from the newest.
+     * Samples whose seq is not above the last applied one (for the same
+     * session) are skipped, so a retried batch is applied only once.
+     *
+     * The seq cursor only moves past a sample once it is in the write buffer.
+     * If the buffer is full the batch stops there and the result is marked
+     * backlogged; the rest of the batch is taken when the sender resends it.
+     *
+     * @return null if the vehicle is unknown
+     */
+    public BatchResult ingestBatch(String id, @NonNull TelemetryBatch batch) {
+        Vehicle current = stateStore.getVehicle(id);
+        if (current == null) return null;
+
+        BatchResult result = new BatchResult();
+        IngestCursor cursor = ingestCursors.computeIfAbsent(id, key -> new IngestCursor());
+        synchronized (cursor) {
+            String session = batch.getSession() != null ? batch.getSession() : "";
+            if (!session.equals(cursor.session)) {
+                cursor.session = session;
+                cursor.lastSeq = -1;
+            }
+
+            long now = System.currentTimeMillis();
+            TelemetrySample newest = null;
+            for (TelemetrySample sample : batch.getSamples() != null ? batch.getSamples() : List.<TelemetrySample>of()) {
+                if (sample.getSeq() != null && sample.getSeq() <= cursor.lastSeq) {
+                    result.setDuplicates(result.getDuplicates() + 1);
+                    continue;
+                }
+                try {
+                    recordHistory(new TelemetryPoint(id, sample.getLat(), sample.getLon(), sample.getAlt(),
+                            sample.getTimestamp() != null ? sample.getTimestamp() : now));
+                } catch (IllegalStateException e) {
+                    result.setBacklogged(true);
+                    break;
+                }
+                if (sample.getSeq() != null) {
+                    cursor.lastSeq = sample.getSeq();
+                }
+                newest = sample;
+                result.setAccepted(result.getAccepted() + 1);
+            }
+
+            if (newest != null) {
+                result.setVehicle(applyState(current, newest.getLat(), newest.getLon(), newest.getAlt(),
+                        newest.getHeading(), newest.getBattery(), newest.getStatus(), now, newest.getTimestamp()));
+            }
+            result.setLastSeq(cursor.lastSeq >= 0 ? cursor.lastSeq : null);
         }
+        return result;
+    }
+
+    private Vehicle applyState(Vehicle current, double lat, double lon, double alt, double heading, double battery,
+            String status, long heartbeat, Long sampledAt) {
+        // Snapshots are shared with readers, so build a new one; the store
+        // writes it to the database on its next flush
+        Vehicle v = current.toBuilder()
+                .lat(lat)
+                .lon(lon)
+                .alt(alt)
+                .heading(heading)
+                .battery(battery)
+                .status(status != null ? status : "UNKNOWN")
+                .lastHeartbeat(heartbeat)
+                .sampledAt(sampledAt)
+                .build();
+        stateStore.putVehicle(v);
+        return v;
+    }
+
+    private void recordHistory(TelemetryPoint point) {
+        // Queue first: a sample the buffer refuses is resent, and must not be cached twice
+        telemetryWriteBuffer.enqueue(point);
+        telemetryCache.recordVehicleTelemetry(point);
+    }
+
+    /**
+     * Last samples pushed for a vehicle, newest first, from memory
+     */
+    public List<TelemetryPoint> getRecentTelemetry(String id) {
+        return telemetryCache.getRecentVehicleTelemetry(id);
     }
 
     public List<TelemetryPoint> getTelemetry(String id) {
-        return telemetryRepo.findByVehicleId(id);
+        List<TelemetryPoint> history = new ArrayList<>();
+        forEachTelemetryPoint(id, history::add);
+        return history;
+    }
+
+    public long countTelemetry(String id) {
+        return telemetryRepo.countByVehicleId(id);
+    }
+
+    /**
+     * Visit a vehicle's telemetry history in time order, a page at a time.
+     * Points are detached once visited so the persistence context stays small.
+     */
+    public void forEachTelemetryPoint(String id, Consumer<TelemetryPoint> consumer) {
+        if (id == null) return;
+        long afterTimestamp = Long.MIN_VALUE;
+        long afterId = Long.MIN_VALUE;
+        List<TelemetryPoint> page;
+        do {
+            page = telemetryRepo.findVehiclePage(id, afterTimestamp, afterId, PageRequest.of(0, HISTORY_PAGE_SIZE));
+            for (TelemetryPoint point : page) {
+                consumer.accept(point);
+                entityManager.detach(point);
+            }
+            if (!page.isEmpty()) {
+                TelemetryPoint last = page.get(page.size() - 1);
+                afterTimestamp = last.getTimestamp();
+                afterId = last.getLogId();
+            }
+        } while (page.size() == HISTORY_PAGE_SIZE);
     }
 
-    public void addDetection(@NonNull Detection detection) {
-        detectionRepo.save(detection);
+    /**
+     * @return false if there is no such detection
+     */
+    public boolean approveDetection(@NonNull String id) {
+        return detectionRepo.approve(id) > 0;
     }
 
     public List<Detection> getDetections() {
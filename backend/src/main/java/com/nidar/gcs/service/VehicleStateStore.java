@@ -0,0 +1,218 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Drone;
+import com.nidar.gcs.model.Vehicle;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.lang.NonNull;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Authoritative current state of vehicles and drones. Telemetry updates only
+ * touch memory: each one swaps in a new immutable snapshot and marks the id
+ * dirty. A scheduled flush writes the latest snapshot of every dirty id to
+ * MySQL in one batched transaction (last write wins), so a crash loses at most
+ * one flush interval of position updates. Reads never go to the database.
+ *
+ * Snapshots are never mutated once stored; callers that want to change one go
+ * through the update methods, which copy it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VehicleStateStore {
+
+    private static final String UPDATE_VEHICLE = "UPDATE vehicles SET lat = ?, lon = ?, alt = ?, heading = ?, "
+            + "battery = ?, status = ?, last_heartbeat = ? WHERE id = ?";
+    private static final String UPDATE_DRONE = "UPDATE drones SET last_latitude = ?, last_longitude = ?, "
+            + "last_altitude = ?, last_battery = ?, last_seen_at = ?, status = ?, connected = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, Vehicle> vehicles = new ConcurrentHashMap<>();
+    private final Map<Long, Drone> drones = new ConcurrentHashMap<>();
+    private final Set<String> dirtyVehicles = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirtyDrones = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsFlushed = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushMs;
+
+    // ============ Vehicles ============
+
+    /**
+     * Load a snapshot as persisted; it is not marked dirty
+     */
+    public void loadVehicle(@NonNull Vehicle vehicle) {
+        vehicles.put(vehicle.getId(), vehicle);
+    }
+
+    /**
+     * Replace the vehicle's state with a new snapshot and schedule it for the
+     * next flush
+     */
+    public void putVehicle(@NonNull Vehicle vehicle) {
+        vehicles.put(vehicle.getId(), vehicle);
+        dirtyVehicles.add(vehicle.getId());
+    }
+
+    public Vehicle getVehicle(String id) {
+        return id != null ? vehicles.get(id) : null;
+    }
+
+    public List<Vehicle> getVehicles() {
+        List<Vehicle> result = new ArrayList<>(vehicles.values());
+        result.sort(Comparator.comparing(Vehicle::getId));
+        return result;
+    }
+
+    // ============ Drones ============
+
+    public void loadDrone(@NonNull Drone drone) {
+        drones.put(drone.getId(), copy(drone));
+    }
+
+    public void removeDrone(@NonNull Long id) {
+        drones.remove(id);
+        dirtyDrones.remove(id);
+    }
+
+    public Drone getDrone(Long id) {
+        return id != null ? drones.get(id) : null;
+    }
+
+    public List<Drone> getDrones() {
+        List<Drone> result = new ArrayList<>(drones.values());
+        result.sort(Comparator.comparing(Drone::getId));
+        return result;
+    }
+
+    /**
+     * Apply a change to a copy of the drone's snapshot and swap it in with a
+     * compare-and-set, retrying if another update got there first. The drone
+     * is marked dirty for the next flush.
+     *
+     * @return the new snapshot, or null if the drone is unknown
+     */
+    public Drone updateDrone(@NonNull Long id, Consumer<Drone> change) {
+        while (true) {
+            Drone current = drones.get(id);
+            if (current == null) {
+                return null;
+            }
+            Drone next = copy(current);
+            change.accept(next);
+            if (drones.replace(id, current, next)) {
+                dirtyDrones.add(id);
+                return next;
+            }
+        }
+    }
+
+    // ============ Flush ============
+
+    @Scheduled(fixedDelayString = "${vehicle.state.flush-interval:2000}")
+    public void flush() {
+        List<Vehicle> vehicleRows = new ArrayList<>();
+        for (String id : dirtyVehicles) {
+            dirtyVehicles.remove(id);
+            Vehicle v = vehicles.get(id);
+            if (v != null) {
+                vehicleRows.add(v);
+            }
+        }
+        List<Drone> droneRows = new ArrayList<>();
+        for (Long id : dirtyDrones) {
+            dirtyDrones.remove(id);
+            Drone d = drones.get(id);
+            if (d != null) {
+                droneRows.add(d);
+            }
+        }
+        if (vehicleRows.isEmpty() && droneRows.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!vehicleRows.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_VEHICLE, vehicleRows, vehicleRows.size(), (ps, v) -> {
+                        ps.setDouble(1, v.getLat());
+                        ps.setDouble(2, v.getLon());
+                        ps.setDouble(3, v.getAlt());
+                        ps.setDouble(4, v.getHeading());
+                        ps.setDouble(5, v.getBattery());
+                        ps.setString(6, v.getStatus());
+                        ps.setLong(7, v.getLastHeartbeat());
+                        ps.setString(8, v.getId());
+                    });
+                }
+                if (!droneRows.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_DRONE, droneRows, droneRows.size(), (ps, d) -> {
+                        ps.setObject(1, d.getLastLatitude());
+                        ps.setObject(2, d.getLastLongitude());
+                        ps.setObject(3, d.getLastAltitude());
+                        ps.setObject(4, d.getLastBattery());
+                        ps.setTimestamp(5, d.getLastSeenAt() != null ? Timestamp.valueOf(d.getLastSeenAt()) : null);
+                        ps.setString(6, d.getStatus());
+                        ps.setObject(7, d.getConnected());
+                        ps.setLong(8, d.getId());
+                    });
+                }
+            });
+            flushes.incrementAndGet();
+            rowsFlushed.addAndGet(vehicleRows.size() + droneRows.size());
+            lastFlushMs = System.currentTimeMillis() - start;
+        } catch (RuntimeException e) {
+            // Mark them dirty again; the next flush writes whatever is newest by then
+            vehicleRows.forEach(v -> dirtyVehicles.add(v.getId()));
+            droneRows.forEach(d -> dirtyDrones.add(d.getId()));
+            failedFlushes.incrementAndGet();
+            log.error("State flush of {} vehicles and {} drones failed: {}", vehicleRows.size(), droneRows.size(),
+                    e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (!dirtyVehicles.isEmpty() || !dirtyDrones.isEmpty()) {
+            log.warn("Stopped with {} vehicles and {} drones unflushed", dirtyVehicles.size(), dirtyDrones.size());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("vehicles", vehicles.size());
+        stats.put("drones", drones.size());
+        stats.put("dirty", dirtyVehicles.size() + dirtyDrones.size());
+        stats.put("flushes", flushes.get());
+        stats.put("rowsFlushed", rowsFlushed.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("lastFlushMs", lastFlushMs);
+        return stats;
+    }
+
+    // By name, so fields added to Drone are carried over too
+    private static Drone copy(Drone d) {
+        return d.toBuilder().build();
+    }
+}
@@ -0,0 +1,264 @@
+package com.nidar.gcs.config;
+
+import com.nidar.gcs.service.BroadcastService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SubscriptionRateLimiter and ConflatingOutboundPolicy together, in the order
+ * WebSocketConfig registers them, on a synchronous outbound channel whose
+ * handler writes to a session decorated by the policy
+ */
+class OutboundFlowControlTest {
+
+    private static final String SESSION = "s1";
+    private static final String TOPIC = "/topic/telemetry/v1";
+    private static final String[] TELEMETRY = { "/topic/telemetry", "/topic/telemetry/**" };
+
+    private SubscriptionRateLimiter limiter;
+    private ExecutorSubscribableChannel channel;
+    private FakeSession socket;
+    private final List<String> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        limiter = new SubscriptionRateLimiter();
+        ReflectionTestUtils.setField(limiter, "limitedDestinations", TELEMETRY);
+        ConflatingOutboundPolicy policy = new ConflatingOutboundPolicy();
+        ReflectionTestUtils.setField(policy, "conflatedDestinations", TELEMETRY);
+
+        channel = new ExecutorSubscribableChannel();
+        channel.setInterceptors(List.of(limiter, policy));
+
+        // The policy hands the handler a metering decorator over the raw socket
+        socket = new FakeSession();
+        WebSocketSession[] metered = new WebSocketSession[1];
+        policy.decorate(new AbstractWebSocketHandler() {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) {
+                metered[0] = session;
+            }
+        }).afterConnectionEstablished(socket);
+
+        channel.subscribe(message -> {
+            try {
+                metered[0].sendMessage(new TextMessage((String) message.getPayload()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    void updateHeldBackByAnotherWriteIsDeliveredAndLaterUpdatesStillFlow() throws Exception {
+        subscribe("sub-1", "10");
+        // A telemetry update arrives while the session is writing another topic
+        socket.duringWrite = body -> {
+            if (body.equals("other")) {
+                channel.send(update("sub-1", "d1", false));
+            }
+        };
+
+        channel.send(update("/topic/alerts", "sub-2", "other", false));
+        assertEquals(List.of("other", "d1"), written);
+
+        // Not yet due: held by the limiter, then released by its sweep
+        channel.send(update("sub-1", "d2", false));
+        assertEquals(List.of("other", "d1"), written);
+        Thread.sleep(150);
+        limiter.releaseDue();
+        assertEquals(List.of("other", "d1", "d2"), written);
+
+        Thread.sleep(150);
+        channel.send(update("sub-1", "d3", false));
+        assertEquals(List.of("other", "d1", "d2", "d3"), written);
+    }
+
+    @Test
+    void rateLimitedSubscriptionGetsKeyframesAtOnce() throws Exception {
+        subscribe("sub-1", "10");
+
+        channel.send(update("sub-1", "k1", true));
+        channel.send(update("sub-1", "d1", false));
+        channel.send(update("sub-1", "k2", true));
+        assertEquals(List.of("k1", "k2"), written);
+
+        // The delta held before k2 applies to k1 and is never sent
+        Thread.sleep(150);
+        limiter.releaseDue();
+        assertEquals(List.of("k1", "k2"), written);
+    }
+
+    @Test
+    void waitingKeyframeIsNotReplacedByDelta() {
+        socket.duringWrite = body -> {
+            if (body.equals("other")) {
+                channel.send(update("sub-1", "k1", true));
+                channel.send(update("sub-1", "d1", false));
+            }
+        };
+
+        channel.send(update("/topic/alerts", "sub-2", "other", false));
+        assertEquals(List.of("other", "k1"), written);
+
+        channel.send(update("sub-1", "d2", false));
+        assertEquals(List.of("other", "k1", "d2"), written);
+    }
+
+    @Test
+    void waitingDeltaIsReplacedByNewerUpdate() {
+        socket.duringWrite = body -> {
+            if (body.equals("other")) {
+                channel.send(update("sub-1", "d1", false));
+                channel.send(update("sub-1", "d2", false));
+            }
+        };
+
+        channel.send(update("/topic/alerts", "sub-2", "other", false));
+        assertEquals(List.of("other", "d2"), written);
+    }
+
+    private void subscribe(String subscriptionId, String maxRate) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(SESSION);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(TOPIC);
+        accessor.setNativeHeader(SubscriptionRateLimiter.MAX_RATE_HEADER, maxRate);
+        limiter.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()),
+                new ExecutorSubscribableChannel());
+    }
+
+    private static Message<String> update(String subscriptionId, String body, boolean keyframe) {
+        return update(TOPIC, subscriptionId, body, keyframe);
+    }
+
+    private static Message<String> update(String destination, String subscriptionId, String body, boolean keyframe) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (keyframe) {
+            accessor.setHeader(BroadcastService.KEYFRAME_HEADER, Boolean.TRUE);
+        }
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    /**
+     * Records writes; duringWrite runs inside a write, while the policy
+     * considers the session busy
+     */
+    private class FakeSession implements WebSocketSession {
+        Consumer<String> duringWrite = body -> {
+        };
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            String body = (String) message.getPayload();
+            written.add(body);
+            duringWrite.accept(body);
+        }
+
+        @Override
+        public String getId() {
+            return SESSION;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("ws://localhost/ws-gcs");
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return "v12.stomp";
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.nidar.gcs.service;
+
+import com.nidar.gcs.model.Telemetry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightArchiveTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+    private static final String[] MODES = { "GUIDED", "AUTO", "RTL", null };
+
+    @Test
+    void roundTripsEveryColumnAcrossBlocks() throws IOException {
+        List<Telemetry> rows = flight(2 * FlightArchive.BLOCK_ROWS + 17);
+        FlightArchive.Reader reader = archive(rows);
+
+        assertEquals(7L, reader.getMissionId());
+        assertEquals(9L, reader.getFlightLogId());
+        assertEquals(rows.size(), reader.getRowCount());
+        assertEquals(rows.get(0).getTimestamp(), reader.getStartTime());
+        assertEquals(rows.get(rows.size() - 1).getTimestamp(), reader.getEndTime());
+
+        List<Telemetry> decoded = scan(reader, null, -1L, null);
+        assertEquals(rows.size(), decoded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertSameRow(rows.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    void roundTripsExactlyOneFullBlock() throws IOException {
+        List<Telemetry> rows = flight(FlightArchive.BLOCK_ROWS);
+        List<Telemetry> decoded = scan(archive(rows), null, -1L, null);
+
+        assertEquals(rows.size(), decoded.size());
+        assertSameRow(rows.get(rows.size() - 1), decoded.get(decoded.size() - 1));
+    }
+
+    @Test
+    void emptyFlightHasNoRows() throws IOException {
+        FlightArchive.Reader reader = archive(List.of());
+
+        assertEquals(0, reader.getRowCount());
+        assertTrue(scan(reader, null, -1L, null).isEmpty());
+        assertEquals(0, reader.estimateRows(null, null));
+    }
+
+    @Test
+    void cursorAtBlockBoundaryResumesWithNextBlock() throws IOException {
+        List<Telemetry> rows = flight(2 * FlightArchive.BLOCK_ROWS + 5);
+        FlightArchive.Reader reader = archive(rows);
+
+        Telemetry lastOfFirstBlock = rows.get(FlightArchive.BLOCK_ROWS - 1);
+        List<Telemetry> decoded = scan(reader, lastOfFirstBlock.getTimestamp(), lastOfFirstBlock.getId(), null);
+
+        assertEquals(rows.size() - FlightArchive.BLOCK_ROWS, decoded.size());
+        assertSameRow(rows.get(FlightArchive.BLOCK_ROWS), decoded.get(0));
+    }
+
+    @Test
+    void cursorBreaksTimestampTiesById() throws IOException {
+        List<Telemetry> rows = flight(10);
+        // Rows 4 and 5 share a timestamp
+        rows.get(5).setTimestamp(rows.get(4).getTimestamp());
+        FlightArchive.Reader reader = archive(rows);
+
+        List<Telemetry> decoded = scan(reader, rows.get(4).getTimestamp(), rows.get(4).getId(), null);
+
+        assertEquals(5, decoded.size());
+        assertEquals(rows.get(5).getId(), decoded.get(0).getId());
+    }
+
+    @Test
+    void scanStopsAtUpperBoundAndWhenConsumerDeclines() throws IOException {
+        List<Telemetry> rows = flight(FlightArchive.BLOCK_ROWS + 100);
+        FlightArchive.Reader reader = archive(rows);
+
+        LocalDateTime to = rows.get(FlightArchive.BLOCK_ROWS + 9).getTimestamp();
+        assertEquals(FlightArchive.BLOCK_ROWS + 10, scan(reader, null, -1L, to).size());
+
+        List<Telemetry> taken = new ArrayList<>();
+        boolean completed = reader.scan(null, -1L, null, t -> {
+            taken.add(t);
+            return taken.size() < 3;
+        });
+        assertFalse(completed);
+        assertEquals(3, taken.size());
+    }
+
+    @Test
+    void estimatesRowsFromTheBlockDirectory() throws IOException {
+        List<Telemetry> rows = flight(3 * FlightArchive.BLOCK_ROWS);
+        FlightArchive.Reader reader = archive(rows);
+
+        assertEquals(rows.size(), reader.estimateRows(null, null));
+        // A range inside the second block counts that whole block only
+        LocalDateTime from = rows.get(FlightArchive.BLOCK_ROWS + 10).getTimestamp();
+        LocalDateTime to = rows.get(FlightArchive.BLOCK_ROWS + 20).getTimestamp();
+        assertEquals(FlightArchive.BLOCK_ROWS, reader.estimateRows(from, to));
+        // Spanning the boundary counts both blocks
+        assertEquals(2L * FlightArchive.BLOCK_ROWS,
+                reader.estimateRows(rows.get(10).getTimestamp(), to));
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        ByteBuffer junk = ByteBuffer.allocate(64);
+        assertThrows(IllegalArgumentException.class, () -> new FlightArchive.Reader(junk));
+    }
+
+    /**
+     * Irregular flight: jittered timing with a long gap, id jumps, nulls in
+     * every nullable column, repeated values and mode changes
+     */
+    private static List<Telemetry> flight(int count) {
+        List<Telemetry> rows = new ArrayList<>(count);
+        LocalDateTime time = START;
+        long id = 1_000;
+        for (int i = 0; i < count; i++) {
+            Telemetry t = new Telemetry();
+            t.setId(id);
+            t.setTimestamp(time);
+            t.setLatitude(i % 97 == 0 ? null : 12.9716 + i * 1e-6);
+            t.setLongitude(77.5946 - Math.sin(i / 50.0) * 1e-3);
+            t.setAltitude(i % 10 < 5 ? 40.0 : 40.0 + i * 0.01);
+            t.setSpeed(i % 13 == 0 ? -0.0 : 5.25 + (i % 7));
+            t.setBattery(i % 211 == 0 ? null : 100.0 - i / 100.0);
+            t.setHeading(i % 53 == 0 ? null : (i * 7) % 360);
+            t.setSatellites(i % 300 == 0 ? null : 12 + (i % 3));
+            t.setFlightMode(MODES[(i / 200) % MODES.length]);
+            t.setArmed(i % 400 == 399 ? null : i % 500 < 450);
+            rows.add(t);
+
+            id += i % 101 == 0 ? 5_000_000_000L : 1 + (i % 3);
+            time = time.plusNanos(i == count / 2 ? 3_600_000_000_000L : 100_000_000L + (i % 5) * 1_000);
+        }
+        return rows;
+    }
+
+    private static FlightArchive.Reader archive(List<Telemetry> rows) throws IOException {
+        FlightArchive.Writer writer = new FlightArchive.Writer(7L, 9L);
+        rows.forEach(writer::add);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return new FlightArchive.Reader(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static List<Telemetry> scan(FlightArchive.Reader reader, LocalDateTime afterTimestamp, long afterId,
+            LocalDateTime to) {
+        List<Telemetry> rows = new ArrayList<>();
+        assertTrue(reader.scan(afterTimestamp, afterId, to, rows::add));
+        return rows;
+    }
+
+    private static void assertSameRow(Telemetry expected, Telemetry actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getLatitude(), actual.getLatitude());
+        assertEquals(expected.getLongitude(), actual.getLongitude());
+        assertEquals(expected.getAltitude(), actual.getAltitude());
+        assertEquals(expected.getSpeed(), actual.getSpeed());
+        assertEquals(expected.getBattery(), actual.getBattery());
+        assertEquals(expected.getHeading(), actual.getHeading());
+        assertEquals(expected.getSatellites(), actual.getSatellites());
+        assertEquals(expected.getFlightMode(), actual.getFlightMode());
+        assertEquals(expected.getArmed(), actual.getArmed());
+    }
+}
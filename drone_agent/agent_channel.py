@@ -0,0 +1,185 @@
+import json
+import logging
+import queue
+import struct
+import threading
+from collections import deque
+from urllib.parse import urlsplit, urlunsplit
+
+import websocket
+
+# Close reason of a clustered GCS node that does not own this vehicle
+OWNER_PREFIX = "Owned by "
+# Close reason when the GCS write buffer is full; samples after the seq were not stored
+RESEND_PREFIX = "Resend after seq "
+# Samples remembered after sending, so a "Resend after" close can put them back
+RESEND_WINDOW = 600
+
+# Binary telemetry frame, big-endian: type, sample count, then fixed-size samples
+FRAME_TELEMETRY = 1
+FRAME_HEADER = struct.Struct('>BH')
+# seq, timestamp ms, lat 1e-7 deg, lon 1e-7 deg, alt mm, heading 0.01 deg, battery 0.01 %, status
+SAMPLE = struct.Struct('>IqiiiHHB')
+# Status byte values, as AgentChannelHandler decodes them
+STATUS_CODES = {"UNKNOWN": 0, "DISARMED": 1, "ARMED": 2, "FLYING": 3}
+MAX_SAMPLES_PER_FRAME = 2000
+
+
+class AgentChannel:
+    """
+    Persistent WebSocket to the GCS (/ws-agent/{id}). Telemetry goes up as
+    binary frames; mission updates come down as JSON and are handed to
+    on_mission, flight mode commands (a geofence breach asking for RTL, LAND
+    or BRAKE) to on_command. Both are queued and only run from run_pending(),
+    on the caller's thread, so MAVLink is never used from the socket thread.
+    Reconnects in the background, to the owning node if a
+    clustered GCS redirects it. If the GCS closes with "Resend after seq N", the
+    samples sent after N are handed back by take_resend().
+    """
+
+    def __init__(self, ws_url, on_mission, on_command=None, reconnect_delay=5):
+        self.ws_url = ws_url
+        self.on_mission = on_mission
+        self.on_command = on_command
+        self.reconnect_delay = reconnect_delay
+        self.connected = False
+        self.sent = deque(maxlen=RESEND_WINDOW)
+        self.resend = []
+        self.resend_lock = threading.Lock()
+        self.inbox = queue.Queue()
+        self.app = websocket.WebSocketApp(
+            ws_url,
+            on_open=self._on_open,
+            on_message=self._on_message,
+            on_close=self._on_close,
+            on_error=self._on_error)
+        self.thread = threading.Thread(target=self._run, daemon=True)
+
+    def start(self):
+        self.thread.start()
+
+    def send_samples(self, samples):
+        """
+        Send queued samples (dicts from GCSClient.queue_telemetry).
+        Returns False if the channel is down, so the caller can fall back.
+        """
+        if not self.connected:
+            return False
+        try:
+            for start in range(0, len(samples), MAX_SAMPLES_PER_FRAME):
+                chunk = samples[start:start + MAX_SAMPLES_PER_FRAME]
+                frame = bytearray(FRAME_HEADER.pack(FRAME_TELEMETRY, len(chunk)))
+                for s in chunk:
+                    frame += SAMPLE.pack(
+                        s["seq"] & 0xFFFFFFFF,
+                        s["timestamp"],
+                        int(round(s["lat"] * 1e7)),
+                        int(round(s["lon"] * 1e7)),
+                        int(round(s["alt"] * 1000)),
+                        int(round((s["heading"] % 360) * 100)),
+                        max(0, min(65535, int(round(s["battery"] * 100)))),
+                        STATUS_CODES.get(s.get("status"), 0))
+                self.app.send(bytes(frame), opcode=websocket.ABNF.OPCODE_BINARY)
+                with self.resend_lock:
+                    self.sent.extend(chunk)
+            return True
+        except Exception as e:
+            logging.error(f"Channel send failed: {e}")
+            return False
+
+    def run_pending(self):
+        """
+        Carry out what the GCS pushed since the last call. Commands go first,
+        and only the newest mission is uploaded, since each replaces the last.
+        """
+        commands, mission = [], None
+        while True:
+            try:
+                kind, payload = self.inbox.get_nowait()
+            except queue.Empty:
+                break
+            if kind == "command":
+                commands.append(payload)
+            else:
+                mission = payload
+        for mode in commands:
+            if self.on_command:
+                self.on_command(mode)
+        if mission:
+            self.on_mission(mission)
+
+    def take_resend(self):
+        """
+        Samples the GCS asked to have resent, oldest first; empty if none
+        """
+        with self.resend_lock:
+            samples, self.resend = self.resend, []
+        return samples
+
+    def _run(self):
+        self.app.run_forever(ping_interval=20, ping_timeout=10, reconnect=self.reconnect_delay)
+
+    def _on_open(self, ws):
+        self.connected = True
+        logging.info(f"Agent channel connected to {self.ws_url}")
+
+    def _on_close(self, ws, status, reason):
+        self.connected = False
+        if isinstance(reason, bytes):
+            reason = reason.decode("utf-8", "replace")
+        if reason and reason.startswith(OWNER_PREFIX):
+            self._follow_owner(reason[len(OWNER_PREFIX):].strip())
+            return
+        if reason and reason.startswith(RESEND_PREFIX):
+            self._queue_resend(reason[len(RESEND_PREFIX):].strip())
+        logging.warning(f"Agent channel closed: {status} {reason}")
+
+    def _queue_resend(self, after):
+        try:
+            after = int(after)
+        except ValueError:
+            logging.warning(f"Agent channel asked to resend after unusable seq '{after}'")
+            return
+        with self.resend_lock:
+            unstored = {s["seq"]: s for s in self.resend + list(self.sent) if s["seq"] > after}
+            self.resend = [unstored[seq] for seq in sorted(unstored)]
+            self.sent.clear()
+        logging.warning(f"GCS is backlogged; {len(self.resend)} samples after seq {after} will be resent")
+
+    def _follow_owner(self, owner):
+        """
+        Point the next reconnect at the owner's base URL (http://host:port),
+        keeping this channel's path and query
+        """
+        target = urlsplit(owner)
+        current = urlsplit(self.ws_url)
+        scheme = "wss" if target.scheme in ("https", "wss") else "ws"
+        url = urlunsplit((scheme, target.netloc, current.path, current.query, ""))
+        if not target.netloc or url == self.ws_url:
+            logging.warning(f"Agent channel redirected to unusable owner '{owner}'")
+            return
+        logging.info(f"Vehicle is owned by {owner}; reconnecting to {url}")
+        self.ws_url = url
+        self.app.url = url
+
+    def _on_error(self, ws, error):
+        logging.error(f"Agent channel error: {error}")
+
+    def _on_message(self, ws, message):
+        try:
+            data = json.loads(message)
+        except (TypeError, ValueError):
+            logging.warning("Ignoring non-JSON message from GCS")
+            return
+        if data.get("type") == "mission":
+            items = data.get("items") or []
+            logging.info(f"Mission pushed by GCS: {len(items)} items")
+            if items:
+                self.inbox.put(("mission", items))
+        elif data.get("type") == "command":
+            mode = data.get("mode")
+            logging.warning(f"GCS commands mode {mode} (geofence zone {data.get('zoneId')})")
+            if mode:
+                self.inbox.put(("command", mode))
+        else:
+            logging.warning(f"Ignoring GCS message of type {data.get('type')}")
@@ -1,15 +1,25 @@
 import requests
 import json
 import logging
+import gzip
+import time
+import uuid
+
+# Samples kept while the link is down; older ones are dropped first
+MAX_PENDING_SAMPLES = 600
 
 class GCSClient:
     def __init__(self, gcs_url, vehicle_id):
         self.base_url = gcs_url
         self.vehicle_id = vehicle_id
         self.session = requests.Session()
+        # Batched telemetry: seq numbers let the GCS drop samples from a retried batch
+        self.batch_session = uuid.uuid4().hex
+        self.next_seq = 0
+        self.pending = []
         logging.info(f"GCS Client initialized for {vehicle_id} at {gcs_url}")
 
-    def send_telemetry(self, lat, lon, alt, battery, speed, heading):
+    def send_telemetry(self, lat, lon, alt, battery, speed, heading, status="UNKNOWN"):
         url = f"{self.base_url}/vehicles/{self.vehicle_id}/telemetry"
         data = {
             "lat": lat,
@@ -17,13 +27,56 @@ class GCSClient:
             "alt": alt,
             "battery": battery,
             "speed": speed,
-            "heading": heading
+            "heading": heading,
+            "status": status
         }
         try:
             self.session.post(url, json=data, timeout=1.0)
         except Exception as e:
             logging.error(f"Failed to send telemetry: {e}")
 
+    def queue_telemetry(self, lat, lon, alt, battery, speed, heading, status="UNKNOWN"):
+        self.pending.append({
+            "seq": self.next_seq,
+            "timestamp": int(time.time() * 1000),
+            "lat": lat,
+            "lon": lon,
+            "alt": alt,
+            "battery": battery,
+            "heading": heading,
+            "status": status
+        })
+        self.next_seq += 1
+        if len(self.pending) > MAX_PENDING_SAMPLES:
+            del self.pending[:len(self.pending) - MAX_PENDING_SAMPLES]
+
+    def flush_telemetry(self):
+        """
+        Send queued samples as one gzip-compressed batch. On failure they stay
+        queued and are resent with the same seq numbers next time.
+        """
+        if not self.pending:
+            return True
+        url = f"{self.base_url}/vehicles/{self.vehicle_id}/telemetry/batch"
+        batch = list(self.pending)
+        body = gzip.compress(json.dumps({"session": self.batch_session, "samples": batch}).encode("utf-8"))
+        try:
+            resp = self.session.post(url, data=body, timeout=2.0, headers={
+                "Content-Type": "application/json",
+                "Content-Encoding": "gzip"
+            })
+            if resp.status_code == 200:
+                del self.pending[:len(batch)]
+                return True
+            if resp.status_code == 503:
+                # Write buffer full; what was stored is dropped as duplicate on resend
+                logging.warning("GCS telemetry buffer full, batch will be resent")
+                return False
+            logging.error(f"Telemetry batch rejected: HTTP {resp.status_code}")
+        except Exception as e:
+            logging.error(f"Failed to send telemetry batch: {e}")
+        return False
+
     def fetch_mission(self):
         """
         Returns list of mission items or None if failed/empty
@@ -2,6 +2,7 @@ import time
 import argparse
 import logging
 from gcs_client import GCSClient
+from agent_channel import AgentChannel
 from mav_link import DroneController
 
 # Configure Logging
@@ -13,6 +14,10 @@ def main():
     parser.add_argument('--id', default='delivery', help='Vehicle ID (scout/delivery)')
     parser.add_argument('--gcs', default='http://localhost:8080/api', help='GCS API URL')
     parser.add_argument('--sim', action='store_true', help='Simulation mode (Virtual Drone)')
+    parser.add_argument('--batch-interval', type=float, default=1.0,
+                        help='Seconds between telemetry batches (0 sends every sample individually)')
+    parser.add_argument('--channel', choices=['ws', 'http'], default='ws',
+                        help='ws: persistent WebSocket with mission push (falls back to HTTP while down); http: polling only')
     args = parser.parse_args()
 
     gcs = GCSClient(args.gcs, args.id)
@@ -23,21 +28,48 @@ def main():
     else:
         drone = DroneController(args.connect)
 
+    channel = None
+    if args.channel == 'ws':
+        # http://host:8080/api -> ws://host:8080/ws-agent/{id}
+        base = args.gcs.rstrip('/')
+        if base.endswith('/api'):
+            base = base[:-len('/api')]
+        ws_url = base.replace('https://', 'wss://', 1).replace('http://', 'ws://', 1) + f"/ws-agent/{args.id}"
+        # Same session as the HTTP batches, so seq dedup survives reconnects and fallbacks
+        ws_url += f"?session={gcs.batch_session}"
+        channel = AgentChannel(ws_url, drone.upload_mission, drone.set_mode)
+        channel.start()
+
     last_mission_check = 0
     mission_check_interval = 5.0
+    last_flush = time.time()
 
     logging.info("Agent Loop Started")
     while True:
         try:
             # 1. Telemetry Loop (10Hz approx)
-            lat, lon, alt, bat, spd, hdg = drone.get_telemetry()
+            lat, lon, alt, bat, spd, hdg, status = drone.get_telemetry()
             
-            # 2. Send to GCS (Throttled inside client or here? Let's send every loop for smoothness, 10hz is fine for local)
-            # Actually, let's limit to 4Hz to save network
-            gcs.send_telemetry(lat, lon, alt, bat, spd, hdg)
+            # 2. Send to GCS - batched to amortise the round trip over slow links
+            if args.batch_interval > 0:
+                gcs.queue_telemetry(lat, lon, alt, bat, spd, hdg, status)
+                if channel is not None:
+                    # Samples the GCS could not store go back in front of the queue
+                    gcs.pending[:0] = channel.take_resend()
+                if time.time() - last_flush >= args.batch_interval:
+                    if channel is not None and channel.send_samples(gcs.pending):
+                        gcs.pending.clear()
+                    else:
+                        gcs.flush_telemetry()
+                    last_flush = time.time()
+            else:
+                gcs.send_telemetry(lat, lon, alt, bat, spd, hdg, status)
             
-            # 3. Check for Missions
-            if time.time() - last_mission_check > mission_check_interval:
+            # 3. Check for Missions (pushed over the channel while it is up)
+            if channel is not None:
+                channel.run_pending()
+            channel_up = channel is not None and channel.connected
+            if not channel_up and time.time() - last_mission_check > mission_check_interval:
                 mission = gcs.fetch_mission()
                 # Basic check: In a real agent we'd check if mission ID changed
                 # For now, if we get a waiting mission, we upload it
@@ -65,8 +97,12 @@ class MockDrone:
         self.tick += 0.01
         self.lat += 0.00001
         self.lon += 0.00001
-        return self.lat, self.lon, 50, 95, 12, 45
+        return self.lat, self.lon, 50, 95, 12, 45, 'FLYING'
     
+    def set_mode(self, mode):
+        logging.info(f"SIM: Mode {mode}")
+        return True
+
     def upload_mission(self, items):
         logging.info("SIM: Mission Received")
         for i in items:
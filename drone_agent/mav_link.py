@@ -2,12 +2,22 @@ from pymavlink import mavutil
 import time
 import logging
 
+# Seconds to wait for each autopilot reply during a mission upload
+MISSION_REPLY_TIMEOUT = 5.0
+
 class DroneController:
+    """
+    MAVLink access to the autopilot. recv_match discards messages it was not
+    asked for, so this is only used from the agent's main loop, never from
+    another thread.
+    """
+
     def __init__(self, connection_string):
         logging.info(f"Connecting to drone at {connection_string}...")
         self.master = mavutil.mavlink_connection(connection_string)
-        self.master.wait_heartbeat()
+        heartbeat = self.master.wait_heartbeat()
         logging.info("Heartbeat received!")
+        self.status = self._status(heartbeat) or 'UNKNOWN'
 
     def get_telemetry(self):
         # Request data if not coming in automatically
@@ -16,6 +26,7 @@ class DroneController:
         msg = self.master.recv_match(type='GLOBAL_POSITION_INT', blocking=False)
         sys_status = self.master.recv_match(type='SYS_STATUS', blocking=False)
         vfr_hud = self.master.recv_match(type='VFR_HUD', blocking=False)
+        heartbeat = self.master.recv_match(type='HEARTBEAT', blocking=False)
         
         # Defaults
         lat, lon, alt = 0, 0, 0
@@ -35,25 +46,61 @@ class DroneController:
         if vfr_hud:
             speed = vfr_hud.groundspeed
 
-        return lat, lon, alt, battery, speed, heading
+        # Heartbeats come at 1 Hz, so keep the last status between them
+        if heartbeat and self._status(heartbeat):
+            self.status = self._status(heartbeat)
+
+        return lat, lon, alt, battery, speed, heading, self.status
+
+    @staticmethod
+    def _status(heartbeat):
+        """
+        DISARMED / ARMED / FLYING from a HEARTBEAT, as the GCS expects them;
+        None for heartbeats of other components (GCS, camera, ...)
+        """
+        if heartbeat is None or heartbeat.type in (mavutil.mavlink.MAV_TYPE_GCS,
+                                                   mavutil.mavlink.MAV_TYPE_ONBOARD_CONTROLLER):
+            return None
+        if not heartbeat.base_mode & mavutil.mavlink.MAV_MODE_FLAG_SAFETY_ARMED:
+            return 'DISARMED'
+        if heartbeat.system_status == mavutil.mavlink.MAV_STATE_ACTIVE:
+            return 'FLYING'
+        return 'ARMED'
+
+    def set_mode(self, mode):
+        """
+        Switch the autopilot's flight mode by name (RTL, LAND, BRAKE, ...)
+        """
+        mapping = self.master.mode_mapping() or {}
+        if mode not in mapping:
+            logging.error(f"Flight mode {mode} not supported by this vehicle")
+            return False
+        self.master.set_mode(mapping[mode])
+        logging.info(f"Mode change to {mode} sent")
+        return True
 
     def upload_mission(self, mission_items):
+        """
+        Replace the autopilot's mission. Returns False if it stopped answering.
+        """
         if not mission_items:
-            return
+            return False
 
         logging.info(f"Uploading {len(mission_items)} items...")
         
         # Clear existing
         self.master.mav.mission_clear_all_send(self.master.target_system, self.master.target_component)
-        self.master.recv_match(type=['MISSION_ACK'], blocking=True)
+        if not self.master.recv_match(type=['MISSION_ACK'], blocking=True, timeout=MISSION_REPLY_TIMEOUT):
+            logging.error("No acknowledgement of mission clear")
+            return False
 
         self.master.mav.mission_count_send(self.master.target_system, self.master.target_component, len(mission_items))
 
         for i, item in enumerate(mission_items):
-            msg = self.master.recv_match(type=['MISSION_REQUEST'], blocking=True)
+            msg = self.master.recv_match(type=['MISSION_REQUEST'], blocking=True, timeout=MISSION_REPLY_TIMEOUT)
             if not msg:
                 logging.error("No mission request received")
-                return
+                return False
 
             cmd_id = mavutil.mavlink.MAV_CMD_NAV_TAKEOFF if item['command'] == 'TAKEOFF' else mavutil.mavlink.MAV_CMD_NAV_WAYPOINT
             
@@ -73,9 +120,11 @@ class DroneController:
             )
             logging.info(f"Sent WP {item['seq']}")
 
-        ack = self.master.recv_match(type=['MISSION_ACK'], blocking=True)
+        ack = self.master.recv_match(type=['MISSION_ACK'], blocking=True, timeout=MISSION_REPLY_TIMEOUT)
         logging.info(f"Mission Upload Result: {ack}")
+        if not ack:
+            return False
         
         # Arm & automatic start (Optional, safer to let pilot do it)
         # self.master.arducopter_arm()
-
+        return True
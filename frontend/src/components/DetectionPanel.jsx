@@ -10,9 +10,30 @@ const DetectionPanel = ({ detections }) => {
         }
     };
 
+    // One multi-drop mission over the approved targets not yet delivered to
+    const handlePlanRoute = async () => {
+        try {
+            const { data } = await api.post('/detections/route', {});
+            alert(`Delivery route sent: ${data.sorties.length} sorties, ${data.distanceMetres} m`
+                + (data.unreachable.length ? `, ${data.unreachable.length} targets unreachable` : ''));
+        } catch (e) {
+            alert("No route planned: " + (e.response?.data?.message || e.message || "Unknown error"));
+        }
+    };
+
     return (
         <div className="h-full">
-            <h2 className="text-sm font-semibold text-slate-500 uppercase tracking-wider mb-3">Recent Detections</h2>
+            <div className="flex justify-between items-center mb-3">
+                <h2 className="text-sm font-semibold text-slate-500 uppercase tracking-wider">Recent Detections</h2>
+                {detections.some(d => d.approved && !d.delivered) && (
+                    <button
+                        onClick={handlePlanRoute}
+                        className="bg-accent-blue text-white text-xs font-bold px-3 py-1 rounded hover:opacity-90 transition-opacity"
+                    >
+                        PLAN DELIVERY
+                    </button>
+                )}
+            </div>
             <div className="flex flex-col gap-3 h-[300px] overflow-y-auto">
                 {detections.length === 0 && (
                     <div className="text-center py-8 text-slate-400 text-sm">No targets detected</div>
@@ -28,12 +49,17 @@ const DetectionPanel = ({ detections }) => {
                                     <span className="text-xs font-bold text-slate-500 uppercase">{new Date(d.timestamp).toLocaleTimeString()}</span>
                                     <span className="text-xs font-bold text-accent-blue">{Math.round(d.confidence)}% CONF</span>
                                 </div>
-                                <h4 className="font-bold text-slate-800 text-sm mt-1">HUMAN DETECTED</h4>
+                                <div className="flex justify-between items-center mt-1">
+                                    <h4 className="font-bold text-slate-800 text-sm">HUMAN DETECTED</h4>
+                                    {d.hits > 1 && (
+                                        <span className="text-[10px] font-bold text-slate-400 uppercase">{d.hits} HITS</span>
+                                    )}
+                                </div>
                             </div>
 
                             {d.approved ? (
                                 <div className="text-xs font-bold text-green-600 flex items-center gap-1">
-                                    <span>✓ ENGAGED</span>
+                                    <span>{d.delivered ? '✓ DELIVERY SENT' : '✓ ENGAGED'}</span>
                                 </div>
                             ) : (
                                 <button
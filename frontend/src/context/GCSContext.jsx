@@ -26,7 +26,7 @@ export const GCSProvider = ({ children }) => {
         // WebSocket Setup
         gcsWebSocket.connect(() => {
             ['scout', 'delivery'].forEach(vid => {
-                gcsWebSocket.subscribe(`/topic/telemetry/${vid}`, (data) => {
+                gcsWebSocket.subscribeTelemetry(`/topic/telemetry/${vid}`, (data) => {
                     setVehicles(prev => {
                         const idx = prev.findIndex(v => v.id === data.id);
                         if (idx >= 0) {
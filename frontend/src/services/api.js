@@ -10,7 +10,9 @@ const api = axios.create({
 // ============ Vehicle Service ============
 export const VehicleService = {
     getAll: () => api.get('/vehicles'),
-    getHistory: (id) => api.get(`/vehicles/${id}/telemetry-history`),
+    // params: { maxPoints } or { tolerance } (metres) to downsample the track
+    getHistory: (id, params) => api.get(`/vehicles/${id}/telemetry-history`, { params }),
+    getRecentTelemetry: (id) => api.get(`/vehicles/${id}/telemetry/recent`),
 
     // Commands
     arm: (id) => api.post(`/vehicles/${id}/command/arm`),
@@ -99,7 +101,19 @@ export const SimulatorService = {
 // ============ Replay Service ============
 export const ReplayService = {
     getMissionReplayData: (missionId) => api.get(`/replay/mission/${missionId}`),
-    getTelemetryByMission: (missionId) => api.get(`/replay/telemetry/${missionId}`),
+    // params: { from, to, cursor, limit } - pass the page's nextCursor as cursor for the next page
+    getTelemetryByMission: (missionId, params) => api.get(`/replay/telemetry/${missionId}`, { params }),
+    // params: { maxPoints, tolerance, from, to }
+    getMissionTrack: (missionId, params) => api.get(`/replay/track/${missionId}`, { params }),
+
+    // Server-paced streaming: subscribe to session.topic, then play
+    createSession: (missionId, speed = 1) => api.post('/replay/sessions', null, { params: { missionId, speed } }),
+    getSession: (sessionId) => api.get(`/replay/sessions/${sessionId}`),
+    play: (sessionId) => api.post(`/replay/sessions/${sessionId}/play`),
+    pause: (sessionId) => api.post(`/replay/sessions/${sessionId}/pause`),
+    setSpeed: (sessionId, speed) => api.post(`/replay/sessions/${sessionId}/speed`, null, { params: { speed } }),
+    seek: (sessionId, time) => api.post(`/replay/sessions/${sessionId}/seek`, null, { params: { time } }),
+    closeSession: (sessionId) => api.delete(`/replay/sessions/${sessionId}`),
 };
 
 // ============ Vehicle Parameter Service ============
@@ -117,6 +131,14 @@ export const DetectionService = {
     getAll: () => api.get('/detections'),
     getById: (id) => api.get(`/detections/${id}`),
     approve: (id) => api.post(`/detections/${id}/approve`),
+    planRoute: (request) => api.post('/detections/route', request),
+};
+
+// ============ Telemetry History Service ============
+export const TelemetryHistoryService = {
+    getSeries: () => api.get('/telemetry/series'),
+    // params: { from, to, maxPoints }; the server picks raw, 1 s, 10 s or 60 s
+    getSeriesData: (series, params) => api.get(`/telemetry/series/${encodeURIComponent(series)}`, { params }),
 };
 
 export default api;
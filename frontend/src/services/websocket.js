@@ -4,6 +4,7 @@ import { Stomp } from '@stomp/stompjs';
 const gcsWebSocket = {
     client: null,
     callbacks: {},
+    headers: {},
 
     connect: (onConnected) => {
         // Spring Boot uses SockJS at /ws-gcs
@@ -23,7 +24,7 @@ const gcsWebSocket = {
                 client.subscribe(topic, (message) => {
                     const payload = JSON.parse(message.body);
                     gcsWebSocket.callbacks[topic](payload);
-                });
+                }, gcsWebSocket.headers[topic] || {});
             });
 
         }, (err) => {
@@ -34,14 +35,73 @@ const gcsWebSocket = {
         gcsWebSocket.client = client;
     },
 
-    subscribe: (topic, callback) => {
+    // headers may limit telemetry subscriptions, e.g.
+    // { 'max-rate': 1, bbox: 'minLat,minLon,maxLat,maxLon' }
+    subscribe: (topic, callback, headers = {}) => {
         if (!gcsWebSocket.callbacks) gcsWebSocket.callbacks = {};
         gcsWebSocket.callbacks[topic] = callback;
+        gcsWebSocket.headers[topic] = headers;
 
         if (gcsWebSocket.client && gcsWebSocket.client.connected) {
             gcsWebSocket.client.subscribe(topic, (message) => {
                 callback(JSON.parse(message.body));
-            });
+            }, headers);
+        }
+    },
+
+    // Live telemetry topics carry keyframes and deltas ({v, base, key, f});
+    // rebuild the full state and pass it to the callback
+    subscribeTelemetry: (topic, callback, headers = {}) => {
+        const stream = { v: 0, base: null, keyframe: null };
+        gcsWebSocket.subscribe(topic, (msg) => {
+            if (msg.key) {
+                stream.keyframe = msg.f;
+                stream.base = msg.v;
+            } else if (msg.v <= stream.v) {
+                return; // Arrived out of order
+            } else if (msg.base !== stream.base) {
+                // Missed the keyframe this delta builds on
+                gcsWebSocket.requestKeyframe(topic);
+                return;
+            }
+            stream.v = msg.v;
+            callback(msg.key ? msg.f : { ...stream.keyframe, ...msg.f });
+        }, headers);
+    },
+
+    // Viewport-filtered fleet events; an event older (by seq) than the last
+    // one applied for the same vehicle arrived out of order and is dropped
+    subscribeFleet: (callback, headers = {}) => {
+        const applied = {}; // vehicle id -> seq of its last applied event
+        const fresh = (id, seq) => {
+            if (applied[id] !== undefined && seq <= applied[id]) return false;
+            applied[id] = seq;
+            return true;
+        };
+        gcsWebSocket.subscribe('/topic/fleet', (msg) => {
+            if (msg.type === 'viewport') {
+                callback({
+                    ...msg,
+                    enter: msg.enter.filter(v => fresh(v.id, msg.seq)),
+                    leave: msg.leave.filter(id => fresh(id, msg.seq))
+                });
+            } else if (fresh(msg.type === 'leave' ? msg.id : msg.vehicle.id, msg.seq)) {
+                callback(msg);
+            }
+        }, headers);
+    },
+
+    // Move the viewport of the /topic/fleet subscription as the map pans
+    setFleetViewport: (minLat, minLon, maxLat, maxLon) => {
+        if (gcsWebSocket.client && gcsWebSocket.client.connected) {
+            gcsWebSocket.client.send('/app/fleet/viewport', {},
+                JSON.stringify({ bbox: [minLat, minLon, maxLat, maxLon] }));
+        }
+    },
+
+    requestKeyframe: (topic) => {
+        if (gcsWebSocket.client && gcsWebSocket.client.connected) {
+            gcsWebSocket.client.send('/app/telemetry/keyframe', {}, JSON.stringify({ topic }));
         }
     }
 };